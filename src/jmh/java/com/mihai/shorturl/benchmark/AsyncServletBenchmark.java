@@ -0,0 +1,223 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the redirect endpoint over HTTP, with the database work on the servlet threads (thread per request)
+ * or on the pool of the async mode, for many keep-alive connections at once.
+ * <p>
+ * Note: each benchmark thread is one connection; 96 connections redirect hot keys, which stay cached, while 32
+ * redirect keys which mostly miss the cache and wait on the database
+ * Note: the database is in memory, a round trip of {@link #ROUND_TRIP_MILLIS} is added to every connection taken
+ * from the pool to stand for a remote database
+ * Note: run it with -rf json or read the p0.99 lines of the sample time output to compare the tail latencies
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class AsyncServletBenchmark {
+    private static final int PRELOADED_URLS = 20000;
+    private static final int HOT_KEYS = 100;
+    private static final long ROUND_TRIP_MILLIS = 2;
+    private static final int SERVLET_THREADS = 32;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private ConfigurableApplicationContext context;
+    private int port;
+    private String[] keys;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(new Class<?>[]{RoundTripDelay.class},
+                "server.port=0",
+                "server.tomcat.max-threads=" + SERVLET_THREADS,
+                "shorturl.async.enabled=" + async,
+                "shorturl.async.db-threads=" + SERVLET_THREADS,
+                "shorturl.admission.enabled=false",
+                "shorturl.cache.maximum-size=1000");
+        port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+
+        UrlService urlService = context.getBean(UrlService.class);
+        keys = UrlCorpus.generate(PRELOADED_URLS, 42).stream()
+                .map(url -> urlService.create(url).getKey())
+                .toArray(String[]::new);
+        try (Client client = new Client(port)) {
+            for (int i = 0; i < HOT_KEYS; i++) {
+                client.get("/redirect/" + keys[i]);
+            }
+        }
+        RoundTripDelay.enabled = true;
+    }
+
+    @TearDown
+    public void tearDown() {
+        RoundTripDelay.enabled = false;
+        context.close();
+    }
+
+    @Benchmark
+    @Group("redirect")
+    @GroupThreads(96)
+    public int hotKeys(Connection connection) throws IOException {
+        return connection.client.get("/redirect/" + keys[connection.random.nextInt(HOT_KEYS)]);
+    }
+
+    @Benchmark
+    @Group("redirect")
+    @GroupThreads(32)
+    public int coldKeys(Connection connection) throws IOException {
+        return connection.client.get("/redirect/" + keys[HOT_KEYS + connection.random.nextInt(PRELOADED_URLS - HOT_KEYS)]);
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        final Random random = new Random(Thread.currentThread().getId());
+        Client client;
+
+        @Setup(Level.Trial)
+        public void open(AsyncServletBenchmark benchmark) throws IOException {
+            client = new Client(benchmark.port);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+
+    /**
+     * Minimal HTTP/1.1 client over one keep-alive connection, which reconnects when the server closes it
+     */
+    static final class Client implements AutoCloseable {
+        private final int port;
+        private Socket socket;
+        private InputStream input;
+        private OutputStream output;
+
+        Client(int port) throws IOException {
+            this.port = port;
+            connect();
+        }
+
+        /**
+         * @return the status of the response, whose body is skipped
+         */
+        int get(String path) throws IOException {
+            output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+
+            String statusLine = readLine();
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long contentLength = 0;
+            boolean closed = false;
+            for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+                String name = header.substring(0, header.indexOf(':')).trim();
+                String value = header.substring(header.indexOf(':') + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                    closed = true;
+                }
+            }
+            for (long skipped = 0; skipped < contentLength; skipped++) {
+                input.read();
+            }
+            if (closed) {
+                close();
+                connect();
+            }
+            return status;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int c = input.read(); c != '\n'; c = input.read()) {
+                if (c == -1) {
+                    throw new IOException("Connection closed by the server");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            input = new BufferedInputStream(socket.getInputStream());
+            output = socket.getOutputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Adds a round trip to every connection taken from the data source
+     */
+    public static class RoundTripDelay implements BeanPostProcessor {
+        static volatile boolean enabled;
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof DataSource) || !"dataSource".equals(beanName)) {
+                return bean;
+            }
+            return new DelegatingDataSource((DataSource) bean) {
+                @Override
+                public java.sql.Connection getConnection() throws SQLException {
+                    if (enabled) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ROUND_TRIP_MILLIS));
+                    }
+                    return super.getConnection();
+                }
+            };
+        }
+    }
+}
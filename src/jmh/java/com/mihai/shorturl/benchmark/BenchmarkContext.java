@@ -0,0 +1,43 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.ShorturlApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application for the benchmarks against an in-memory HSQLDB, without an HTTP server.
+ *
+ * @author Mihai Iusan
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param properties extra properties, as name=value
+     * @return the started context
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return start(new Class<?>[0], properties);
+    }
+
+    /**
+     * @param sources    extra sources of beans, next to the application
+     * @param properties extra properties, as name=value
+     * @return the started context
+     */
+    public static ConfigurableApplicationContext start(Class<?>[] sources, String... properties) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        return new SpringApplicationBuilder(ShorturlApplication.class)
+                .sources(sources)
+                .properties(
+                        "spring.datasource.url=jdbc:hsqldb:mem:benchmark" + System.nanoTime(),
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "server.port=-1",
+                        "logging.level.root=WARN",
+                        "shorturl.reclaim.initial-delay-ms=3600000")
+                .properties(properties)
+                .run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bursts of creates of the same new url from many threads, like a link going viral.
+ * <p>
+ * Note: every group of {@link #BURST_SIZE} consecutive creates uses the same url, the failed creates are reported
+ * in the errors counter
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class CreateBurstBenchmark {
+    private static final int BURST_SIZE = 16;
+
+    private ConfigurableApplicationContext context;
+    private UrlService urlService;
+    private final AtomicLong creates = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        urlService = context.getBean(UrlService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void createSameUrl(Outcomes outcomes) {
+        long burst = creates.getAndIncrement() / BURST_SIZE;
+        try {
+            urlService.create("https://viral.example.com/post/" + burst);
+            outcomes.created++;
+        } catch (RuntimeException e) {
+            outcomes.errors++;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long created;
+        public long errors;
+    }
+}
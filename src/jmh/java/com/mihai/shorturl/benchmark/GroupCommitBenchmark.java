@@ -0,0 +1,85 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates of new urls per second with and without group commit, at several concurrency levels.
+ * <p>
+ * Note: the database is a file store which syncs on every commit, like a durable production setup
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupCommitBenchmark {
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    private File databaseDir;
+    private ConfigurableApplicationContext context;
+    private UrlService urlService;
+    private final AtomicLong created = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+        databaseDir = Files.createTempDirectory("group-commit-benchmark").toFile();
+        context = BenchmarkContext.start(
+                "spring.datasource.url=jdbc:hsqldb:file:" + databaseDir + "/urlshort;hsqldb.write_delay=false",
+                "shorturl.create.group-commit.enabled=" + groupCommit);
+        urlService = context.getBean(UrlService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(databaseDir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object create1Thread() {
+        return create();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object create8Threads() {
+        return create();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object create32Threads() {
+        return create();
+    }
+
+    private Object create() {
+        return urlService.create("https://example.com/articles/" + created.incrementAndGet());
+    }
+}
@@ -0,0 +1,98 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.KeyService;
+import com.mihai.shorturl.service.impl.Base36HashService;
+import com.mihai.shorturl.service.impl.Base62KeyEncoder;
+import com.mihai.shorturl.service.impl.KeyBlockAllocator;
+import com.mihai.shorturl.service.impl.SequenceKeyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Key generation: the hash based generator, the sequence generator without the database round trip of a block
+ * reservation, and the Base62 encoder alone.
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyServiceBenchmark {
+    private static final int CORPUS_SIZE = 10000;
+
+    private String[] urls;
+    private KeyService hashKeyService;
+    private KeyService sequenceKeyService;
+    private Base62KeyEncoder plainEncoder;
+    private Base62KeyEncoder obfuscatingEncoder;
+    private long id;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<String> corpus = UrlCorpus.generate(CORPUS_SIZE, 42);
+        urls = corpus.toArray(new String[0]);
+        hashKeyService = new Base36HashService();
+        sequenceKeyService = new SequenceKeyService(new InMemoryAllocator(), 1000, 7, true);
+        plainEncoder = new Base62KeyEncoder(7, false);
+        obfuscatingEncoder = new Base62KeyEncoder(7, true);
+        id = 1;
+    }
+
+    @Benchmark
+    public String hashShorten() {
+        return hashKeyService.shorten(nextUrl());
+    }
+
+    @Benchmark
+    public String sequenceShorten() {
+        return sequenceKeyService.shorten(nextUrl());
+    }
+
+    @Benchmark
+    public String encodePlain() {
+        return plainEncoder.encode(id++);
+    }
+
+    @Benchmark
+    public String encodeObfuscated() {
+        return obfuscatingEncoder.encode(id++);
+    }
+
+    private String nextUrl() {
+        String url = urls[next];
+        next = next + 1 == urls.length ? 0 : next + 1;
+        return url;
+    }
+
+    /**
+     * Hands out blocks from memory, the reservation cost is the same for every generator so it is left out.
+     */
+    private static final class InMemoryAllocator extends KeyBlockAllocator {
+        private final AtomicLong nextValue = new AtomicLong(1);
+
+        InMemoryAllocator() {
+            super(null, null);
+        }
+
+        @Override
+        public long allocate(String name, int blockSize) {
+            return nextValue.getAndAdd(blockSize);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.UrlStore;
+import com.mihai.shorturl.service.ShortenResult;
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key lookups and writes of the log-structured url store against the same operations through JPA.
+ * <p>
+ * Note: both sides hold the same preloaded urls and are read with keys from a Zipf distribution; the url cache is
+ * not involved
+ * Note: the JPA side is the in-memory HSQLDB, so it has no disk reads either
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogStoreBenchmark {
+    private static final int PRELOADED_URLS = 100000;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private UrlStore urlStore;
+    private UrlRepository urlRepository;
+    private String[] keys;
+    private String[] urls;
+    private ZipfGenerator zipf;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("urlshort-log");
+        context = BenchmarkContext.start("shorturl.store=log", "shorturl.store.log.directory=" + directory,
+                "shorturl.batch.max-size=" + PRELOADED_URLS);
+        urlStore = context.getBean(UrlStore.class);
+        urlRepository = context.getBean(UrlRepository.class);
+
+        List<String> corpus = UrlCorpus.generate(PRELOADED_URLS, 42);
+        urls = corpus.toArray(new String[0]);
+        keys = new String[urls.length];
+        List<ShortenResult> results = context.getBean(UrlService.class).createAll(corpus);
+        for (int i = 0; i < urls.length; i++) {
+            keys[i] = results.get(i).getKey();
+        }
+        zipf = new ZipfGenerator(PRELOADED_URLS, 1.0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Benchmark
+    public UrlEntity storeFindByKey(ThreadRandom threadRandom) {
+        return urlStore.findByKey(keys[zipf.next(threadRandom.random)]);
+    }
+
+    @Benchmark
+    public UrlEntity repositoryFindByKey(ThreadRandom threadRandom) {
+        return urlRepository.findByKey(keys[zipf.next(threadRandom.random)]);
+    }
+
+    @Benchmark
+    public void storeSave(ThreadRandom threadRandom) {
+        int i = zipf.next(threadRandom.random);
+        urlStore.save(new UrlEntity(urls[i], keys[i]));
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        final Random random = new Random(Thread.currentThread().getId());
+    }
+}
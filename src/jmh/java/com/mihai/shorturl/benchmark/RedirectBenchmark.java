@@ -0,0 +1,76 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * The redirect endpoint through the whole MVC stack, for known keys drawn from a Zipf distribution and unknown keys.
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedirectBenchmark {
+    private static final int PRELOADED_URLS = 10000;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String[] keys;
+    private ZipfGenerator zipf;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        UrlService urlService = context.getBean(UrlService.class);
+        keys = UrlCorpus.generate(PRELOADED_URLS, 42).stream()
+                .map(url -> urlService.create(url).getKey())
+                .toArray(String[]::new);
+        zipf = new ZipfGenerator(PRELOADED_URLS, 1.0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult redirect(ThreadRandom threadRandom) throws Exception {
+        return mockMvc.perform(get("/redirect/{key}", keys[zipf.next(threadRandom.random)])).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult redirectUnknownKey() throws Exception {
+        return mockMvc.perform(get("/redirect/{key}", "unknown")).andReturn();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        final Random random = new Random(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,103 @@
+package com.mihai.shorturl.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mihai.shorturl.api.ApiMediaTypes;
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Resolving a page of keys with one single lookup per key against one multi-key resolve, with and without the url
+ * cache; each operation resolves the whole page.
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveBenchmark {
+    private static final int PRELOADED_URLS = 10000;
+
+    @Param({"100"})
+    private int pageSize;
+
+    @Param({"100000", "0"})
+    private long cacheSize;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String[] keys;
+    private String page;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start("shorturl.cache.maximum-size=" + cacheSize);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        UrlService urlService = context.getBean(UrlService.class);
+        keys = UrlCorpus.generate(PRELOADED_URLS, 42).stream()
+                .map(url -> urlService.create(url).getKey())
+                .toArray(String[]::new);
+        page = context.getBean(ObjectMapper.class).writeValueAsString(Arrays.copyOf(keys, pageSize));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult singleLookups() throws Exception {
+        MvcResult result = null;
+        for (int i = 0; i < pageSize; i++) {
+            result = mockMvc.perform(get("/url/")
+                    .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                    .param("shortUrl", keys[i]))
+                    .andReturn();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public MvcResult resolveLines() throws Exception {
+        return mockMvc.perform(post("/url/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(ApiMediaTypes.APPLICATION_NDJSON_VALUE)
+                .content(page))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult resolveBinary() throws Exception {
+        return mockMvc.perform(post("/url/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE)
+                .content(page))
+                .andReturn();
+    }
+}
@@ -0,0 +1,69 @@
+package com.mihai.shorturl.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible set of URLs shaped like real shortener traffic: popular and long tail hosts, a few path
+ * segments, tracking query strings and the odd very long URL.
+ *
+ * @author Mihai Iusan
+ */
+public final class UrlCorpus {
+    private static final String[] HOSTS = {
+            "www.google.com", "www.youtube.com", "en.wikipedia.org", "www.amazon.com", "github.com",
+            "www.reddit.com", "twitter.com", "www.facebook.com", "www.linkedin.com", "medium.com",
+            "stackoverflow.com", "www.nytimes.com", "www.bbc.co.uk", "docs.oracle.com", "spring.io"};
+    private static final String[] WORDS = {
+            "news", "article", "product", "item", "search", "watch", "wiki", "blog", "post", "user", "docs",
+            "java", "spring", "release", "2018", "summer", "sale", "campaign", "landing", "index", "page"};
+    private static final String[] TRACKING = {
+            "utm_source=newsletter", "utm_medium=email", "utm_campaign=spring_sale", "ref=share", "fbclid=IwAR3x",
+            "gclid=Cj0KCQ", "lang=en", "page=2"};
+
+    private UrlCorpus() {
+    }
+
+    /**
+     * @param size the number of urls
+     * @param seed the random seed, the same seed gives the same urls
+     * @return distinct urls
+     */
+    public static List<String> generate(int size, long seed) {
+        Random random = new Random(seed);
+        List<String> urls = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder url = new StringBuilder(random.nextInt(10) < 8 ? "https://" : "http://");
+            // most links point to a few popular hosts, the rest to a long tail
+            if (random.nextInt(10) < 7) {
+                url.append(HOSTS[random.nextInt(HOSTS.length)]);
+            } else {
+                url.append("www.site").append(random.nextInt(5000)).append(".com");
+            }
+
+            int segments = 1 + random.nextInt(5);
+            for (int s = 0; s < segments; s++) {
+                url.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            // keeps the urls distinct
+            url.append('/').append(Integer.toString(i, 36));
+
+            if (random.nextInt(10) < 4) {
+                int params = 1 + random.nextInt(3);
+                for (int p = 0; p < params; p++) {
+                    url.append(p == 0 ? '?' : '&').append(TRACKING[random.nextInt(TRACKING.length)]);
+                }
+            }
+            if (random.nextInt(100) == 0) {
+                url.append(url.indexOf("?") < 0 ? '?' : '&').append("state=");
+                int padding = 500 + random.nextInt(1000);
+                for (int c = 0; c < padding; c++) {
+                    url.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            urls.add(url.toString());
+        }
+        return urls;
+    }
+}
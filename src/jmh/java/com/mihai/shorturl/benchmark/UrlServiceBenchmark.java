@@ -0,0 +1,85 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.UrlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creating urls and looking up keys through the service, against an in-memory HSQLDB.
+ * <p>
+ * Note: lookups draw keys from a Zipf distribution over the preloaded urls, so most of them hit the cache
+ * Note: every create stores a new url, the table grows during the run
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlServiceBenchmark {
+    private static final int PRELOADED_URLS = 10000;
+
+    private ConfigurableApplicationContext context;
+    private UrlService urlService;
+    private String[] urls;
+    private String[] keys;
+    private ZipfGenerator zipf;
+    private final AtomicLong created = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        urlService = context.getBean(UrlService.class);
+
+        List<String> corpus = UrlCorpus.generate(PRELOADED_URLS, 42);
+        urls = corpus.toArray(new String[0]);
+        keys = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            keys[i] = urlService.create(urls[i]).getKey();
+        }
+        zipf = new ZipfGenerator(PRELOADED_URLS, 1.0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UrlEntity createNew() {
+        return urlService.create(urls[(int) (created.get() % urls.length)] + "?n=" + created.incrementAndGet());
+    }
+
+    @Benchmark
+    public UrlEntity createExisting(ThreadRandom threadRandom) {
+        return urlService.create(urls[zipf.next(threadRandom.random)]);
+    }
+
+    @Benchmark
+    public String findUrlByKey(ThreadRandom threadRandom) {
+        return urlService.findUrlByKey(keys[zipf.next(threadRandom.random)]);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        final Random random = new Random(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,79 @@
+package com.mihai.shorturl.benchmark;
+
+import com.mihai.shorturl.service.SupportedProtocol;
+import com.mihai.shorturl.service.verifier.UrlValidatorVerifier;
+import com.mihai.shorturl.service.verifier.UrlVerifier;
+import com.mihai.shorturl.service.verifier.UrlVerifiers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Url verification, with and without the verdict cache, with one verifier (inline) and several (concurrent).
+ * <p>
+ * Note: urls are drawn from a Zipf distribution, so the cache hit ratio is close to the one of real traffic
+ *
+ * @author Mihai Iusan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifierBenchmark {
+    private static final int CORPUS_SIZE = 10000;
+
+    @Param({"0", "10000"})
+    private long cacheSize;
+
+    @Param({"1", "3"})
+    private int verifierCount;
+
+    private String[] urls;
+    private ZipfGenerator zipf;
+    private Random random;
+    private UrlVerifiers urlVerifiers;
+
+    @Setup
+    public void setUp() {
+        urls = UrlCorpus.generate(CORPUS_SIZE, 42).toArray(new String[0]);
+        zipf = new ZipfGenerator(CORPUS_SIZE, 1.0);
+        random = new Random(7);
+
+        List<UrlVerifier> verifiers = new ArrayList<>();
+        for (int i = 0; i < verifierCount; i++) {
+            verifiers.add(new UrlValidatorVerifier());
+        }
+        urlVerifiers = new UrlVerifiers(verifiers, 2000, 4, cacheSize, 600);
+    }
+
+    @TearDown
+    public void tearDown() {
+        urlVerifiers.shutdown();
+    }
+
+    @Benchmark
+    public boolean isSafe() {
+        return urlVerifiers.isSafe(urls[zipf.next(random)]);
+    }
+
+    @Benchmark
+    public boolean supportedProtocol() {
+        return SupportedProtocol.contains(urls[zipf.next(random)]);
+    }
+}
@@ -0,0 +1,41 @@
+package com.mihai.shorturl.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks from a Zipf distribution, so a few keys get most of the lookups like real redirect traffic.
+ * <p>
+ * Note: the cumulative distribution is shared, every thread should use its own {@link Random}
+ *
+ * @author Mihai Iusan
+ */
+public final class ZipfGenerator {
+    private final double[] cumulative;
+
+    /**
+     * @param size     the number of ranks
+     * @param exponent the skew, around 1 for web traffic
+     */
+    public ZipfGenerator(int size, double exponent) {
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    /**
+     * @param random the random source of the calling thread
+     * @return a rank between 0 and size - 1, 0 being the most frequent
+     */
+    public int next(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,25 @@
+package com.mihai.shorturl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Runs the scheduled jobs, like the key filter rebuild, the reclaimer scan, the log compaction, the cache snapshot and
+ * the click flush, on a pool instead of the single thread Spring uses without a scheduler bean, so a slow job does not
+ * hold back the others.
+ *
+ * @author Mihai Iusan
+ */
+@Configuration
+public class SchedulingConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${shorturl.scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(poolSize);
+        taskScheduler.setThreadNamePrefix("scheduled-");
+        return taskScheduler;
+    }
+}
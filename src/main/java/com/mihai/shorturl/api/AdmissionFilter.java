@@ -0,0 +1,86 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.admission.AdmissionControl;
+import com.mihai.shorturl.service.metrics.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admits the requests of the shorten, redirect and resolve endpoints through {@link AdmissionControl}, the rejected
+ * ones get a 503, or a 429 when their client is over its rate, with a Retry-After header right away.
+ * <p>
+ * Note: it runs before {@link RequestMetricsFilter}, so rejected requests are not in the latency of their endpoint
+ * Note: an async request holds its admission until it completes
+ * Note: the client is the value of shorturl.admission.client-rate.header if it is set, otherwise the remote address
+ *
+ * @author Mihai Iusan
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionFilter.class);
+
+    private final AdmissionControl admissionControl;
+    private final String clientHeader;
+
+    @Autowired
+    public AdmissionFilter(AdmissionControl admissionControl,
+                           @Value("${shorturl.admission.client-rate.header:}") String clientHeader) {
+        this.admissionControl = admissionControl;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Endpoint endpoint = RequestMetricsFilter.endpointOf(request);
+        if (!admissionControl.isLimited(endpoint)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long clientRetryAfter = admissionControl.admitClient(clientOf(request));
+        if (clientRetryAfter > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, clientRetryAfter, "Too many requests, try again later");
+            return;
+        }
+        if (!admissionControl.tryAcquire(endpoint)) {
+            logger.debug("Shed a {} request", endpoint.getLabel());
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, admissionControl.getRetryAfterSeconds(),
+                    "The service is overloaded, try again later");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            AsyncCompletion.whenComplete(request, () -> admissionControl.release(endpoint, start));
+        }
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String client = StringUtils.isEmpty(clientHeader) ? null : request.getHeader(clientHeader);
+        return client != null ? client : request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message)
+            throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(status.value(), message);
+    }
+}
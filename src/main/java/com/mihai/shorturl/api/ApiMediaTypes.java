@@ -0,0 +1,24 @@
+package com.mihai.shorturl.api;
+
+/**
+ * Media types used by the API besides the ones of {@link org.springframework.http.MediaType}.
+ *
+ * @author Mihai Iusan
+ */
+public final class ApiMediaTypes {
+
+    /**
+     * Newline delimited JSON, one JSON value per line
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Resolved URLs in a compact binary layout, big endian: [count (4)], then for each requested key, in request order,
+     * [key length (2)][key][url length (4), -1 if not found][url][expiration epoch day (8)][expires at epoch millis (8)],
+     * the url and both expirations only if found; strings are UTF-8
+     */
+    public static final String APPLICATION_RESOLVED_URLS_VALUE = "application/x-shorturl-resolved";
+
+    private ApiMediaTypes() {
+    }
+}
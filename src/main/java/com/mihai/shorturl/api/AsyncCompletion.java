@@ -0,0 +1,49 @@
+package com.mihai.shorturl.api;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Runs an action once a request completes, which for an async request is after the filter chain returned.
+ * <p>
+ * Note: the action of an async request runs on the thread which completes it, once, also after an error or timeout
+ *
+ * @author Mihai Iusan
+ */
+final class AsyncCompletion implements AsyncListener {
+    private final Runnable action;
+
+    private AsyncCompletion(Runnable action) {
+        this.action = action;
+    }
+
+    /**
+     * @param request the request whose filter chain just returned
+     * @param action  the action, run right away if the request did not go async
+     */
+    static void whenComplete(HttpServletRequest request, Runnable action) {
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncCompletion(action));
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        action.run();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
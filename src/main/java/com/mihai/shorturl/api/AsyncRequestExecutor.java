@@ -0,0 +1,145 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import com.mihai.shorturl.service.metrics.QueryCountingInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the database work of the shorten and redirect requests on a bounded pool, so the servlet threads are released
+ * while a request waits on the database (async servlet mode).
+ * <p>
+ * Note: disabled by default, the requests then run on their servlet thread as before (thread per request)
+ * Note: the pool and its queue are bounded, a request which cannot be queued fails right away with a 503; a request
+ * still queued after its timeout is dropped and answered with a 503 as well
+ * Note: the statements prepared on the pool are counted in the holder which the request thread puts in
+ * {@link QueryCountingInspector#ASYNC_COUNT_ATTRIBUTE}; the pool threads never touch the request, which may already
+ * be recycled once the result timed out
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class AsyncRequestExecutor implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+    private final boolean enabled;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * @param threads   the threads waiting on the database, at most the connections of the pool are useful
+     * @param queueSize the requests waiting for a thread
+     */
+    @Autowired
+    public AsyncRequestExecutor(@Value("${shorturl.async.enabled:false}") boolean enabled,
+                                @Value("${shorturl.async.db-threads:32}") int threads,
+                                @Value("${shorturl.async.queue-size:1000}") int queueSize,
+                                @Value("${shorturl.async.timeout-ms:5000}") long timeoutMillis) {
+        this.enabled = enabled;
+        this.timeoutMillis = timeoutMillis;
+        if (enabled) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("db-request-");
+            threadFactory.setDaemon(true);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), threadFactory);
+            logger.info("Async requests enabled, {} database threads", threads);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the work of the current request on the pool
+     *
+     * @param work the work, its exceptions are handled like those of the controller
+     * @param <T>  the result
+     * @return the result, to be returned by the controller
+     * @throws ServiceOverloadedException if the queue is full
+     */
+    public <T> DeferredResult<T> submit(Supplier<T> work) {
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        DeferredResult<T> result = new DeferredResult<>(timeoutMillis);
+        result.onTimeout(timeouts::increment);
+        AtomicLong asyncCount = new AtomicLong();
+        request.setAttribute(QueryCountingInspector.ASYNC_COUNT_ATTRIBUTE, asyncCount);
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> run(work, result, asyncCount, submitted));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceOverloadedException("Too many pending requests, try again later", e);
+        }
+        return result;
+    }
+
+    private <T> void run(Supplier<T> work, DeferredResult<T> result, AtomicLong asyncCount, long submitted) {
+        queueNanos.add(System.nanoTime() - submitted);
+        if (result.isSetOrExpired()) {
+            return;
+        }
+        QueryCountingInspector.reset();
+        try {
+            T value = work.get();
+            asyncCount.set(QueryCountingInspector.count());
+            result.setResult(value);
+        } catch (RuntimeException e) {
+            asyncCount.set(QueryCountingInspector.count());
+            result.setErrorResult(e);
+        } finally {
+            completed.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        long count = completed.sum();
+        metrics.add(new Metric<>("async.db.active", executor.getActiveCount()));
+        metrics.add(new Metric<>("async.db.queued", executor.getQueue().size()));
+        metrics.add(new Metric<>("async.db.completed", count));
+        metrics.add(new Metric<>("async.db.rejected", rejected.sum()));
+        metrics.add(new Metric<>("async.db.timeouts", timeouts.sum()));
+        metrics.add(new Metric<>("async.db.queue.wait.ms", count == 0 ? 0.0 : queueNanos.sum() / 1e6 / count));
+        return metrics;
+    }
+}
@@ -0,0 +1,33 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.HotKey;
+import com.mihai.shorturl.service.cache.HeavyHitters;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin")
+public class HotKeysController {
+    private final HeavyHitters heavyHitters;
+
+    @Autowired
+    public HotKeysController(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
+    @GetMapping(
+            path = "/hot-keys",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Retrieve the most redirected keys with their estimated redirect rates")
+    public ResponseEntity<List<HotKey>> hotKeys() {
+        return new ResponseEntity<>(heavyHitters.hotKeys(), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,126 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.metrics.Endpoint;
+import com.mihai.shorturl.service.metrics.Event;
+import com.mihai.shorturl.service.metrics.ServiceMetrics;
+import com.mihai.shorturl.service.metrics.Stage;
+import io.swagger.annotations.ApiOperation;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exposes the service metrics in the Prometheus text format.
+ * <p>
+ * Note: the latency histograms are written as summaries in seconds, the quantiles cover everything recorded since
+ * startup; the sums are exact, only the quantiles are approximated
+ * Note: the metrics of the other components (cache, clicks, verifiers, JVM) are written as gauges, a name which
+ * comes up again after sanitizing is written once
+ *
+ * @author Mihai Iusan
+ */
+@RestController
+@RequestMapping("/prometheus")
+public class PrometheusController {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PREFIX = "shorturl_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double MICROS_PER_SECOND = 1e6;
+
+    private final ServiceMetrics serviceMetrics;
+    private final List<PublicMetrics> publicMetrics;
+
+    @Autowired
+    public PrometheusController(ServiceMetrics serviceMetrics, List<PublicMetrics> publicMetrics) {
+        this.serviceMetrics = serviceMetrics;
+        this.publicMetrics = publicMetrics;
+    }
+
+    @GetMapping
+    @ApiOperation(value = "Scrape the metrics in the Prometheus text format")
+    public void scrape(HttpServletResponse response) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        PrintWriter writer = response.getWriter();
+
+        writeType(writer, "stage_latency_seconds", "summary");
+        for (Stage stage : Stage.values()) {
+            writeSummary(writer, "stage_latency_seconds", "stage", stage.getLabel(),
+                    serviceMetrics.getStageLatencies(stage), serviceMetrics.getStageLatencySum(stage), MICROS_PER_SECOND);
+        }
+
+        writeType(writer, "request_latency_seconds", "summary");
+        for (Endpoint endpoint : Endpoint.values()) {
+            writeSummary(writer, "request_latency_seconds", "endpoint", endpoint.getLabel(),
+                    serviceMetrics.getRequestLatencies(endpoint), serviceMetrics.getRequestLatencySum(endpoint),
+                    MICROS_PER_SECOND);
+        }
+
+        writeType(writer, "request_queries", "summary");
+        for (Endpoint endpoint : Endpoint.values()) {
+            writeSummary(writer, "request_queries", "endpoint", endpoint.getLabel(),
+                    serviceMetrics.getRequestQueries(endpoint), serviceMetrics.getRequestQuerySum(endpoint), 1);
+        }
+
+        for (Event event : Event.values()) {
+            String name = event.getLabel() + "_total";
+            writeType(writer, name, "counter");
+            writer.append(PREFIX).append(name).append(' ').println(serviceMetrics.getEvents(event));
+        }
+
+        Set<String> names = new HashSet<>();
+        for (PublicMetrics metrics : publicMetrics) {
+            for (Metric<?> metric : metrics.metrics()) {
+                String name = sanitize(metric.getName());
+                if (names.add(name)) {
+                    writeType(writer, name, "gauge");
+                    writer.append(PREFIX).append(name).append(' ').println(format(metric.getValue().doubleValue()));
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeType(PrintWriter writer, String name, String type) {
+        writer.append("# TYPE ").append(PREFIX).append(name).append(' ').println(type);
+    }
+
+    private static void writeSummary(PrintWriter writer, String name, String labelName, String labelValue,
+                                     Histogram histogram, long sum, double unit) {
+        String labels = labelName + "=\"" + labelValue + "\"";
+        for (double quantile : QUANTILES) {
+            writer.append(PREFIX).append(name).append('{').append(labels).append(",quantile=\"")
+                    .append(Double.toString(quantile)).append("\"} ")
+                    .println(histogram.getValueAtPercentile(quantile * 100) / unit);
+        }
+        writer.append(PREFIX).append(name).append("_sum{").append(labels).append("} ").println(sum / unit);
+        writer.append(PREFIX).append(name).append("_count{").append(labels).append("} ")
+                .println(histogram.getTotalCount());
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sanitized.append(Character.isLetterOrDigit(c) || c == '_' ? c : '_');
+        }
+        return sanitized.toString();
+    }
+}
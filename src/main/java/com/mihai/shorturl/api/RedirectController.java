@@ -1,29 +1,124 @@
 package com.mihai.shorturl.api;
 
+import com.mihai.shorturl.service.ClickService;
+import com.mihai.shorturl.service.ResolvedUrl;
 import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.cache.HeavyHitters;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Redirects keys to their URL.
+ * <p>
+ * Note: the status and headers are written straight to the response, without going through view resolution
+ * Note: the response may be cached by browsers and CDNs until the URL expires
+ * Note: redirects are counted by {@link HeavyHitters}, which pins the URLs of the hottest keys in memory
+ * Note: with {@link AsyncRequestExecutor} enabled, cached keys are still redirected on the servlet thread and only
+ * the keys which may need the database are resolved on its pool
+ *
+ * @author Mihai Iusan
+ */
 @Component
 @Controller
 @RequestMapping("/redirect")
 public class RedirectController {
+    private static final String CACHE_CONTROL_PREFIX = "public, max-age=";
+    private static final String NOT_FOUND_CACHE_CONTROL = "no-cache";
+
     private UrlService urlService;
+    private ClickService clickService;
+    private HeavyHitters heavyHitters;
+    private AsyncRequestExecutor asyncRequestExecutor;
+    private int redirectStatus;
 
     @Autowired
-    public RedirectController(UrlService urlService) {
+    public RedirectController(UrlService urlService, ClickService clickService, HeavyHitters heavyHitters,
+                              AsyncRequestExecutor asyncRequestExecutor,
+                              @Value("${shorturl.redirect.status:302}") int redirectStatus) {
+        if (redirectStatus != HttpServletResponse.SC_MOVED_PERMANENTLY
+                && redirectStatus != HttpServletResponse.SC_FOUND
+                && redirectStatus != HttpServletResponse.SC_TEMPORARY_REDIRECT) {
+            throw new IllegalArgumentException("Unsupported redirect status: " + redirectStatus);
+        }
         this.urlService = urlService;
+        this.clickService = clickService;
+        this.heavyHitters = heavyHitters;
+        this.asyncRequestExecutor = asyncRequestExecutor;
+        this.redirectStatus = redirectStatus;
     }
 
-
+    /**
+     * @return NULL once the redirect is written to the response, otherwise the redirect which is resolved on the
+     * pool of {@link AsyncRequestExecutor}
+     */
     @GetMapping(value = "/{key}")
-    public ModelAndView redirect(@PathVariable("key") String key) {
-        final String url = urlService.findUrlByKey(key);
-        return new ModelAndView("redirect:" + url);
+    public DeferredResult<ResponseEntity<Void>> redirect(@PathVariable("key") String key, HttpServletResponse response) {
+        if (asyncRequestExecutor.isEnabled()) {
+            ResolvedUrl cachedUrl = urlService.resolveCached(key);
+            if (cachedUrl == null) {
+                return asyncRequestExecutor.submit(() -> redirectTo(key, urlService.resolve(key)));
+            }
+            write(key, cachedUrl, response);
+            return null;
+        }
+        write(key, urlService.resolve(key), response);
+        return null;
+    }
+
+    /**
+     * Write the status and headers straight to the response, without building a response entity
+     */
+    private void write(String key, ResolvedUrl resolvedUrl, HttpServletResponse response) {
+        if (resolvedUrl == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, NOT_FOUND_CACHE_CONTROL);
+            response.setContentLength(0);
+            return;
+        }
+        recordRedirect(key, resolvedUrl);
+        response.setStatus(redirectStatus);
+        response.setHeader(HttpHeaders.LOCATION, resolvedUrl.getUrl());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL_PREFIX + maxAgeSeconds(resolvedUrl));
+        response.setDateHeader(HttpHeaders.EXPIRES, resolvedUrl.getExpiresAtMillis());
+        response.setContentLength(0);
+    }
+
+    /**
+     * Build the redirect of a request resolved on the pool, whose response is written once it is dispatched back
+     */
+    private ResponseEntity<Void> redirectTo(String key, ResolvedUrl resolvedUrl) {
+        if (resolvedUrl == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .header(HttpHeaders.CACHE_CONTROL, NOT_FOUND_CACHE_CONTROL)
+                    .contentLength(0)
+                    .build();
+        }
+        recordRedirect(key, resolvedUrl);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.LOCATION, resolvedUrl.getUrl());
+        headers.setCacheControl(CACHE_CONTROL_PREFIX + maxAgeSeconds(resolvedUrl));
+        headers.setExpires(resolvedUrl.getExpiresAtMillis());
+        headers.setContentLength(0);
+        return new ResponseEntity<>(headers, HttpStatus.valueOf(redirectStatus));
+    }
+
+    private void recordRedirect(String key, ResolvedUrl resolvedUrl) {
+        clickService.recordClick(key);
+        heavyHitters.record(key, resolvedUrl);
+    }
+
+    private static long maxAgeSeconds(ResolvedUrl resolvedUrl) {
+        return Math.max(0, (resolvedUrl.getExpiresAtMillis() - System.currentTimeMillis()) / 1000);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.metrics.Endpoint;
+import com.mihai.shorturl.service.metrics.QueryCountingInspector;
+import com.mihai.shorturl.service.metrics.ServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the latency and the number of queries of each HTTP request, by endpoint.
+ * <p>
+ * Note: an async request is recorded when it completes, with the queries of its request thread and of
+ * {@link AsyncRequestExecutor}
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+    private static final String URL_PREFIX = "/url/";
+    private static final String BATCH_PATH = "/url/batch";
+    private static final String RESOLVE_PATH = "/url/resolve";
+    private static final String REDIRECT_PREFIX = "/redirect/";
+
+    private final ServiceMetrics serviceMetrics;
+
+    @Autowired
+    public RequestMetricsFilter(ServiceMetrics serviceMetrics) {
+        this.serviceMetrics = serviceMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        QueryCountingInspector.reset();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Endpoint endpoint = endpointOf(request);
+            long queries = QueryCountingInspector.count();
+            AsyncCompletion.whenComplete(request,
+                    () -> serviceMetrics.recordRequest(endpoint, start, queries + asyncQueriesOf(request)));
+        }
+    }
+
+    private static long asyncQueriesOf(HttpServletRequest request) {
+        Object count = request.getAttribute(QueryCountingInspector.ASYNC_COUNT_ATTRIBUTE);
+        return count instanceof AtomicLong ? ((AtomicLong) count).get() : 0;
+    }
+
+    static Endpoint endpointOf(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String method = request.getMethod();
+        if ("GET".equals(method) && path.startsWith(REDIRECT_PREFIX)) {
+            return Endpoint.REDIRECT;
+        }
+        if ("POST".equals(method) && path.startsWith(RESOLVE_PATH)) {
+            return Endpoint.BATCH_RESOLVE;
+        }
+        if ("POST".equals(method) && path.startsWith(BATCH_PATH)) {
+            return Endpoint.BATCH_CREATE;
+        }
+        if ("POST".equals(method) && path.equals(URL_PREFIX)) {
+            return Endpoint.CREATE;
+        }
+        return Endpoint.OTHER;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.ClickService;
+import com.mihai.shorturl.service.ClickStats;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+    private final ClickService clickService;
+
+    @Autowired
+    public StatsController(ClickService clickService) {
+        this.clickService = clickService;
+    }
+
+    @GetMapping(
+            path = "/{key}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Retrieve the click statistics of a shortened URL")
+    public ResponseEntity<ClickStats> clickStats(@PathVariable("key") String key) {
+        return new ResponseEntity<>(clickService.getClickStats(key), HttpStatus.OK);
+    }
+}
@@ -1,26 +1,53 @@
 package com.mihai.shorturl.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.ResolvedUrl;
+import com.mihai.shorturl.service.ShortenResult;
+import com.mihai.shorturl.service.UrlPage;
 import com.mihai.shorturl.service.UrlService;
 import io.swagger.annotations.ApiOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/url")
 public class UrlController {
     private static final Logger logger = LoggerFactory.getLogger(UrlController.class);
+    private static final MediaType RESOLVED_URLS = MediaType.valueOf(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE);
+    // a key of up to this many characters fits the 2 byte length of the binary layout once encoded as UTF-8
+    private static final int MAX_KEY_LENGTH = 0xFFFF / 3;
+    private static final MediaType NDJSON = MediaType.valueOf(ApiMediaTypes.APPLICATION_NDJSON_VALUE);
 
     private final UrlService urlService;
+    private final ObjectMapper objectMapper;
+    private final AsyncRequestExecutor asyncRequestExecutor;
 
     @Autowired
-    public UrlController(UrlService urlService) {
+    public UrlController(UrlService urlService, ObjectMapper objectMapper, AsyncRequestExecutor asyncRequestExecutor) {
         this.urlService = urlService;
+        this.objectMapper = objectMapper;
+        this.asyncRequestExecutor = asyncRequestExecutor;
     }
 
     @PostMapping(
@@ -28,11 +55,65 @@ public class UrlController {
             consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Shorten a URL")
-    public ResponseEntity<UrlEntity> shortenUrl(@RequestParam(value = "longUrl", defaultValue = "https://www.google.com/") String url) {
+    public DeferredResult<ResponseEntity<UrlEntity>> shortenUrl(@RequestParam(value = "longUrl", defaultValue = "https://www.google.com/") String url,
+                                                                HttpServletResponse response) throws IOException {
         logger.debug("Shorten request for: {}", url);
-        UrlEntity urlEntity = urlService.create(url);
-        logger.debug("Returning url: {}", urlEntity.getKey());
-        return new ResponseEntity<>(urlEntity, HttpStatus.OK);
+        return respond(() -> {
+            UrlEntity urlEntity = urlService.create(url);
+            logger.debug("Returning url: {}", urlEntity.getKey());
+            return urlEntity;
+        }, response);
+    }
+
+    @PostMapping(
+            path = "/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Shorten a batch of URLs given as a JSON array")
+    public DeferredResult<ResponseEntity<List<ShortenResult>>> shortenUrls(@RequestBody List<String> urls,
+                                                                           HttpServletResponse response) throws IOException {
+        logger.debug("Batch shorten request for {} urls", urls.size());
+        return respond(() -> urlService.createAll(urls), response);
+    }
+
+    @PostMapping(
+            path = "/batch",
+            consumes = ApiMediaTypes.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Shorten a batch of URLs given as one JSON string per line")
+    public DeferredResult<ResponseEntity<List<ShortenResult>>> shortenUrlLines(@RequestBody String lines,
+                                                                               HttpServletResponse response) throws IOException {
+        List<String> urls = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : lines.split("\r?\n")) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                urls.add(objectMapper.readValue(line, String.class));
+            } catch (IOException e) {
+                throw new HttpMessageNotReadableException("Line " + lineNumber + " is not a JSON string", e);
+            }
+        }
+        logger.debug("Batch shorten request for {} urls", urls.size());
+        return respond(() -> urlService.createAll(urls), response);
+    }
+
+    /**
+     * Run the work on the pool of {@link AsyncRequestExecutor} if it is enabled, otherwise on this thread, with its
+     * result written straight to the response as JSON
+     *
+     * @return the result of the work on the pool, or NULL once the result is written to the response
+     */
+    private <T> DeferredResult<ResponseEntity<T>> respond(Supplier<T> work, HttpServletResponse response) throws IOException {
+        if (asyncRequestExecutor.isEnabled()) {
+            return asyncRequestExecutor.submit(() -> new ResponseEntity<>(work.get(), HttpStatus.OK));
+        }
+        T body = work.get();
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+        return null;
     }
 
     @GetMapping(
@@ -44,4 +125,129 @@ public class UrlController {
         UrlEntity urlEntity = urlService.find(shortUrl);
         return new ResponseEntity<>(urlEntity, HttpStatus.OK);
     }
+
+    @PostMapping(
+            path = "/resolve",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {ApiMediaTypes.APPLICATION_NDJSON_VALUE, ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE})
+    @ApiOperation(value = "Retrieve the URLs of several keys given as a JSON array, one record per key in request order")
+    public void resolveUrls(@RequestBody List<String> keys,
+                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                            HttpServletResponse response) throws IOException {
+        logger.debug("Resolve request for {} keys", keys.size());
+        for (String key : keys) {
+            if (key == null || key.length() > MAX_KEY_LENGTH) {
+                throw new HttpMessageNotReadableException("Keys must be strings of at most " + MAX_KEY_LENGTH + " characters");
+            }
+        }
+        Map<String, ResolvedUrl> resolvedUrls = urlService.resolveAll(keys);
+        if (prefersBinary(accept)) {
+            writeBinary(keys, resolvedUrls, response);
+        } else {
+            writeLines(keys, resolvedUrls, response);
+        }
+    }
+
+    /**
+     * @param accept the Accept header, null if missing
+     * @return true if the binary layout is preferred over newline delimited JSON
+     */
+    private static boolean prefersBinary(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.includes(NDJSON)) {
+                return false;
+            }
+            if (mediaType.includes(RESOLVED_URLS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeBinary(List<String> keys, Map<String, ResolvedUrl> resolvedUrls,
+                                    HttpServletResponse response) throws IOException {
+        response.setContentType(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+        output.writeInt(keys.size());
+        for (String key : keys) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            output.writeShort(keyBytes.length);
+            output.write(keyBytes);
+            ResolvedUrl resolvedUrl = resolvedUrls.get(key);
+            if (resolvedUrl == null) {
+                output.writeInt(-1);
+            } else {
+                byte[] urlBytes = resolvedUrl.getUrl().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(urlBytes.length);
+                output.write(urlBytes);
+                output.writeLong(resolvedUrl.getExpirationDate().toEpochDay());
+                output.writeLong(resolvedUrl.getExpiresAtMillis());
+            }
+        }
+        output.flush();
+    }
+
+    private void writeLines(List<String> keys, Map<String, ResolvedUrl> resolvedUrls,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(ApiMediaTypes.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            for (String key : keys) {
+                ResolvedUrl resolvedUrl = resolvedUrls.get(key);
+                generator.writeStartObject();
+                generator.writeStringField("key", key);
+                if (resolvedUrl == null) {
+                    generator.writeNullField("url");
+                } else {
+                    generator.writeStringField("url", resolvedUrl.getUrl());
+                    generator.writeStringField("expirationDate", resolvedUrl.getExpirationDate().toString());
+                    generator.writeNumberField("expiresAt", resolvedUrl.getExpiresAtMillis());
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    @GetMapping(
+            path = "/list",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "List the URLs which did not expire, one page at a time")
+    public ResponseEntity<UrlPage> listUrls(@RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return new ResponseEntity<>(urlService.findPage(cursor, limit), HttpStatus.OK);
+    }
+
+    @GetMapping(
+            path = "/export",
+            produces = ApiMediaTypes.APPLICATION_NDJSON_VALUE)
+    @ApiOperation(value = "Export all the URLs which did not expire, one JSON object per line")
+    public void exportUrls(HttpServletResponse response) throws IOException {
+        response.setContentType(ApiMediaTypes.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            urlService.exportUrls(urlEntity -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("key", urlEntity.getKey());
+                    generator.writeStringField("url", urlEntity.getUrl());
+                    generator.writeStringField("expirationDate", urlEntity.getExpirationDate().toString());
+                    generator.writeNumberField("expiresAt", urlEntity.getExpiresAtMillis());
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.mihai.shorturl.entity;
+
+import io.swagger.annotations.ApiModel;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Number of redirects of a key within one time bucket.
+ *
+ * @author Mihai Iusan
+ */
+@ApiModel(description = "Click statistics entity")
+@Entity
+@Table(name = "click_stats", uniqueConstraints = {@UniqueConstraint(columnNames = {"key", "bucketStart"})})
+public class ClickStatEntity implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private long id;
+
+    @Column(name = "key", nullable = false)
+    private String key;
+
+    /**
+     * Start of the bucket, in epoch seconds
+     */
+    @Column(name = "bucketStart", nullable = false)
+    private long bucketStart;
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    /**
+     * Empty constructor for {@link ClickStatEntity}.
+     */
+    public ClickStatEntity() {
+    }
+
+    public ClickStatEntity(@NotNull final String key, final long bucketStart, final long clicks) {
+        Objects.requireNonNull(key);
+
+        this.key = key;
+        this.bucketStart = bucketStart;
+        this.clicks = clicks;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public long getBucketStart() {
+        return this.bucketStart;
+    }
+
+    public long getClicks() {
+        return this.clicks;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.key, this.bucketStart);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final ClickStatEntity other = (ClickStatEntity) obj;
+        return Objects.equals(this.key, other.key) && this.bucketStart == other.bucketStart;
+    }
+
+    @Override
+    public String toString() {
+        return "ClickStatEntity { " +
+                "key='" + Objects.toString(this.key) +
+                ", bucketStart=" + Objects.toString(this.bucketStart) +
+                ", clicks=" + Objects.toString(this.clicks) + '}';
+    }
+}
@@ -0,0 +1,79 @@
+package com.mihai.shorturl.entity;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Persistent sequence from which the nodes reserve blocks of ids for the URL keys.
+ *
+ * @author Mihai Iusan
+ */
+@Entity
+@Table(name = "key_sequences")
+public class KeySequenceEntity implements Serializable {
+
+    @Id
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "nextValue", nullable = false)
+    private long nextValue;
+
+    @Version
+    private long version;
+
+    /**
+     * Empty constructor for {@link KeySequenceEntity}.
+     */
+    public KeySequenceEntity() {
+    }
+
+    public KeySequenceEntity(@NotNull final String name, final long nextValue) {
+        Objects.requireNonNull(name);
+
+        this.name = name;
+        this.nextValue = nextValue;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getNextValue() {
+        return this.nextValue;
+    }
+
+    public void setNextValue(long nextValue) {
+        this.nextValue = nextValue;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.name);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final KeySequenceEntity other = (KeySequenceEntity) obj;
+        return Objects.equals(this.name, other.name);
+    }
+
+    @Override
+    public String toString() {
+        return "KeySequenceEntity { " +
+                "name='" + Objects.toString(this.name) +
+                ", nextValue=" + Objects.toString(this.nextValue) + '}';
+    }
+}
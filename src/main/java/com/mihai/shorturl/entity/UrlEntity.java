@@ -1,6 +1,8 @@
 package com.mihai.shorturl.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import org.springframework.data.annotation.CreatedDate;
@@ -10,18 +12,24 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Objects;
 
 @ApiModel(description = "URL Entity")
 @Entity
 @EntityListeners({AuditingEntityListener.class})
-@Table(name = "urls")
+@Table(name = "urls", indexes = {
+        @Index(name = "idx_urls_url_hash", columnList = "urlHash"),
+        @Index(name = "idx_urls_expiration_date", columnList = "expirationDate")})
 public class UrlEntity implements Serializable {
 
     public static final int DEFAULT_VALID_DAYS = 7;
     public static final int MAX_URL_LENGTH = 2084;
+    private static final HashFunction URL_HASH_FUNCTION = Hashing.murmur3_128();
 
 
     @Id
@@ -38,6 +46,15 @@ public class UrlEntity implements Serializable {
             readOnly = true)
     private String url;
 
+    /**
+     * 64 bit digest of the url, used to look up urls without comparing the full string.
+     * Rows created before this column existed have it NULL until they are backfilled.
+     */
+    @JsonIgnore
+    @Column(name = "urlHash")
+    @ApiModelProperty(hidden = true)
+    private Long urlHash;
+
     @Column(name = "key", nullable = false, unique = true)
     @ApiModelProperty(
             value = "The shortened URL",
@@ -51,6 +68,15 @@ public class UrlEntity implements Serializable {
     @ApiModelProperty(hidden = true)
     private LocalDate expirationDate;
 
+    /**
+     * Epoch millis at which the url expires, when it expires within its expiration date rather than at the end of it.
+     * NULL for urls which are valid for the whole day of their expiration date.
+     */
+    @JsonIgnore
+    @Column(name = "expiresAt")
+    @ApiModelProperty(hidden = true)
+    private Long expiresAt;
+
     @JsonIgnore
     @CreatedDate
     @ApiModelProperty(hidden = true)
@@ -77,6 +103,7 @@ public class UrlEntity implements Serializable {
 
         this.key = key;
         this.url = url;
+        this.urlHash = hashOf(url);
         this.expirationDate = getDefaultExpirationDate();
     }
 
@@ -87,13 +114,44 @@ public class UrlEntity implements Serializable {
 
         this.key = key;
         this.url = url;
+        this.urlHash = hashOf(url);
         this.expirationDate = expirationDate;
     }
 
+    public UrlEntity(@NotNull final String url, @NotNull final String key, @NotNull final LocalDate expirationDate,
+                     final Long expiresAt) {
+        this(url, key, expirationDate);
+        this.expiresAt = expiresAt;
+    }
+
+    public UrlEntity(@NotNull final String url, @NotNull final String key, @NotNull final LocalDate expirationDate,
+                     final Long expiresAt, final long version) {
+        this(url, key, expirationDate, expiresAt);
+        this.version = version;
+    }
+
     public static LocalDate getDefaultExpirationDate() {
         return LocalDate.now().plusDays(DEFAULT_VALID_DAYS);
     }
 
+    /**
+     * @param expirationDate the expiration date
+     * @return the epoch millis at which a url valid for the whole day of its expiration date expires
+     */
+    public static long endOfDay(@NotNull LocalDate expirationDate) {
+        return expirationDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Get the digest stored in the urlHash column for an url
+     *
+     * @param url the normalized url
+     * @return the 64 bit digest
+     */
+    public static long hashOf(@NotNull String url) {
+        return URL_HASH_FUNCTION.hashString(url, StandardCharsets.UTF_8).asLong();
+    }
+
     public long getId() {
         return this.id;
     }
@@ -104,6 +162,22 @@ public class UrlEntity implements Serializable {
 
     public void setUrl(String url) {
         this.url = url;
+        this.urlHash = url == null ? null : hashOf(url);
+    }
+
+    public Long getUrlHash() {
+        return this.urlHash;
+    }
+
+    /**
+     * Keeps the digest in line with the url, also fills it in for rows loaded before it was backfilled
+     */
+    @PrePersist
+    @PreUpdate
+    public void updateUrlHash() {
+        if (this.url != null) {
+            this.urlHash = hashOf(this.url);
+        }
     }
 
     public String getKey() {
@@ -138,8 +212,38 @@ public class UrlEntity implements Serializable {
         return expirationDate;
     }
 
+    /**
+     * Set the url valid for the whole day of the expiration date
+     */
     public void setExpirationDate(LocalDate expirationDate) {
         this.expirationDate = expirationDate;
+        this.expiresAt = null;
+    }
+
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Set the moment the url expires, the expiration date becomes the day of that moment
+     *
+     * @param expiresAt the epoch millis at which the url expires
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expirationDate = Instant.ofEpochMilli(expiresAt - 1).atZone(ZoneId.systemDefault()).toLocalDate();
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return the epoch millis at which the url expires
+     */
+    @JsonIgnore
+    public long getExpiresAtMillis() {
+        return expiresAt != null ? expiresAt : endOfDay(expirationDate);
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= getExpiresAtMillis();
     }
 
     @Override
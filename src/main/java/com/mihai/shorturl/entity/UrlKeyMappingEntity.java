@@ -0,0 +1,77 @@
+package com.mihai.shorturl.entity;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Mapping from the digest of an url to one of its keys, kept on the shard of the url when the urls are sharded.
+ * <p>
+ * Note: the row of the key can be on another shard, so a mapping is only a hint which must be checked against it
+ *
+ * @author Mihai Iusan
+ */
+@Entity
+@Table(name = "url_key_mappings", indexes = {@Index(name = "idx_url_key_mappings_url_hash", columnList = "urlHash")})
+public class UrlKeyMappingEntity implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @Column(name = "urlHash", nullable = false)
+    private long urlHash;
+
+    @Column(name = "key", nullable = false)
+    private String key;
+
+    /**
+     * Empty constructor for {@link UrlKeyMappingEntity}.
+     */
+    public UrlKeyMappingEntity() {
+    }
+
+    public UrlKeyMappingEntity(final long urlHash, @NotNull final String key) {
+        Objects.requireNonNull(key);
+
+        this.urlHash = urlHash;
+        this.key = key;
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public long getUrlHash() {
+        return this.urlHash;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.urlHash, this.key);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final UrlKeyMappingEntity other = (UrlKeyMappingEntity) obj;
+        return this.urlHash == other.urlHash && Objects.equals(this.key, other.key);
+    }
+
+    @Override
+    public String toString() {
+        return "UrlKeyMappingEntity { " +
+                "urlHash=" + this.urlHash +
+                ", key='" + Objects.toString(this.key) + "'}";
+    }
+}
@@ -0,0 +1,12 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.ClickStatEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ClickStatRepository extends JpaRepository<ClickStatEntity, Long>, ClickStatRepositoryCustom {
+
+    List<ClickStatEntity> findByKeyOrderByBucketStartAsc(String key);
+
+}
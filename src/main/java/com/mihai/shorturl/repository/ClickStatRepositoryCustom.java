@@ -0,0 +1,26 @@
+package com.mihai.shorturl.repository;
+
+import java.util.Map;
+
+/**
+ * Operations of {@link ClickStatRepository} which are implemented by hand instead of derived from the method names.
+ */
+public interface ClickStatRepositoryCustom {
+
+    /**
+     * Add clicks to the bucket of each key, creating the buckets which do not exist yet, in one JDBC batch
+     *
+     * @param clicks      the clicks to add by key
+     * @param bucketStart the start of the bucket, in epoch seconds
+     */
+    void addClicks(Map<String, Long> clicks, long bucketStart);
+
+    /**
+     * Delete the buckets of the key
+     *
+     * @param key the key
+     * @return the number of deleted buckets
+     */
+    int deleteClicks(String key);
+
+}
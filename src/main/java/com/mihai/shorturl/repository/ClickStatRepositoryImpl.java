@@ -0,0 +1,41 @@
+package com.mihai.shorturl.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+
+/**
+ * Implementation of {@link ClickStatRepositoryCustom}, picked up by Spring Data through its name.
+ *
+ * @author Mihai Iusan
+ */
+public class ClickStatRepositoryImpl implements ClickStatRepositoryCustom {
+    private static final String MERGE_SQL = "merge into click_stats s " +
+            "using (values (cast(? as varchar(255)), cast(? as bigint), cast(? as bigint))) as v (key, bucket_start, clicks) " +
+            "on s.key = v.key and s.bucket_start = v.bucket_start " +
+            "when matched then update set s.clicks = s.clicks + v.clicks " +
+            "when not matched then insert (key, bucket_start, clicks) values (v.key, v.bucket_start, v.clicks)";
+    private static final String DELETE_SQL = "delete from click_stats where key = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ClickStatRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void addClicks(Map<String, Long> clicks, long bucketStart) {
+        jdbcTemplate.batchUpdate(MERGE_SQL, clicks.entrySet(), clicks.size(), (statement, entry) -> {
+            statement.setString(1, entry.getKey());
+            statement.setLong(2, bucketStart);
+            statement.setLong(3, entry.getValue());
+        });
+    }
+
+    @Override
+    public int deleteClicks(String key) {
+        return jdbcTemplate.update(DELETE_SQL, key);
+    }
+}
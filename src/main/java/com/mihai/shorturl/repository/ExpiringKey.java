@@ -0,0 +1,28 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.UrlEntity;
+
+import java.time.LocalDate;
+
+/**
+ * Key of a url with the moment it expires, read without the url.
+ *
+ * @author Mihai Iusan
+ */
+public final class ExpiringKey {
+    private final String key;
+    private final long expiresAtMillis;
+
+    public ExpiringKey(String key, LocalDate expirationDate, Long expiresAt) {
+        this.key = key;
+        this.expiresAtMillis = expiresAt != null ? expiresAt : UrlEntity.endOfDay(expirationDate);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+}
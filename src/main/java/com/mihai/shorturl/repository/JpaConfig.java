@@ -0,0 +1,35 @@
+package com.mihai.shorturl.repository;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+
+/**
+ * Sets the {@link ReadOnlyHibernateJpaDialect} on the entity manager factory created by Spring Boot, the transaction
+ * manager takes its dialect from there.
+ *
+ * @author Mihai Iusan
+ */
+@Configuration
+public class JpaConfig {
+
+    @Bean
+    public static BeanPostProcessor readOnlyJpaDialectPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof AbstractEntityManagerFactoryBean) {
+                    ((AbstractEntityManagerFactoryBean) bean).setJpaDialect(new ReadOnlyHibernateJpaDialect());
+                }
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                return bean;
+            }
+        };
+    }
+}
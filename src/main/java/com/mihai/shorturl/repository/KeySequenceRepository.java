@@ -0,0 +1,14 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.KeySequenceEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+
+import javax.persistence.LockModeType;
+
+public interface KeySequenceRepository extends JpaRepository<KeySequenceEntity, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    KeySequenceEntity findByName(String name);
+
+}
@@ -0,0 +1,60 @@
+package com.mihai.shorturl.repository;
+
+import org.hibernate.Session;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+/**
+ * Hibernate dialect which also loads entities as read-only in read-only transactions.
+ * <p>
+ * Note: Spring only turns off flushing for read-only transactions; read-only entities additionally keep no snapshot
+ * of their state, so they are not dirty checked and take half the memory in the persistence context
+ * Note: the previous setting is restored when the transaction ends, since with open session in view the same session
+ * can run a writing transaction afterwards
+ *
+ * @author Mihai Iusan
+ */
+public class ReadOnlyHibernateJpaDialect extends HibernateJpaDialect {
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly()) {
+            return transactionData;
+        }
+        Session session = getSession(entityManager);
+        ReadOnlyTransactionData readOnlyData = new ReadOnlyTransactionData(transactionData, session,
+                session.isDefaultReadOnly());
+        session.setDefaultReadOnly(true);
+        return readOnlyData;
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReadOnlyTransactionData) {
+            ReadOnlyTransactionData readOnlyData = (ReadOnlyTransactionData) transactionData;
+            if (readOnlyData.session.isOpen()) {
+                readOnlyData.session.setDefaultReadOnly(readOnlyData.previousDefaultReadOnly);
+            }
+            transactionData = readOnlyData.transactionData;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+
+    private static final class ReadOnlyTransactionData {
+        private final Object transactionData;
+        private final Session session;
+        private final boolean previousDefaultReadOnly;
+
+        private ReadOnlyTransactionData(Object transactionData, Session session, boolean previousDefaultReadOnly) {
+            this.transactionData = transactionData;
+            this.session = session;
+            this.previousDefaultReadOnly = previousDefaultReadOnly;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.UrlKeyMappingEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface UrlKeyMappingRepository extends JpaRepository<UrlKeyMappingEntity, Long> {
+
+    @Query("select m.key from UrlKeyMappingEntity m where m.urlHash = :urlHash")
+    List<String> findKeysByUrlHash(@Param("urlHash") long urlHash);
+
+    List<UrlKeyMappingEntity> findByUrlHashIn(Collection<Long> urlHashes);
+
+    List<UrlKeyMappingEntity> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from UrlKeyMappingEntity m where m.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+}
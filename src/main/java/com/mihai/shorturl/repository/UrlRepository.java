@@ -1,17 +1,86 @@
 package com.mihai.shorturl.repository;
 
 import com.mihai.shorturl.entity.UrlEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
-public interface UrlRepository extends JpaRepository<UrlEntity, Long> {
+public interface UrlRepository extends JpaRepository<UrlEntity, Long>, UrlRepositoryCustom {
 
     UrlEntity findByKey(String key);
 
+    /**
+     * Find the url, key, expiration and version of a key which did not expire on the date, as an entity which is not
+     * managed, so it is neither hydrated in full nor kept in the persistence context
+     * <p>
+     * Note: a url with a finer expiration may have expired earlier on the date, callers check it
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.mihai.shorturl.entity.UrlEntity(u.url, u.key, u.expirationDate, u.expiresAt, u.version) " +
+            "from UrlEntity u where u.key = :key and u.expirationDate >= :date")
+    UrlEntity findValidByKey(@Param("key") String key, @Param("date") LocalDate date);
+
+    /**
+     * Find the url, key, expiration and version of the keys which did not expire on the date, see
+     * {@link #findValidByKey(String, LocalDate)}
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.mihai.shorturl.entity.UrlEntity(u.url, u.key, u.expirationDate, u.expiresAt, u.version) " +
+            "from UrlEntity u where u.key in :keys and u.expirationDate >= :date")
+    List<UrlEntity> findValidByKeyIn(@Param("keys") Collection<String> keys, @Param("date") LocalDate date);
+
     UrlEntity findByUrl(String url);
 
-    UrlEntity findFirstByExpirationDateBefore(LocalDate expirationDate);
+    List<UrlEntity> findByUrlHash(Long urlHash);
+
+    List<UrlEntity> findByUrlHashIn(Collection<Long> urlHashes);
+
+    List<UrlEntity> findByUrlIn(Collection<String> urls);
+
+    List<UrlEntity> findByKeyIn(Collection<String> keys);
+
+    List<UrlEntity> findByUrlHashIsNull(Pageable pageable);
+
+    @Query("select u from UrlEntity u where u.id > :afterId and u.expirationDate >= :date order by u.id")
+    List<UrlEntity> findByIdGreaterThanAndExpirationDateNotBefore(@Param("afterId") long afterId, @Param("date") LocalDate date,
+                                                                 Pageable pageable);
+
+    List<UrlEntity> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+    @Query("select u.id from UrlEntity u where u.expirationDate < :date and u.id > :afterId order by u.id")
+    List<Long> findIdsByExpirationDateBefore(@Param("date") LocalDate date, @Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Find the keys which expire on the date, in key order, through the expiration date index
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.mihai.shorturl.repository.ExpiringKey(u.key, u.expirationDate, u.expiresAt) from UrlEntity u " +
+            "where u.expirationDate = :date and u.key > :afterKey order by u.key")
+    List<ExpiringKey> findExpiringKeys(@Param("date") LocalDate date, @Param("afterKey") String afterKey, Pageable pageable);
+
+    /**
+     * Find the ids of the keys which expired before the date, or before the moment for the ones with a finer expiration
+     */
+    @Query("select u.id from UrlEntity u where u.key in :keys and (u.expirationDate < :date or u.expiresAt <= :now)")
+    List<Long> findExpiredIdsByKeyIn(@Param("keys") Collection<String> keys, @Param("date") LocalDate date,
+                                     @Param("now") long now);
+
+    /**
+     * Delete the rows which are still expired, see {@link #findExpiredIdsByKeyIn(Collection, LocalDate, long)}
+     */
+    @Modifying
+    @Query("delete from UrlEntity u where u.id in :ids and (u.expirationDate < :date or u.expiresAt <= :now)")
+    int deleteExpiredByIdIn(@Param("ids") Collection<Long> ids, @Param("date") LocalDate date, @Param("now") long now);
+
+    @Modifying
+    @Query("delete from UrlEntity u where u.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 
 }
\ No newline at end of file
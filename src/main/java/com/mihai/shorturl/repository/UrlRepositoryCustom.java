@@ -0,0 +1,61 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.UrlEntity;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Operations of {@link UrlRepository} which are implemented by hand instead of derived from the method names.
+ */
+public interface UrlRepositoryCustom {
+
+    /**
+     * Insert new urls with batched JDBC statements, bypassing the persistence context.
+     * <p>
+     * Note: the ids are generated by the database and are not set on the given entities
+     * Note: urls which already have a created date, like rows moved to another shard, keep their dates and version
+     *
+     * @param urls the urls to insert
+     */
+    void batchInsert(List<UrlEntity> urls);
+
+    /**
+     * Delete rows by id, each one only if its version is still the one it was read with, with batched JDBC statements.
+     *
+     * @param urls the rows as they were read
+     * @return for each row, true if it was deleted, false if it was written or deleted since it was read
+     */
+    boolean[] deleteUnchanged(List<UrlEntity> urls);
+
+    /**
+     * Get a range of urls ordered by id, without counting all of them like a page request does
+     *
+     * @param offset the number of urls to skip
+     * @param limit  the max number of urls
+     * @return the urls
+     */
+    List<UrlEntity> findRange(int offset, int limit);
+
+    /**
+     * Go through all the urls which did not expire before the date, in id order, with a forward only cursor.
+     * <p>
+     * Note: the given entities are not managed, so memory use does not grow with the number of urls
+     * Note: it must run inside a transaction
+     *
+     * @param date     the date
+     * @param consumer receives each url
+     */
+    void forEachByExpirationDateNotBefore(LocalDate date, Consumer<UrlEntity> consumer);
+
+    /**
+     * Go through the keys of all the urls, expired ones included, with a forward only cursor.
+     * <p>
+     * Note: it must run inside a transaction
+     *
+     * @param consumer receives each key
+     */
+    void forEachKey(Consumer<String> consumer);
+
+}
@@ -0,0 +1,129 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.SerializationUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of {@link UrlRepositoryCustom}, picked up by Spring Data through its name.
+ * <p>
+ * Note: the date columns are mapped by Hibernate as serialized values, so they are written the same way here
+ *
+ * @author Mihai Iusan
+ */
+public class UrlRepositoryImpl implements UrlRepositoryCustom {
+    private static final String INSERT_SQL = "insert into urls " +
+            "(url, url_hash, key, expiration_date, expires_at, created_date, modified_date, version) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_UNCHANGED_SQL = "delete from urls where id = ? and version = ?";
+    private static final String FIND_RANGE_QUERY = "select u from UrlEntity u order by u.id";
+    private static final String NOT_EXPIRED_QUERY = "select new com.mihai.shorturl.entity.UrlEntity(u.url, u.key, u.expirationDate, u.expiresAt) " +
+            "from UrlEntity u where u.expirationDate >= :date order by u.id";
+    private static final String ALL_KEYS_QUERY = "select u.key from UrlEntity u";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public UrlRepositoryImpl(JdbcTemplate jdbcTemplate, @Value("${shorturl.export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void batchInsert(List<UrlEntity> urls) {
+        ZonedDateTime now = ZonedDateTime.now();
+        byte[] serializedNow = SerializationUtils.serialize(now);
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, urls, urls.size(), (statement, url) -> {
+            boolean isNew = url.getCreatedDate() == null;
+            if (isNew) {
+                url.setCreatedDate(now);
+                url.setModifiedDate(now);
+            }
+            statement.setString(1, url.getUrl());
+            statement.setLong(2, url.getUrlHash());
+            statement.setString(3, url.getKey());
+            statement.setBytes(4, SerializationUtils.serialize(url.getExpirationDate()));
+            statement.setObject(5, url.getExpiresAt(), Types.BIGINT);
+            statement.setBytes(6, isNew ? serializedNow : SerializationUtils.serialize(url.getCreatedDate()));
+            statement.setBytes(7, isNew ? serializedNow : SerializationUtils.serialize(url.getModifiedDate()));
+            statement.setLong(8, url.getVersion());
+        });
+    }
+
+    @Override
+    public boolean[] deleteUnchanged(List<UrlEntity> urls) {
+        boolean[] deleted = new boolean[urls.size()];
+        int[][] counts = jdbcTemplate.batchUpdate(DELETE_UNCHANGED_SQL, urls, urls.size(), (statement, url) -> {
+            statement.setLong(1, url.getId());
+            statement.setLong(2, url.getVersion());
+        });
+        int index = 0;
+        for (int[] batchCounts : counts) {
+            for (int count : batchCounts) {
+                deleted[index++] = count > 0;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<UrlEntity> findRange(int offset, int limit) {
+        return entityManager.createQuery(FIND_RANGE_QUERY, UrlEntity.class)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public void forEachByExpirationDateNotBefore(LocalDate date, Consumer<UrlEntity> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        ScrollableResults results = session.createQuery(NOT_EXPIRED_QUERY)
+                .setParameter("date", date)
+                .setReadOnly(true)
+                .setFetchSize(fetchSize)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                consumer.accept((UrlEntity) results.get(0));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        ScrollableResults results = session.createQuery(ALL_KEYS_QUERY)
+                .setReadOnly(true)
+                .setFetchSize(fetchSize)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                consumer.accept((String) results.get(0));
+            }
+        } finally {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mihai.shorturl.repository;
+
+import com.mihai.shorturl.entity.UrlEntity;
+
+/**
+ * Key to url storage with the lookup and write operations of {@link UrlRepository}, for backends which are not
+ * JPA entities.
+ * <p>
+ * Note: like the repository, lookups return expired urls too, callers check the expiration date
+ *
+ * @author Mihai Iusan
+ */
+public interface UrlStore {
+
+    /**
+     * @param key the key
+     * @return the url with the key or NULL
+     */
+    UrlEntity findByKey(String key);
+
+    /**
+     * Store the url under its key, replacing what the key had before
+     *
+     * @param url the url entry
+     */
+    void save(UrlEntity url);
+
+    /**
+     * @param key the key to remove
+     */
+    void deleteByKey(String key);
+}
@@ -0,0 +1,139 @@
+package com.mihai.shorturl.repository.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * One entry of the segment log: the url stored under a key, or the deletion of a key.
+ * <p>
+ * Note: the layout is [body length][type][expiration epoch day][key length][key][url length][url][crc32 of the body],
+ * so a torn write at the end of the log is detected on recovery
+ *
+ * @author Mihai Iusan
+ */
+final class LogRecord {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    private static final int FIXED_BYTES = Integer.BYTES + Byte.BYTES + Long.BYTES + Short.BYTES + Integer.BYTES
+            + Integer.BYTES;
+    private static final int KEY_OFFSET = Integer.BYTES + Byte.BYTES + Long.BYTES + Short.BYTES;
+
+    private final byte type;
+    private final String key;
+    private final String url;
+    private final long expirationEpochDay;
+
+    private LogRecord(byte type, String key, String url, long expirationEpochDay) {
+        this.type = type;
+        this.key = key;
+        this.url = url;
+        this.expirationEpochDay = expirationEpochDay;
+    }
+
+    static LogRecord put(String key, String url, long expirationEpochDay) {
+        return new LogRecord(PUT, key, url, expirationEpochDay);
+    }
+
+    static LogRecord delete(String key) {
+        return new LogRecord(DELETE, key, "", 0);
+    }
+
+    boolean isDelete() {
+        return type == DELETE;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    long getExpirationEpochDay() {
+        return expirationEpochDay;
+    }
+
+    byte[] encode() {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_BYTES + keyBytes.length + urlBytes.length);
+        buffer.putInt(buffer.capacity() - Integer.BYTES)
+                .put(type)
+                .putLong(expirationEpochDay)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .putInt(urlBytes.length)
+                .put(urlBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, buffer.position() - Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Read the record at an offset
+     *
+     * @param buffer the segment buffer, its position is not changed
+     * @param offset the offset of the record
+     * @param verify true to check the crc, which is only needed when the end of the log is not known
+     * @return the record, or NULL if there is no complete and valid record at the offset
+     */
+    static LogRecord decode(ByteBuffer buffer, int offset, boolean verify) {
+        if (offset < 0 || offset + FIXED_BYTES > buffer.limit()) {
+            return null;
+        }
+        int bodyLength = buffer.getInt(offset);
+        int end = offset + Integer.BYTES + bodyLength;
+        if (bodyLength < FIXED_BYTES - Integer.BYTES || end > buffer.limit()) {
+            return null;
+        }
+        byte type = buffer.get(offset + Integer.BYTES);
+        if (type != PUT && type != DELETE) {
+            return null;
+        }
+
+        ByteBuffer body = buffer.duplicate();
+        if (verify) {
+            body.limit(end - Integer.BYTES).position(offset + Integer.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(end - Integer.BYTES)) {
+                return null;
+            }
+            body.limit(buffer.limit());
+        }
+
+        long expirationEpochDay = buffer.getLong(offset + Integer.BYTES + Byte.BYTES);
+        int keyLength = buffer.getShort(offset + KEY_OFFSET - Short.BYTES);
+        int urlLengthOffset = offset + KEY_OFFSET + keyLength;
+        if (keyLength < 0 || urlLengthOffset + Integer.BYTES > end) {
+            return null;
+        }
+        int urlLength = buffer.getInt(urlLengthOffset);
+        if (urlLength < 0 || urlLengthOffset + Integer.BYTES + urlLength + Integer.BYTES != end) {
+            return null;
+        }
+
+        byte[] keyBytes = new byte[keyLength];
+        byte[] urlBytes = new byte[urlLength];
+        body.position(offset + KEY_OFFSET);
+        body.get(keyBytes);
+        body.position(urlLengthOffset + Integer.BYTES);
+        body.get(urlBytes);
+        return new LogRecord(type, new String(keyBytes, StandardCharsets.UTF_8),
+                new String(urlBytes, StandardCharsets.UTF_8), expirationEpochDay);
+    }
+
+    /**
+     * @return the number of bytes of the encoded record at the offset, 0 if there is none
+     */
+    static int sizeAt(ByteBuffer buffer, int offset) {
+        if (offset + Integer.BYTES > buffer.limit()) {
+            return 0;
+        }
+        return Integer.BYTES + buffer.getInt(offset);
+    }
+}
@@ -0,0 +1,380 @@
+package com.mihai.shorturl.repository.log;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Url store kept in an append-only log of memory mapped segments, with a memory mapped hash index from the key to the
+ * location of the latest record.
+ * <p>
+ * Note: a lookup is an index probe and one read of the mapped record, without a query, entity hydration or a
+ * persistence context
+ * Note: the index is rebuilt from the log on startup; a torn record at the end of the log is dropped
+ * Note: compaction copies the live records of all the segments into new ones and drops the expired, deleted and
+ * overwritten records; until the old segments are deleted, replaying old and new segments gives the same state
+ * Note: lookups are optimistic and retried under the read lock if a write or a compaction ran at the same time;
+ * writes and compactions are serialized
+ *
+ * @author Mihai Iusan
+ */
+@Component
+@ConditionalOnProperty(name = "shorturl.store", havingValue = "log")
+public class LogStructuredUrlStore implements UrlStore, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredUrlStore.class);
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean syncWrites;
+    private final double minGarbageRatio;
+
+    private final StampedLock lock = new StampedLock();
+    private final Object writeMonitor = new Object();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private volatile Segment active;
+    private volatile MappedHashIndex keyIndex;
+    private int indexGeneration;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder lockedReads = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder compactedBytes = new LongAdder();
+    private long recoveredRecords;
+
+    @Autowired
+    public LogStructuredUrlStore(@Value("${shorturl.store.log.directory:urlshort-log}") String directory,
+                                 @Value("${shorturl.store.log.segment-bytes:67108864}") int segmentBytes,
+                                 @Value("${shorturl.store.log.index-capacity:1048576}") int indexCapacity,
+                                 @Value("${shorturl.store.log.sync-writes:false}") boolean syncWrites,
+                                 @Value("${shorturl.store.log.compaction-min-garbage-ratio:0.5}") double minGarbageRatio) {
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.syncWrites = syncWrites;
+        this.minGarbageRatio = minGarbageRatio;
+        try {
+            recover(indexCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the url log in " + directory, e);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the url with the key or NULL, it has no id
+     */
+    @Override
+    public UrlEntity findByKey(String key) {
+        LogRecord record = read(() -> readByKey(key));
+        if (record == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return toEntity(record);
+    }
+
+    @Override
+    public void save(UrlEntity url) {
+        append(LogRecord.put(url.getKey(), url.getUrl(), url.getExpirationDate().toEpochDay()));
+    }
+
+    /**
+     * Note: a key without a record is left alone, so purges and invalidations of keys this node never stored do not
+     * grow the log
+     *
+     * @param key the key
+     */
+    @Override
+    public void deleteByKey(String key) {
+        synchronized (writeMonitor) {
+            // writes hold the monitor, so the index cannot change between the check and the append
+            if (readByKey(key) == null) {
+                return;
+            }
+            append(LogRecord.delete(key));
+        }
+    }
+
+    /**
+     * Rewrite the log without the expired, deleted and overwritten records, if they take enough of it
+     */
+    @Scheduled(initialDelayString = "${shorturl.store.log.compaction-interval-ms:600000}",
+            fixedDelayString = "${shorturl.store.log.compaction-interval-ms:600000}")
+    public void compact() {
+        synchronized (writeMonitor) {
+            try {
+                compactLog();
+            } catch (IOException e) {
+                logger.warn("Compacting the url log failed, retrying on the next run", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeMonitor) {
+            segments.values().forEach(Segment::close);
+        }
+    }
+
+    private LogRecord readByKey(String key) {
+        long location = keyIndex.get(UrlEntity.hashOf(key), candidate -> hasKey(candidate, key));
+        return location == MappedHashIndex.EMPTY ? null : readAt(location);
+    }
+
+    /**
+     * Run a lookup without locking, and again under the read lock if a write ran at the same time
+     */
+    private LogRecord read(Supplier<LogRecord> lookup) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                LogRecord record = lookup.get();
+                if (lock.validate(stamp)) {
+                    return record;
+                }
+            } catch (RuntimeException e) {
+                // read a half written slot, the validation fails as well
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        lockedReads.increment();
+        stamp = lock.readLock();
+        try {
+            return lookup.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void append(LogRecord record) {
+        byte[] bytes = record.encode();
+        synchronized (writeMonitor) {
+            try {
+                long location = appendToActive(bytes);
+                long stamp = lock.writeLock();
+                try {
+                    apply(record, location);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                if (keyIndex.isOverloaded()) {
+                    rebuildIndex();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write to the url log", e);
+            }
+        }
+        writes.increment();
+    }
+
+    private long appendToActive(byte[] bytes) throws IOException {
+        int offset = active.append(bytes);
+        if (offset < 0) {
+            Segment next = Segment.create(directory, active.getId() + 1, segmentBytes);
+            segments.put(next.getId(), next);
+            active.force();
+            active = next;
+            offset = active.append(bytes);
+            if (offset < 0) {
+                throw new IllegalArgumentException("Record of " + bytes.length + " bytes does not fit in a segment");
+            }
+        }
+        if (syncWrites) {
+            active.force();
+        }
+        return locationOf(active.getId(), offset);
+    }
+
+    /**
+     * Point the index to a record, or remove its key for a deletion
+     */
+    private void apply(LogRecord record, long location) {
+        long keyHash = UrlEntity.hashOf(record.getKey());
+        if (record.isDelete()) {
+            keyIndex.remove(keyHash, candidate -> hasKey(candidate, record.getKey()));
+        } else {
+            keyIndex.put(keyHash, location, candidate -> hasKey(candidate, record.getKey()));
+        }
+    }
+
+    private void recover(int indexCapacity) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Integer, Path> segmentFiles = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Segment.isSegment(file)) {
+                    segmentFiles.put(Segment.idOf(file), file);
+                } else if (file.getFileName().toString().endsWith(INDEX_SUFFIX)) {
+                    // the index is rebuilt from the log
+                    Files.delete(file);
+                }
+            }
+        }
+
+        keyIndex = MappedHashIndex.create(indexPath("keys"), indexCapacity);
+        for (Path file : segmentFiles.values()) {
+            Segment segment = Segment.open(file);
+            segments.put(segment.getId(), segment);
+            recoveredRecords += segment.recover((record, offset) -> {
+                apply(record, locationOf(segment.getId(), offset));
+                if (keyIndex.isOverloaded()) {
+                    rebuildIndex();
+                }
+            });
+            active = segment;
+        }
+        if (active == null) {
+            active = Segment.create(directory, 1, segmentBytes);
+            segments.put(active.getId(), active);
+        }
+        logger.info("Opened the url log in {}: {} segments, {} records, {} keys", directory, segments.size(),
+                recoveredRecords, keyIndex.size());
+    }
+
+    private void rebuildIndex() {
+        try {
+            MappedHashIndex oldKeyIndex = keyIndex;
+            MappedHashIndex newKeyIndex = oldKeyIndex.rebuild(indexPath("keys"));
+            long stamp = lock.writeLock();
+            try {
+                keyIndex = newKeyIndex;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            oldKeyIndex.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rebuild the url log index", e);
+        }
+    }
+
+    private void compactLog() throws IOException {
+        long epochDay = LocalDate.now().toEpochDay();
+        List<Long> liveLocations = new ArrayList<>();
+        long[] liveBytes = {0};
+        keyIndex.forEach(location -> {
+            LogRecord record = readAt(location);
+            if (record.getExpirationEpochDay() >= epochDay) {
+                liveLocations.add(location);
+                liveBytes[0] += record.encode().length;
+            }
+        });
+        long totalBytes = segments.values().stream().mapToLong(Segment::getEnd).sum();
+        if (totalBytes == 0 || (totalBytes - liveBytes[0]) < totalBytes * minGarbageRatio) {
+            logger.debug("Url log has {} live bytes out of {}, not compacting", liveBytes[0], totalBytes);
+            return;
+        }
+
+        // the copies go to segments after the current ones, so a replay sees them last
+        liveLocations.sort(null);
+        List<Segment> oldSegments = new ArrayList<>(new TreeMap<>(segments).values());
+        List<Segment> newSegments = new ArrayList<>();
+        Segment target = Segment.create(directory, active.getId() + 1, segmentBytes);
+        newSegments.add(target);
+        MappedHashIndex newKeyIndex = MappedHashIndex.create(indexPath("keys"), keyIndex.size() * 2);
+        for (long location : liveLocations) {
+            LogRecord record = readAt(location);
+            byte[] bytes = record.encode();
+            int offset = target.append(bytes);
+            if (offset < 0) {
+                target = Segment.create(directory, target.getId() + 1, segmentBytes);
+                newSegments.add(target);
+                offset = target.append(bytes);
+            }
+            long newLocation = locationOf(target.getId(), offset);
+            newKeyIndex.put(UrlEntity.hashOf(record.getKey()), newLocation, candidate -> false);
+        }
+        newSegments.forEach(Segment::force);
+
+        MappedHashIndex oldKeyIndex = keyIndex;
+        long stamp = lock.writeLock();
+        try {
+            newSegments.forEach(segment -> segments.put(segment.getId(), segment));
+            keyIndex = newKeyIndex;
+            active = target;
+            oldSegments.forEach(segment -> segments.remove(segment.getId()));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        oldKeyIndex.close();
+        // oldest first, so a crash in between never leaves an older record without the newer ones
+        for (Segment segment : oldSegments) {
+            segment.delete();
+        }
+
+        compactions.increment();
+        compactedBytes.add(totalBytes - liveBytes[0]);
+        logger.info("Compacted the url log from {} to {} bytes, {} keys", totalBytes, liveBytes[0], liveLocations.size());
+    }
+
+    private Path indexPath(String name) {
+        return directory.resolve(name + "-" + (++indexGeneration) + INDEX_SUFFIX);
+    }
+
+    private boolean hasKey(long location, String key) {
+        LogRecord record = readAt(location);
+        return record != null && key.equals(record.getKey());
+    }
+
+    private LogRecord readAt(long location) {
+        Segment segment = segments.get((int) (location >>> 32));
+        return segment == null ? null : segment.read((int) location);
+    }
+
+    private static long locationOf(int segmentId, int offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static UrlEntity toEntity(LogRecord record) {
+        return new UrlEntity(record.getUrl(), record.getKey(), LocalDate.ofEpochDay(record.getExpirationEpochDay()));
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("store.log.keys", keyIndex.size()));
+        metrics.add(new Metric<>("store.log.segments", segments.size()));
+        metrics.add(new Metric<>("store.log.bytes", segments.values().stream().mapToLong(Segment::getEnd).sum()));
+        metrics.add(new Metric<>("store.log.index.bytes", keyIndex.memoryBytes()));
+        metrics.add(new Metric<>("store.log.hits", hits.sum()));
+        metrics.add(new Metric<>("store.log.misses", misses.sum()));
+        metrics.add(new Metric<>("store.log.locked.reads", lockedReads.sum()));
+        metrics.add(new Metric<>("store.log.writes", writes.sum()));
+        metrics.add(new Metric<>("store.log.recovered.records", recoveredRecords));
+        metrics.add(new Metric<>("store.log.compactions", compactions.sum()));
+        metrics.add(new Metric<>("store.log.compacted.bytes", compactedBytes.sum()));
+        return metrics;
+    }
+}
@@ -0,0 +1,195 @@
+package com.mihai.shorturl.repository.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Open addressing hash table from a 64 bit hash to a log location, kept in a memory mapped file.
+ * <p>
+ * Note: slots are [hash][location], probed linearly; different entries may share a hash, so callers confirm a match
+ * by reading the record at the location
+ * Note: removed entries leave a tombstone until the table is rebuilt
+ * Note: one writer at a time; readers must validate what they read against concurrent writes
+ *
+ * @author Mihai Iusan
+ */
+final class MappedHashIndex implements Closeable {
+    static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path path;
+    private final MappedByteBuffer slots;
+    private final int capacity;
+    private int size;
+    private int used;
+
+    private MappedHashIndex(Path path, MappedByteBuffer slots, int capacity) {
+        this.path = path;
+        this.slots = slots;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Create an empty index, replacing the file if it exists
+     *
+     * @param capacity the number of slots, rounded up to a power of 2
+     */
+    static MappedHashIndex create(Path path, int capacity) throws IOException {
+        int slotCount = Integer.highestOneBit(Math.max(16, Math.min(MAX_CAPACITY, capacity)) * 2 - 1);
+        Files.deleteIfExists(path);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long bytes = (long) slotCount * SLOT_BYTES;
+            file.setLength(bytes);
+            return new MappedHashIndex(path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes), slotCount);
+        }
+    }
+
+    /**
+     * @param hash    the hash of the entry
+     * @param matches confirms that the entry at a location is the wanted one
+     * @return the location or {@link #EMPTY}
+     */
+    long get(long hash, LongPredicate matches) {
+        int mask = capacity - 1;
+        for (int i = 0, slot = spread(hash) & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+            long location = locationAt(slot);
+            if (location == EMPTY) {
+                return EMPTY;
+            }
+            if (location != TOMBSTONE && hashAt(slot) == hash && matches.test(location)) {
+                return location;
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Point an entry to a location, replacing the location of the same entry if there is one
+     *
+     * @param hash      the hash of the entry
+     * @param location  the new location
+     * @param sameEntry confirms that the entry at a location is the one being replaced
+     * @return the replaced location or {@link #EMPTY}
+     */
+    long put(long hash, long location, LongPredicate sameEntry) {
+        int mask = capacity - 1;
+        int free = -1;
+        int slot = spread(hash) & mask;
+        for (int i = 0; i < capacity; i++, slot = (slot + 1) & mask) {
+            long current = locationAt(slot);
+            if (current == EMPTY) {
+                break;
+            }
+            if (current == TOMBSTONE) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (hashAt(slot) == hash && sameEntry.test(current)) {
+                slots.putLong(slot * SLOT_BYTES + Long.BYTES, location);
+                return current;
+            }
+        }
+        if (free < 0) {
+            if (used >= capacity - 1) {
+                throw new IllegalStateException("Index " + path + " is full");
+            }
+            free = slot;
+            used++;
+        }
+        // the location goes last, readers skip the slot until it is set
+        slots.putLong(free * SLOT_BYTES, hash);
+        slots.putLong(free * SLOT_BYTES + Long.BYTES, location);
+        size++;
+        return EMPTY;
+    }
+
+    /**
+     * @param hash    the hash of the entry
+     * @param matches confirms that the entry at a location is the one to remove
+     * @return the removed location or {@link #EMPTY}
+     */
+    long remove(long hash, LongPredicate matches) {
+        int mask = capacity - 1;
+        for (int i = 0, slot = spread(hash) & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+            long location = locationAt(slot);
+            if (location == EMPTY) {
+                return EMPTY;
+            }
+            if (location != TOMBSTONE && hashAt(slot) == hash && matches.test(location)) {
+                slots.putLong(slot * SLOT_BYTES + Long.BYTES, TOMBSTONE);
+                size--;
+                return location;
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @return true if the table should be rebuilt, because it is too full or holds too many tombstones
+     */
+    boolean isOverloaded() {
+        return used > capacity * MAX_LOAD;
+    }
+
+    /**
+     * Copy the entries into a new table without tombstones, twice as large if they fill more than half of this one
+     */
+    MappedHashIndex rebuild(Path newPath) throws IOException {
+        MappedHashIndex rebuilt = create(newPath, size * 2 > capacity * MAX_LOAD ? capacity * 2 : capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            long location = locationAt(slot);
+            if (location != EMPTY && location != TOMBSTONE) {
+                rebuilt.put(hashAt(slot), location, existing -> false);
+            }
+        }
+        return rebuilt;
+    }
+
+    /**
+     * @param consumer receives the location of every entry
+     */
+    void forEach(LongConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long location = locationAt(slot);
+            if (location != EMPTY && location != TOMBSTONE) {
+                consumer.accept(location);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private long hashAt(int slot) {
+        return slots.getLong(slot * SLOT_BYTES);
+    }
+
+    private long locationAt(int slot) {
+        return slots.getLong(slot * SLOT_BYTES + Long.BYTES);
+    }
+
+    private static int spread(long hash) {
+        long mixed = hash * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
@@ -0,0 +1,141 @@
+package com.mihai.shorturl.repository.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * One file of the append-only log, memory mapped for both appends and reads.
+ * <p>
+ * Note: the file is created at its full size, the unwritten part is zeros, which is where recovery stops
+ * Note: appends come from one writer at a time; reads may run concurrently at offsets which were already appended
+ *
+ * @author Mihai Iusan
+ */
+final class Segment implements Closeable {
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final int id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private int end;
+
+    private Segment(int id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create an empty segment
+     */
+    static Segment create(Path directory, int id, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(capacity);
+            return new Segment(id, path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * Open an existing segment, {@link #recover(RecordConsumer)} must be called before appending to it
+     */
+    static Segment open(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            return new Segment(idOf(path), path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length()));
+        }
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    static int idOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    /**
+     * @param record the encoded record
+     * @return the offset of the record, or -1 if it does not fit
+     */
+    int append(byte[] record) {
+        if (end + record.length > buffer.capacity()) {
+            return -1;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(end);
+        target.put(record);
+        int offset = end;
+        end += record.length;
+        return offset;
+    }
+
+    /**
+     * @return the record at the offset or NULL if the offset holds no valid record
+     */
+    LogRecord read(int offset) {
+        return LogRecord.decode(buffer, offset, false);
+    }
+
+    /**
+     * Go through the valid records from the start and set the end after the last one
+     * <p>
+     * Note: a torn record at the end is overwritten with zeros, so it cannot be read as part of a later append
+     *
+     * @param consumer receives each record with its offset
+     * @return the number of records
+     */
+    int recover(RecordConsumer consumer) {
+        int offset = 0;
+        int records = 0;
+        for (LogRecord record = LogRecord.decode(buffer, 0, true); record != null;
+             record = LogRecord.decode(buffer, offset, true)) {
+            consumer.accept(record, offset);
+            offset += LogRecord.sizeAt(buffer, offset);
+            records++;
+        }
+        end = offset;
+        if (end + Integer.BYTES <= buffer.capacity() && buffer.getInt(end) != 0) {
+            for (int i = end; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        return records;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Receives the records found by a recovery.
+     */
+    interface RecordConsumer {
+        void accept(LogRecord record, int offset);
+    }
+}
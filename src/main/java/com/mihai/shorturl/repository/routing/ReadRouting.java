@@ -0,0 +1,165 @@
+package com.mihai.shorturl.repository.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Decides which connections of {@link ReadRoutingDataSource} go to a read replica, and remembers the keys written by
+ * this node so they can be read back from the primary while the replicas may lag behind.
+ * <p>
+ * Note: only read-only transactions go to a replica, and not while a caller forces the primary
+ * Note: a key is remembered from its write until the max replica lag after the commit; when more keys are written
+ * in that time than it keeps, the oldest ones are read from the replicas again
+ * Note: without replica urls nothing is routed and nothing is remembered
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class ReadRouting implements PublicMetrics {
+    private final boolean enabled;
+    private final Cache<String, Boolean> recentWrites;
+    private final ThreadLocal<Boolean> primaryForced = new ThreadLocal<>();
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+    private final LongAdder replicaFailures = new LongAdder();
+    private final LongAdder recentWriteReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+
+    @Autowired
+    public ReadRouting(@Value("${shorturl.datasource.replica-urls:}") String replicaUrls,
+                       @Value("${shorturl.datasource.replica-max-lag-ms:5000}") long maxLagMillis,
+                       @Value("${shorturl.datasource.recent-writes.max-keys:100000}") long maxRecentWrites) {
+        this.enabled = !StringUtils.isEmpty(replicaUrls.trim());
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(maxRecentWrites)
+                .expireAfterWrite(maxLagMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @return true if there are read replicas
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remember a key written in the current transaction
+     *
+     * @param key the key
+     */
+    public void recordWrite(String key) {
+        recordWrites(Collections.singletonList(key));
+    }
+
+    /**
+     * Remember keys written in the current transaction, from now until the max lag after the commit
+     *
+     * @param keys the keys
+     */
+    public void recordWrites(Collection<String> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(key -> recentWrites.put(key, Boolean.TRUE));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    keys.forEach(key -> recentWrites.put(key, Boolean.TRUE));
+                }
+            });
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return true if this node wrote the key recently enough that the replicas might not have it yet
+     */
+    public boolean isRecentlyWritten(String key) {
+        return enabled && recentWrites.getIfPresent(key) != null;
+    }
+
+    /**
+     * Run a lookup of a recently written key on the primary, see {@link #onPrimary(Supplier)}
+     */
+    public <T> T readRecentWrite(Supplier<T> lookup) {
+        recentWriteReads.increment();
+        return onPrimary(lookup);
+    }
+
+    /**
+     * Run a lookup which a replica missed again on the primary, see {@link #onPrimary(Supplier)}
+     */
+    public <T> T readAfterReplicaMiss(Supplier<T> lookup) {
+        fallbackReads.increment();
+        return onPrimary(lookup);
+    }
+
+    /**
+     * Run a lookup on the primary even if it starts a read-only transaction
+     * <p>
+     * Note: a transaction which already has its connection keeps it
+     *
+     * @param lookup the lookup
+     * @return what the lookup returned
+     */
+    public <T> T onPrimary(Supplier<T> lookup) {
+        Boolean previous = primaryForced.get();
+        primaryForced.set(Boolean.TRUE);
+        try {
+            return lookup.get();
+        } finally {
+            if (previous == null) {
+                primaryForced.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if the connection being opened should come from a replica
+     */
+    boolean routeToReplica() {
+        boolean replica = enabled && primaryForced.get() == null
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        (replica ? replicaConnections : primaryConnections).increment();
+        return replica;
+    }
+
+    void replicaFailed() {
+        replicaFailures.increment();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("routing.connections.primary", primaryConnections.sum()));
+        metrics.add(new Metric<>("routing.connections.replica", replicaConnections.sum()));
+        metrics.add(new Metric<>("routing.replica.failures", replicaFailures.sum()));
+        metrics.add(new Metric<>("routing.recent.writes", recentWrites.estimatedSize()));
+        metrics.add(new Metric<>("routing.recent.write.reads", recentWriteReads.sum()));
+        metrics.add(new Metric<>("routing.replica.miss.reads", fallbackReads.sum()));
+        return metrics;
+    }
+}
@@ -0,0 +1,57 @@
+package com.mihai.shorturl.repository.routing;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the datasource of Spring Boot with one which sends read-only transactions to the read replicas.
+ * <p>
+ * Note: the replicas use the driver, username and password of the primary
+ *
+ * @author Mihai Iusan
+ */
+@Configuration
+@ConditionalOnProperty(name = "shorturl.datasource.replica-urls")
+public class ReadRoutingConfig implements DisposableBean {
+    // not a bean itself, the datasource initializer of Spring Boot would take it for the primary
+    private ReadRoutingDataSource readRoutingDataSource;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, ReadRouting readRouting,
+                                 @Value("${shorturl.datasource.replica-urls}") String replicaUrls) {
+        DataSource primary = properties.initializeDataSourceBuilder().build();
+        List<DataSource> replicas = new ArrayList<>();
+        for (String replicaUrl : StringUtils.commaDelimitedListToStringArray(replicaUrls)) {
+            if (!replicaUrl.trim().isEmpty()) {
+                replicas.add(DataSourceBuilder.create(properties.getClassLoader())
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(replicaUrl.trim())
+                        .username(properties.determineUsername())
+                        .password(properties.determinePassword())
+                        .build());
+            }
+        }
+        readRoutingDataSource = new ReadRoutingDataSource(primary, replicas, readRouting);
+        return new LazyConnectionDataSourceProxy(readRoutingDataSource);
+    }
+
+    @Override
+    public void destroy() {
+        if (readRoutingDataSource != null) {
+            readRoutingDataSource.close();
+        }
+    }
+}
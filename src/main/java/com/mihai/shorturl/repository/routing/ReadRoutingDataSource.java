@@ -0,0 +1,84 @@
+package com.mihai.shorturl.repository.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out connections of the primary or, for read-only transactions, of the read replicas in turn.
+ * <p>
+ * Note: the decision is made when the connection is opened, so it must be wrapped in a lazy connection proxy for the
+ * transaction to be known by then
+ * Note: if a replica cannot give a connection, the primary is used instead
+ *
+ * @author Mihai Iusan
+ */
+public class ReadRoutingDataSource extends AbstractDataSource {
+    private static final Logger logger = LoggerFactory.getLogger(ReadRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final ReadRouting readRouting;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadRoutingDataSource(DataSource primary, List<DataSource> replicas, ReadRouting readRouting) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!replicas.isEmpty() && readRouting.routeToReplica()) {
+            DataSource replica = nextReplica();
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                readRouting.replicaFailed();
+                logger.warn("Could not connect to a read replica, reading from the primary", e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!replicas.isEmpty() && readRouting.routeToReplica()) {
+            DataSource replica = nextReplica();
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                readRouting.replicaFailed();
+                logger.warn("Could not connect to a read replica, reading from the primary", e);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * Close the pools of the primary and the replicas
+     */
+    public void close() {
+        List<DataSource> targets = new ArrayList<>(replicas);
+        targets.add(primary);
+        for (DataSource target : targets) {
+            Method close = ReflectionUtils.findMethod(target.getClass(), "close");
+            if (close != null) {
+                ReflectionUtils.invokeMethod(close, target);
+            }
+        }
+    }
+
+    private DataSource nextReplica() {
+        return replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+    }
+}
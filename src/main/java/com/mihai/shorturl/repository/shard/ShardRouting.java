@@ -0,0 +1,207 @@
+package com.mihai.shorturl.repository.shard;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Places urls on the shards and decides which shard the connections of {@link ShardRoutingDataSource} come from.
+ * <p>
+ * Note: a row goes to the shard of its key, the mapping from an url to its keys goes to the shard of the url digest
+ * Note: shards are picked with jump consistent hashing, so adding a shard only moves a share of 1/N of the rows
+ * Note: connections which are opened outside of {@link #onShard(int, Supplier)} come from shard 0, which also keeps
+ * the key sequences and the click statistics
+ * Note: without shard urls there is a single shard and everything runs in the calling thread
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class ShardRouting implements PublicMetrics {
+    public static final int HOME_SHARD = 0;
+
+    private final int shardCount;
+    private final boolean resharding;
+    private final ThreadLocal<Integer> currentShard = new ThreadLocal<>();
+    private final ExecutorService executor;
+    private final LongAdder[] connections;
+    private final LongAdder fanOuts = new LongAdder();
+    private final LongAdder missFallbacks = new LongAdder();
+
+    @Autowired
+    public ShardRouting(@Value("${shorturl.shards.urls:}") String shardUrls,
+                        @Value("${shorturl.shards.reshard:false}") boolean reshard,
+                        @Value("${shorturl.shards.miss-fallback:false}") boolean missFallback) {
+        this.shardCount = 1 + (int) StringUtils.commaDelimitedListToSet(shardUrls).stream()
+                .filter(url -> !url.trim().isEmpty())
+                .count();
+        this.resharding = shardCount > 1 && (reshard || missFallback);
+        this.connections = new LongAdder[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            connections[i] = new LongAdder();
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("shard-fan-out-");
+        threadFactory.setDaemon(true);
+        this.executor = shardCount > 1 ? Executors.newFixedThreadPool(shardCount, threadFactory) : null;
+    }
+
+    /**
+     * @return true if there is more than one shard
+     */
+    public boolean isEnabled() {
+        return shardCount > 1;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return true if rows may still be on the shard of an earlier shard count, so lookups which miss have to look
+     * on the other shards too
+     */
+    public boolean isResharding() {
+        return resharding;
+    }
+
+    /**
+     * @param key the key
+     * @return the shard of the row with the key
+     */
+    public int shardOfKey(String key) {
+        return shardOf(UrlEntity.hashOf(key), shardCount);
+    }
+
+    /**
+     * @param urlHash the url digest, see {@link UrlEntity#hashOf(String)}
+     * @return the shard of the mapping from the url to its keys
+     */
+    public int shardOfUrl(long urlHash) {
+        // the key digest uses the same function, mixing keeps the two placements independent
+        return shardOf(urlHash * 0x9E3779B97F4A7C15L + 1, shardCount);
+    }
+
+    /**
+     * Run work which opens its connections on a shard
+     * <p>
+     * Note: a transaction which already has its connection keeps it, so the work must start its own transactions
+     *
+     * @param shard the shard
+     * @param work  the work
+     * @return what the work returned
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        Integer previous = currentShard.get();
+        currentShard.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                currentShard.remove();
+            } else {
+                currentShard.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Run work on each shard, in parallel if there are several
+     *
+     * @param work the work of one shard, given the shard
+     * @return the results, in shard order
+     */
+    public <T> List<T> fanOut(IntFunction<T> work) {
+        List<T> results = new ArrayList<>(shardCount);
+        if (shardCount == 1) {
+            results.add(onShard(HOME_SHARD, () -> work.apply(HOME_SHARD)));
+            return results;
+        }
+
+        fanOuts.increment();
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            final int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> onShard(target, () -> work.apply(target)), executor));
+        }
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Note a lookup which missed on the shard of its key and was repeated on the others
+     */
+    public void missFallback() {
+        missFallbacks.increment();
+    }
+
+    /**
+     * @return the shard for the connection being opened
+     */
+    int currentShard() {
+        Integer shard = currentShard.get();
+        int target = shard == null ? HOME_SHARD : shard;
+        connections[target].increment();
+        return target;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Jump consistent hash, see Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+     */
+    static int shardOf(long hash, int shardCount) {
+        long key = hash;
+        long bucket = -1;
+        long next = 0;
+        while (next < shardCount) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (shardCount == 1) {
+            return metrics;
+        }
+        for (int i = 0; i < shardCount; i++) {
+            metrics.add(new Metric<>("shards." + i + ".connections", connections[i].sum()));
+        }
+        metrics.add(new Metric<>("shards.fan.outs", fanOuts.sum()));
+        metrics.add(new Metric<>("shards.miss.fallbacks", missFallbacks.sum()));
+        return metrics;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mihai.shorturl.repository.shard;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out connections of the shard picked by {@link ShardRouting} for the current thread.
+ * <p>
+ * Note: the decision is made when the connection is opened, so it must be wrapped in a lazy connection proxy for the
+ * shard to be known by then
+ *
+ * @author Mihai Iusan
+ */
+public class ShardRoutingDataSource extends AbstractDataSource {
+    private final List<DataSource> shards;
+    private final ShardRouting shardRouting;
+
+    public ShardRoutingDataSource(List<DataSource> shards, ShardRouting shardRouting) {
+        this.shards = new ArrayList<>(shards);
+        this.shardRouting = shardRouting;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return shards.get(shardRouting.currentShard()).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return shards.get(shardRouting.currentShard()).getConnection(username, password);
+    }
+
+    /**
+     * Close the pools of the shards
+     */
+    public void close() {
+        for (DataSource shard : shards) {
+            Method close = ReflectionUtils.findMethod(shard.getClass(), "close");
+            if (close != null) {
+                ReflectionUtils.invokeMethod(close, shard);
+            }
+        }
+    }
+}
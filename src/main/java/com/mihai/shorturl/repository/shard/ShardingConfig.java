@@ -0,0 +1,90 @@
+package com.mihai.shorturl.repository.shard;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the datasource of Spring Boot with one which spreads the urls over several shards.
+ * <p>
+ * Note: shard 0 is the datasource of spring.datasource, the other shards use its driver, username and password
+ * Note: Hibernate manages the schema of shard 0 like without shards; the schema of the other shards is updated here
+ * the same way, with a short lived entity manager factory each
+ *
+ * @author Mihai Iusan
+ */
+@Configuration
+@ConditionalOnProperty(name = "shorturl.shards.urls")
+public class ShardingConfig implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ShardingConfig.class);
+
+    // not a bean itself, the datasource initializer of Spring Boot would take it for the primary
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, JpaProperties jpaProperties, ShardRouting shardRouting,
+                                 Environment environment, @Value("${shorturl.shards.urls}") String shardUrls) {
+        if (!StringUtils.isEmpty(environment.getProperty("shorturl.datasource.replica-urls"))) {
+            throw new IllegalStateException("Read replicas cannot be combined with shards");
+        }
+
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(properties.initializeDataSourceBuilder().build());
+        for (String shardUrl : StringUtils.commaDelimitedListToSet(shardUrls)) {
+            if (shardUrl.trim().isEmpty()) {
+                continue;
+            }
+            DataSource shard = DataSourceBuilder.create(properties.getClassLoader())
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(shardUrl.trim())
+                    .username(properties.determineUsername())
+                    .password(properties.determinePassword())
+                    .build();
+            updateSchema(shard, shards.size(), jpaProperties);
+            shards.add(shard);
+        }
+        logger.info("Spreading urls over {} shards", shards.size());
+
+        shardRoutingDataSource = new ShardRoutingDataSource(shards, shardRouting);
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Override
+    public void destroy() {
+        if (shardRoutingDataSource != null) {
+            shardRoutingDataSource.close();
+        }
+    }
+
+    private static void updateSchema(DataSource shard, int index, JpaProperties jpaProperties) {
+        EntityManagerFactoryBuilder builder = new EntityManagerFactoryBuilder(new HibernateJpaVendorAdapter(),
+                jpaProperties.getProperties(), null);
+        LocalContainerEntityManagerFactoryBean factory = builder.dataSource(shard)
+                .packages(UrlEntity.class)
+                .properties(jpaProperties.getHibernateProperties(shard))
+                .persistenceUnit("shard-" + index)
+                .build();
+        factory.afterPropertiesSet();
+        factory.destroy();
+    }
+}
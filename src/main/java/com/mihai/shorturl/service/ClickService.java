@@ -0,0 +1,9 @@
+package com.mihai.shorturl.service;
+
+public interface ClickService {
+    void recordClick(String key);
+
+    ClickStats getClickStats(String key);
+
+    void clearClicks(String key);
+}
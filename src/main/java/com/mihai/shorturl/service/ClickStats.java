@@ -0,0 +1,66 @@
+package com.mihai.shorturl.service;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Redirect counts of a key, in total and per time bucket.
+ *
+ * @author Mihai Iusan
+ */
+@ApiModel(description = "Click statistics of a key")
+public final class ClickStats {
+
+    @ApiModelProperty(value = "The shortened URL", example = "t15px8")
+    private final String key;
+
+    @ApiModelProperty(value = "All the clicks, including the ones not written to the database yet")
+    private final long total;
+
+    @ApiModelProperty(value = "Clicks written to the database, per time bucket")
+    private final List<Bucket> buckets;
+
+    public ClickStats(String key, long total, List<Bucket> buckets) {
+        this.key = key;
+        this.total = total;
+        this.buckets = buckets;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    @ApiModel(description = "Clicks within one time bucket")
+    public static final class Bucket {
+
+        @ApiModelProperty(value = "Start of the bucket, ISO-8601", example = "2018-01-01T10:00:00Z")
+        private final String start;
+
+        @ApiModelProperty(value = "Clicks within the bucket")
+        private final long clicks;
+
+        public Bucket(Instant start, long clicks) {
+            this.start = start.toString();
+            this.clicks = clicks;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public long getClicks() {
+            return clicks;
+        }
+    }
+}
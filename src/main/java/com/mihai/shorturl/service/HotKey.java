@@ -0,0 +1,40 @@
+package com.mihai.shorturl.service;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * A key among the most redirected ones, with its estimated redirect rate.
+ *
+ * @author Mihai Iusan
+ */
+@ApiModel(description = "A key among the most redirected ones")
+public final class HotKey {
+
+    @ApiModelProperty(value = "The shortened URL", example = "t15px8")
+    private final String key;
+
+    @ApiModelProperty(value = "Estimated redirects per second, recent ones weigh more")
+    private final double ratePerSecond;
+
+    @ApiModelProperty(value = "Whether the URL is pinned in memory")
+    private final boolean pinned;
+
+    public HotKey(String key, double ratePerSecond, boolean pinned) {
+        this.key = key;
+        this.ratePerSecond = ratePerSecond;
+        this.pinned = pinned;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public boolean isPinned() {
+        return pinned;
+    }
+}
@@ -2,4 +2,11 @@ package com.mihai.shorturl.service;
 
 public interface KeyService {
     String shorten(String url);
-}
\ No newline at end of file
+
+    /**
+     * @return true if the generated keys are unique and do not have to be checked against the database
+     */
+    default boolean isCollisionFree() {
+        return false;
+    }
+}
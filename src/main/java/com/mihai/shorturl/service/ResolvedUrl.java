@@ -0,0 +1,76 @@
+package com.mihai.shorturl.service;
+
+import com.mihai.shorturl.entity.UrlEntity;
+
+import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Immutable result of resolving a key: the target URL and the moment it stops being valid.
+ * <p>
+ * Note: a URL is valid for the whole day of its expiration date, so it expires at the start of the following day,
+ * unless it has a finer expiration, see {@link UrlEntity#getExpiresAt()}
+ * Note: the version is the one of the row it was read from, 0 if it is not known
+ *
+ * @author Mihai Iusan
+ */
+public final class ResolvedUrl {
+    private final String url;
+    private final LocalDate expirationDate;
+    private final long expiresAtMillis;
+    private final long version;
+
+    public ResolvedUrl(@NotNull final String url, @NotNull final LocalDate expirationDate) {
+        this(url, expirationDate, UrlEntity.endOfDay(expirationDate));
+    }
+
+    public ResolvedUrl(@NotNull final String url, @NotNull final LocalDate expirationDate, final long expiresAtMillis) {
+        this(url, expirationDate, expiresAtMillis, 0);
+    }
+
+    public ResolvedUrl(@NotNull final String url, @NotNull final LocalDate expirationDate, final long expiresAtMillis,
+                       final long version) {
+        Objects.requireNonNull(url);
+        Objects.requireNonNull(expirationDate);
+
+        this.url = url;
+        this.expirationDate = expirationDate;
+        this.expiresAtMillis = expiresAtMillis;
+        this.version = version;
+    }
+
+    public static ResolvedUrl of(@NotNull UrlEntity urlEntity) {
+        return new ResolvedUrl(urlEntity.getUrl(), urlEntity.getExpirationDate(), urlEntity.getExpiresAtMillis(),
+                urlEntity.getVersion());
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public LocalDate getExpirationDate() {
+        return expirationDate;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isExpired() {
+        return isExpired(System.currentTimeMillis());
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ResolvedUrl { url='" + url + ", expirationDate=" + expirationDate + '}';
+    }
+}
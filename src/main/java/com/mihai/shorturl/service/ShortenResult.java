@@ -0,0 +1,55 @@
+package com.mihai.shorturl.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Outcome of shortening one url of a batch: either its key or the reason it was not shortened.
+ *
+ * @author Mihai Iusan
+ */
+@ApiModel(description = "Batch shorten result")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class ShortenResult {
+
+    @ApiModelProperty(value = "The URL as it was submitted", example = "https://duckduckgo.com")
+    private final String url;
+
+    @ApiModelProperty(value = "The shortened URL, missing if it failed", example = "t15px8")
+    private final String key;
+
+    @ApiModelProperty(value = "Why the URL was not shortened, missing if it succeeded")
+    private final String error;
+
+    private ShortenResult(String url, String key, String error) {
+        this.url = url;
+        this.key = key;
+        this.error = error;
+    }
+
+    public static ShortenResult shortened(String url, String key) {
+        return new ShortenResult(url, key, null);
+    }
+
+    public static ShortenResult failed(String url, String error) {
+        return new ShortenResult(url, null, error);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortenResult { url='" + url + ", key='" + key + ", error='" + error + '}';
+    }
+}
@@ -0,0 +1,48 @@
+package com.mihai.shorturl.service;
+
+import javax.validation.constraints.NotNull;
+import java.util.Locale;
+
+/**
+ * Brings URLs to the form in which they are stored and compared.
+ * <p>
+ * Note: only the parts that are case insensitive (scheme and host) are lower cased, the rest is kept as it is
+ *
+ * @author Mihai Iusan
+ */
+public final class UrlNormalizer {
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private UrlNormalizer() {
+    }
+
+    /**
+     * Normalize the url: trims it and lower cases the scheme and the host
+     *
+     * @param url the url
+     * @return the normalized url
+     */
+    public static String normalize(@NotNull String url) {
+        String trimmed = url.trim();
+        int schemeEnd = trimmed.indexOf(SCHEME_SEPARATOR);
+        if (schemeEnd <= 0) {
+            return trimmed;
+        }
+
+        int authorityStart = schemeEnd + SCHEME_SEPARATOR.length();
+        int authorityEnd = authorityStart;
+        while (authorityEnd < trimmed.length() && "/?#".indexOf(trimmed.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        // user info is case sensitive, only the host and port after it are lower cased
+        int hostStart = trimmed.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+
+        return trimmed.substring(0, schemeEnd).toLowerCase(Locale.ROOT)
+                + trimmed.substring(schemeEnd, hostStart)
+                + trimmed.substring(hostStart, authorityEnd).toLowerCase(Locale.ROOT)
+                + trimmed.substring(authorityEnd);
+    }
+}
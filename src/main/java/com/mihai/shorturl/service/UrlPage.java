@@ -0,0 +1,37 @@
+package com.mihai.shorturl.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.mihai.shorturl.entity.UrlEntity;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+/**
+ * One page of a cursor based url listing.
+ *
+ * @author Mihai Iusan
+ */
+@ApiModel(description = "Page of URLs")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class UrlPage {
+
+    @ApiModelProperty(value = "The URLs of the page")
+    private final List<UrlEntity> urls;
+
+    @ApiModelProperty(value = "Opaque token to get the next page, missing on the last page")
+    private final String next;
+
+    public UrlPage(List<UrlEntity> urls, String next) {
+        this.urls = urls;
+        this.next = next;
+    }
+
+    public List<UrlEntity> getUrls() {
+        return urls;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
@@ -2,16 +2,31 @@ package com.mihai.shorturl.service;
 
 import com.mihai.shorturl.entity.UrlEntity;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface UrlService {
     List<UrlEntity> find(int offset, int limit);
 
+    UrlPage findPage(String cursor, int limit);
+
+    void exportUrls(Consumer<UrlEntity> consumer);
+
     UrlEntity find(String shortUrl);
 
     UrlEntity create(String url);
 
+    List<ShortenResult> createAll(List<String> urls);
+
     String findUrlByKey(String key);
 
+    ResolvedUrl resolve(String key);
+
+    ResolvedUrl resolveCached(String key);
+
+    Map<String, ResolvedUrl> resolveAll(Collection<String> keys);
+
     void deleteByKey(String key);
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.mihai.shorturl.service.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit which adapts to the observed latency: additive increase while the latency stays near its
+ * baseline, multiplicative decrease once it grows past it (AIMD).
+ * <p>
+ * Note: the latency is averaged over windows; the baseline is the lowest window average, which drifts up slowly
+ * towards the current average so a lasting change of the backend is learned again
+ * Note: the limit only grows while it is used, an idle endpoint does not open up to the max limit
+ * Note: acquiring and releasing do not lock, the window is closed by the release which wins a compare and set
+ *
+ * @author Mihai Iusan
+ */
+public final class AdaptiveLimit {
+    private static final int BASELINE_DRIFT = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final LongAdder windowLatency = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowStart;
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+    private volatile long baselineNanos;
+    private volatile long latencyNanos;
+
+    /**
+     * @param initialLimit the limit until the first window closes
+     * @param minLimit     the lowest limit
+     * @param maxLimit     the highest limit
+     * @param tolerance    the ratio of the average latency to the baseline above which the limit is decreased
+     * @param backoffRatio the factor applied to the limit when it is decreased
+     * @param windowNanos  the length of the windows over which the latency is averaged
+     * @param nowNanos     the current time
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio,
+                         long windowNanos, long nowNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = windowNanos;
+        this.windowStart = new AtomicLong(nowNanos);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+    }
+
+    /**
+     * @return true if the request is admitted and must be released, false if the limit is reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release an admitted request and record its latency
+     *
+     * @param startNanos the time the request was admitted
+     * @param nowNanos   the current time
+     */
+    public void release(long startNanos, long nowNanos) {
+        inFlight.decrementAndGet();
+        windowLatency.add(nowNanos - startNanos);
+        windowSamples.increment();
+        long start = windowStart.get();
+        if (nowNanos - start >= windowNanos && windowStart.compareAndSet(start, nowNanos)) {
+            update();
+        }
+    }
+
+    private void update() {
+        long samples = windowSamples.sumThenReset();
+        long latency = windowLatency.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        if (samples == 0) {
+            return;
+        }
+        long average = latency / samples;
+        latencyNanos = average;
+        long baseline = baselineNanos;
+        if (baseline == 0 || average < baseline) {
+            baseline = average;
+        } else {
+            baseline += (average - baseline) / BASELINE_DRIFT;
+        }
+        baselineNanos = baseline;
+
+        int current = limit;
+        if (average > tolerance * baseline) {
+            limit = Math.max(minLimit, (int) (current * backoffRatio));
+        } else if (maxInFlight * 2 >= current) {
+            limit = Math.min(maxLimit, current + 1);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the share of the limit in use, above 1 right after the limit was decreased
+     */
+    public double utilization() {
+        return (double) inFlight.get() / limit;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getBaselineNanos() {
+        return baselineNanos;
+    }
+
+    /**
+     * @return the average latency of the last window
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+}
@@ -0,0 +1,162 @@
+package com.mihai.shorturl.service.admission;
+
+import com.mihai.shorturl.service.metrics.Endpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the concurrent requests of the read endpoints (redirect, resolve) and of the write endpoints (shorten,
+ * batch), each with an {@link AdaptiveLimit}, and optionally the rate of each client.
+ * <p>
+ * Note: writes are shed first, they are rejected once the reads use most of their limit, so redirects keep the
+ * connections they need under a spike of creates
+ * Note: other requests, like the metrics and the admin endpoints, are not limited
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class AdmissionControl implements PublicMetrics {
+    private final boolean enabled;
+    private final AdaptiveLimit reads;
+    private final AdaptiveLimit writes;
+    private final double shedWritesAbove;
+    private final long retryAfterSeconds;
+    private final ClientRateLimiter clientRateLimiter;
+    private final LongAdder shedWrites = new LongAdder();
+
+    /**
+     * @param tolerance       the ratio of the latency to its baseline above which a limit is decreased
+     * @param shedWritesAbove the share of the read limit in use above which writes are rejected
+     * @param clientRate      the sustained requests per second of a client, 0 to not limit clients
+     * @param clientBurst     the requests a client can make at once
+     */
+    @Autowired
+    public AdmissionControl(@Value("${shorturl.admission.enabled:true}") boolean enabled,
+                            @Value("${shorturl.admission.initial-limit:50}") int initialLimit,
+                            @Value("${shorturl.admission.min-limit:8}") int minLimit,
+                            @Value("${shorturl.admission.max-limit:500}") int maxLimit,
+                            @Value("${shorturl.admission.tolerance:2.0}") double tolerance,
+                            @Value("${shorturl.admission.backoff-ratio:0.9}") double backoffRatio,
+                            @Value("${shorturl.admission.window-ms:100}") long windowMillis,
+                            @Value("${shorturl.admission.shed-writes-above:0.8}") double shedWritesAbove,
+                            @Value("${shorturl.admission.retry-after-seconds:1}") long retryAfterSeconds,
+                            @Value("${shorturl.admission.client-rate.per-second:0}") double clientRate,
+                            @Value("${shorturl.admission.client-rate.burst:100}") int clientBurst,
+                            @Value("${shorturl.admission.client-rate.max-clients:100000}") int maxClients) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        long now = System.nanoTime();
+        this.enabled = enabled;
+        this.reads = new AdaptiveLimit(initialLimit, minLimit, maxLimit, tolerance, backoffRatio, windowNanos, now);
+        this.writes = new AdaptiveLimit(initialLimit, minLimit, maxLimit, tolerance, backoffRatio, windowNanos, now);
+        this.shedWritesAbove = shedWritesAbove;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.clientRateLimiter = clientRate > 0 ? new ClientRateLimiter(clientRate, clientBurst, maxClients) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param endpoint the endpoint of the request
+     * @return true if the request is limited, it is then admitted through {@link #tryAcquire(Endpoint)}
+     */
+    public boolean isLimited(Endpoint endpoint) {
+        return enabled && limitOf(endpoint) != null;
+    }
+
+    /**
+     * @param endpoint the endpoint of a limited request
+     * @return true if the request is admitted, it must then be released
+     */
+    public boolean tryAcquire(Endpoint endpoint) {
+        AdaptiveLimit limit = limitOf(endpoint);
+        if (limit == writes && reads.utilization() >= shedWritesAbove) {
+            shedWrites.increment();
+            return false;
+        }
+        return limit.tryAcquire();
+    }
+
+    /**
+     * @param endpoint   the endpoint of an admitted request
+     * @param startNanos the time the request was admitted
+     */
+    public void release(Endpoint endpoint, long startNanos) {
+        limitOf(endpoint).release(startNanos, System.nanoTime());
+    }
+
+    /**
+     * @param client the client of a limited request
+     * @return 0 if the client is admitted, otherwise the seconds until it can make a request
+     */
+    public long admitClient(String client) {
+        if (clientRateLimiter == null) {
+            return 0;
+        }
+        long waitNanos = clientRateLimiter.tryAcquire(client, System.nanoTime());
+        return waitNanos == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+    }
+
+    /**
+     * @return the seconds a rejected request is asked to wait
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${shorturl.admission.client-rate.evict-interval-ms:60000}")
+    public void evictIdleClients() {
+        if (clientRateLimiter != null) {
+            clientRateLimiter.evictIdle(System.nanoTime());
+        }
+    }
+
+    private AdaptiveLimit limitOf(Endpoint endpoint) {
+        switch (endpoint) {
+            case REDIRECT:
+            case BATCH_RESOLVE:
+                return reads;
+            case CREATE:
+            case BATCH_CREATE:
+                return writes;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        addMetrics(metrics, "reads", reads);
+        addMetrics(metrics, "writes", writes);
+        metrics.add(new Metric<>("admission.writes.shed", shedWrites.sum()));
+        if (clientRateLimiter != null) {
+            metrics.add(new Metric<>("admission.clients", clientRateLimiter.size()));
+            metrics.add(new Metric<>("admission.clients.rejected", clientRateLimiter.getRejected()));
+            metrics.add(new Metric<>("admission.clients.overflowed", clientRateLimiter.getOverflowed()));
+        }
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, String name, AdaptiveLimit limit) {
+        metrics.add(new Metric<>("admission." + name + ".limit", limit.getLimit()));
+        metrics.add(new Metric<>("admission." + name + ".in.flight", limit.getInFlight()));
+        metrics.add(new Metric<>("admission." + name + ".rejected", limit.getRejected()));
+        metrics.add(new Metric<>("admission." + name + ".latency.ms", limit.getLatencyNanos() / 1e6));
+        metrics.add(new Metric<>("admission." + name + ".baseline.ms", limit.getBaselineNanos() / 1e6));
+    }
+}
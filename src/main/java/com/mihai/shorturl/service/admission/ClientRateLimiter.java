@@ -0,0 +1,93 @@
+package com.mihai.shorturl.service.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket per client, kept as the theoretical arrival time of its next request (GCRA) in a single long.
+ * <p>
+ * Note: the buckets live in a ConcurrentHashMap, whose reads do not lock and whose writes lock one bin; a bucket
+ * is taken with a compare and set
+ * Note: a bucket which filled up again holds no state and is evicted; while the map is at its max size, new clients
+ * all share one overflow bucket, so flooding the map with clients does not get them past the rate
+ * Note: a request racing with the eviction of its bucket is admitted without being counted
+ *
+ * @author Mihai Iusan
+ */
+public final class ClientRateLimiter {
+    private final ConcurrentHashMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private final AtomicLong overflowArrival = new AtomicLong(Long.MIN_VALUE);
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxClients;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    /**
+     * @param ratePerSecond the sustained requests per second of a client
+     * @param burst         the requests a client can make at once
+     * @param maxClients    the max number of buckets
+     */
+    public ClientRateLimiter(double ratePerSecond, int burst, int maxClients) {
+        this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * @param client   the client
+     * @param nowNanos the current time
+     * @return 0 if the request is admitted, otherwise the nanos until the client can make one
+     */
+    public long tryAcquire(String client, long nowNanos) {
+        AtomicLong arrival = arrivals.get(client);
+        if (arrival == null) {
+            if (arrivals.size() >= maxClients) {
+                overflowed.increment();
+                overflowArrival.compareAndSet(Long.MIN_VALUE, nowNanos);
+                return tryAcquire(overflowArrival, nowNanos);
+            }
+            arrival = arrivals.computeIfAbsent(client, newClient -> new AtomicLong(nowNanos));
+        }
+        return tryAcquire(arrival, nowNanos);
+    }
+
+    private long tryAcquire(AtomicLong arrival, long nowNanos) {
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            if (next - nowNanos > burstNanos) {
+                rejected.increment();
+                return next - nowNanos - burstNanos;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the buckets which filled up again
+     *
+     * @param nowNanos the current time
+     */
+    public void evictIdle(long nowNanos) {
+        arrivals.values().removeIf(arrival -> arrival.get() - nowNanos <= 0);
+    }
+
+    public int size() {
+        return arrivals.size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the requests of clients which found the map full and went through the overflow bucket
+     */
+    public long getOverflowed() {
+        return overflowed.sum();
+    }
+}
@@ -0,0 +1,120 @@
+package com.mihai.shorturl.service.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of strings which can be read and written by many threads without locking.
+ * <p>
+ * Note: the bit positions are derived from one 128 bit murmur3 hash (Kirsch-Mitzenmacher double hashing)
+ * Note: when the memory limit is lower than what the false positive rate needs, the filter uses the limit and its
+ * expected false positive rate goes up accordingly
+ *
+ * @author Mihai Iusan
+ */
+public final class ConcurrentBloomFilter {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int MAX_HASHES = 30;
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions the number of strings the false positive rate is sized for
+     * @param fpp                the wanted false positive rate
+     * @param maxBytes           the max size of the bit array, 0 for no limit
+     */
+    public ConcurrentBloomFilter(long expectedInsertions, double fpp, long maxBytes) {
+        long expected = Math.max(1, expectedInsertions);
+        double optimalBits = Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        double bits = maxBytes > 0 ? Math.min(optimalBits, maxBytes * (double) Byte.SIZE) : optimalBits;
+        int wordCount = (int) Math.max(1, Math.min(MAX_WORDS, Math.ceil(bits / Long.SIZE)));
+
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * Long.SIZE;
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) bitCount / expected * Math.log(2))));
+    }
+
+    /**
+     * @param value the string to add
+     */
+    public void put(String value) {
+        ByteBuffer hash = hash(value);
+        long hash1 = hash.getLong(0);
+        long hash2 = hash.getLong(Long.BYTES);
+        for (int i = 0; i < hashCount; i++) {
+            setBit(bitIndex(hash1 + i * hash2));
+        }
+        insertions.increment();
+    }
+
+    /**
+     * @param value the string to check
+     * @return false if the string was never added, true if it might have been
+     */
+    public boolean mightContain(String value) {
+        ByteBuffer hash = hash(value);
+        long hash1 = hash.getLong(0);
+        long hash2 = hash.getLong(Long.BYTES);
+        for (int i = 0; i < hashCount; i++) {
+            long index = bitIndex(hash1 + i * hash2);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the false positive rate expected for the strings added so far
+     */
+    public double expectedFpp() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) insertions.sum() / bitCount), hashCount);
+    }
+
+    public long insertions() {
+        return insertions.sum();
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private long bitIndex(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+    }
+
+    private static ByteBuffer hash(String value) {
+        return ByteBuffer.wrap(HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,92 @@
+package com.mihai.shorturl.service.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch of strings which can be updated by many threads without locking.
+ * <p>
+ * Note: the counters of a string are derived from one 128 bit murmur3 hash, like in {@link ConcurrentBloomFilter}
+ * Note: estimates are never lower than the true (halved) count and are higher by at most e / width of all the counts with a
+ * probability of 1 - e^-depth
+ * Note: halving is not atomic across the counters, an add during a halving can see some of its rows halved already
+ *
+ * @author Mihai Iusan
+ */
+public final class CountMinSketch {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final AtomicLongArray counters;
+    private final int width;
+    private final int depth;
+
+    /**
+     * @param width the counters per row
+     * @param depth the rows, one counter of each is updated per string
+     */
+    public CountMinSketch(int width, int depth) {
+        this.width = Math.max(1, width);
+        this.depth = Math.max(1, depth);
+        this.counters = new AtomicLongArray(this.width * this.depth);
+    }
+
+    /**
+     * @param value the string to count
+     * @return the estimated count of the string, this one included
+     */
+    public long add(String value) {
+        ByteBuffer hash = hash(value);
+        long hash1 = hash.getLong(0);
+        long hash2 = hash.getLong(Long.BYTES);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(row, hash1, hash2)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param value the string
+     * @return the estimated count of the string
+     */
+    public long estimate(String value) {
+        ByteBuffer hash = hash(value);
+        long hash1 = hash.getLong(0);
+        long hash2 = hash.getLong(Long.BYTES);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash1, hash2)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halve all the counters, so older counts weigh less than recent ones
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            long current;
+            do {
+                current = counters.get(i);
+            } while (current != 0 && !counters.compareAndSet(i, current, current >>> 1));
+        }
+    }
+
+    public long memoryBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    private int index(int row, long hash1, long hash2) {
+        return row * width + (int) (((hash1 + row * hash2) & Long.MAX_VALUE) % width);
+    }
+
+    private static ByteBuffer hash(String value) {
+        return ByteBuffer.wrap(HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
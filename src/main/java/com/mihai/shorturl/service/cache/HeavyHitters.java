@@ -0,0 +1,175 @@
+package com.mihai.shorturl.service.cache;
+
+import com.mihai.shorturl.service.HotKey;
+import com.mihai.shorturl.service.ResolvedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the most redirected keys with a Count-Min sketch and a bounded top-K table, and pins the hottest ones in the
+ * url cache so they are never evicted.
+ * <p>
+ * Note: memory use is fixed by the sketch size and K, whatever the number of keys
+ * Note: counts are halved every decay interval, so a count of c means about c / (2 * interval) redirects per second
+ * Note: keys above the pin rate are pinned on their next redirect, and unpinned once they drop below half of it
+ * Note: counting a key which is already in the table does not lock, only admitting a new key to a full table does
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class HeavyHitters implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitters.class);
+
+    private final UrlCache urlCache;
+    private final boolean enabled;
+    private final CountMinSketch sketch;
+    private final int topK;
+    private final double decaySeconds;
+    private final double pinRate;
+    private final ConcurrentHashMap<String, Long> topKeys = new ConcurrentHashMap<>();
+    private volatile long minTopCount;
+
+    private final LongAdder admissions = new LongAdder();
+    private final LongAdder pins = new LongAdder();
+    private final LongAdder unpins = new LongAdder();
+
+    /**
+     * @param sketchWidth the counters per row of the sketch
+     * @param sketchDepth the rows of the sketch
+     * @param topK        the number of keys tracked, also the max number of pinned keys
+     * @param decayMillis the interval at which counts are halved
+     * @param pinRate     the redirects per second above which a key is pinned, 0 to never pin
+     */
+    @Autowired
+    public HeavyHitters(UrlCache urlCache,
+                        @Value("${shorturl.hot-keys.enabled:true}") boolean enabled,
+                        @Value("${shorturl.hot-keys.sketch-width:4096}") int sketchWidth,
+                        @Value("${shorturl.hot-keys.sketch-depth:4}") int sketchDepth,
+                        @Value("${shorturl.hot-keys.top-k:50}") int topK,
+                        @Value("${shorturl.hot-keys.decay-interval-ms:10000}") long decayMillis,
+                        @Value("${shorturl.hot-keys.pin-rate-per-second:50}") double pinRate) {
+        this.urlCache = urlCache;
+        this.enabled = enabled;
+        this.sketch = new CountMinSketch(enabled ? sketchWidth : 1, enabled ? sketchDepth : 1);
+        this.topK = Math.max(1, topK);
+        this.decaySeconds = decayMillis / 1000.0;
+        this.pinRate = pinRate;
+    }
+
+    /**
+     * Count a redirect of the key and pin its entry if the key is hot
+     *
+     * @param key         the key
+     * @param resolvedUrl the entry the key resolved to
+     */
+    public void record(String key, ResolvedUrl resolvedUrl) {
+        if (!enabled) {
+            return;
+        }
+        long count = sketch.add(key);
+        if (topKeys.replace(key, count) == null) {
+            if (topKeys.size() >= topK && count <= minTopCount) {
+                return;
+            }
+            synchronized (topKeys) {
+                admit(key, count);
+            }
+        }
+        if (pinRate > 0 && rateOf(count) >= pinRate && topKeys.containsKey(key) && !urlCache.isPinned(key)
+                && urlCache.pin(key, resolvedUrl)) {
+            pins.increment();
+            logger.info("Pinned hot key {} at about {} redirects per second", key, Math.round(rateOf(count)));
+        }
+    }
+
+    /**
+     * @return the tracked keys, the hottest first
+     */
+    public List<HotKey> hotKeys() {
+        return topKeys.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(entry -> new HotKey(entry.getKey(), rateOf(entry.getValue()), urlCache.isPinned(entry.getKey())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Halve the counts and unpin the keys which cooled down
+     */
+    @Scheduled(initialDelayString = "${shorturl.hot-keys.decay-interval-ms:10000}",
+            fixedDelayString = "${shorturl.hot-keys.decay-interval-ms:10000}")
+    public void decay() {
+        if (!enabled) {
+            return;
+        }
+        sketch.halve();
+        synchronized (topKeys) {
+            topKeys.replaceAll((key, count) -> count >>> 1);
+            topKeys.values().removeIf(count -> count == 0);
+            minTopCount = minCount();
+        }
+
+        for (String key : urlCache.pinnedKeys()) {
+            if (rateOf(topKeys.getOrDefault(key, 0L)) < pinRate / 2) {
+                urlCache.unpin(key);
+                unpins.increment();
+                logger.info("Unpinned key {} which cooled down", key);
+            }
+        }
+    }
+
+    private void admit(String key, long count) {
+        if (topKeys.size() < topK) {
+            topKeys.put(key, count);
+        } else {
+            Map.Entry<String, Long> coldest = topKeys.entrySet().stream()
+                    .min(Comparator.comparingLong(Map.Entry::getValue))
+                    .orElse(null);
+            if (coldest != null && count > coldest.getValue()) {
+                topKeys.remove(coldest.getKey());
+                topKeys.put(key, count);
+                admissions.increment();
+            }
+        }
+        if (topKeys.size() >= topK) {
+            minTopCount = minCount();
+        }
+    }
+
+    private long minCount() {
+        return topKeys.values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+
+    private double rateOf(long count) {
+        return count / (2 * decaySeconds);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("hot.keys.tracked", topKeys.size()));
+        metrics.add(new Metric<>("hot.keys.admissions", admissions.sum()));
+        metrics.add(new Metric<>("hot.keys.pins", pins.sum()));
+        metrics.add(new Metric<>("hot.keys.unpins", unpins.sum()));
+        metrics.add(new Metric<>("hot.keys.top.rate", rateOf(topKeys.values().stream().mapToLong(Long::longValue).max().orElse(0))));
+        metrics.add(new Metric<>("hot.keys.sketch.memory.bytes", sketch.memoryBytes()));
+        return metrics;
+    }
+}
@@ -0,0 +1,197 @@
+package com.mihai.shorturl.service.cache;
+
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.routing.ReadRouting;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over the keys of all the rows, so lookups and collision checks of keys which do not exist can skip
+ * the database.
+ * <p>
+ * Note: it holds the keys of expired rows too, their keys stay taken until the reclaimer deletes the rows
+ * Note: it is built by a streaming scan at startup and rebuilt periodically, which drops deleted keys; until the
+ * first build completes every key might exist
+ * Note: keys are added after the commit which inserted them, and added to the filter being built as well, so a
+ * rebuild never misses a new key
+ * Note: each node has its own filter, so it only sees the keys created on that node between two rebuilds
+ * Note: the keys are read from the primary, a lagging replica could miss keys which were added before the rebuild
+ * Note: with several shards, the keys of all the shards are read in parallel into one filter
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class KeyFilter implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(KeyFilter.class);
+    // room for the table to grow until the next rebuild
+    private static final int GROWTH_FACTOR = 2;
+
+    private final UrlRepository urlRepository;
+    private final ReadRouting readRouting;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long expectedKeys;
+    private final double fpp;
+    private final long maxBytes;
+
+    private volatile ConcurrentBloomFilter current;
+    private volatile ConcurrentBloomFilter next;
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder staleKeys = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private volatile long lastRebuildMillis;
+
+    @Autowired
+    public KeyFilter(UrlRepository urlRepository, ReadRouting readRouting, ShardRouting shardRouting,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${shorturl.key-filter.enabled:true}") boolean enabled,
+                     @Value("${shorturl.key-filter.expected-keys:1000000}") long expectedKeys,
+                     @Value("${shorturl.key-filter.fpp:0.01}") double fpp,
+                     @Value("${shorturl.key-filter.max-memory-bytes:0}") long maxBytes) {
+        this.urlRepository = urlRepository;
+        this.readRouting = readRouting;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.expectedKeys = expectedKeys;
+        this.fpp = fpp;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key the key
+     * @return false if no row has the key, true if one might have it
+     */
+    public boolean mightContain(String key) {
+        ConcurrentBloomFilter filter = current;
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * Add the key of a new row, once the current transaction commits
+     *
+     * @param key the key
+     */
+    public void add(String key) {
+        addAll(Collections.singletonList(key));
+    }
+
+    /**
+     * Add the keys of new rows, once the current transaction commits
+     *
+     * @param keys the keys
+     */
+    public void addAll(Collection<String> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    put(keys);
+                }
+            });
+        } else {
+            put(keys);
+        }
+    }
+
+    /**
+     * Note the deletion of a key, it stays in the filter until the next rebuild
+     *
+     * @param key the key
+     */
+    public void remove(String key) {
+        staleKeys.increment();
+    }
+
+    /**
+     * Build a new filter from the keys in the database and replace the current one
+     */
+    @Scheduled(initialDelayString = "${shorturl.key-filter.initial-delay-ms:0}",
+            fixedDelayString = "${shorturl.key-filter.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long rows = shardRouting.fanOut(shard -> readRouting.onPrimary(urlRepository::count)).stream()
+                    .mapToLong(Long::longValue)
+                    .sum();
+            ConcurrentBloomFilter rebuilt = new ConcurrentBloomFilter(Math.max(expectedKeys, rows * GROWTH_FACTOR), fpp, maxBytes);
+            next = rebuilt;
+            shardRouting.fanOut(shard -> readRouting.onPrimary(() -> transactionTemplate.execute(status -> {
+                urlRepository.forEachKey(rebuilt::put);
+                return null;
+            })));
+            // swapped before next is cleared, so an add sees the new filter in one of them
+            current = rebuilt;
+            staleKeys.reset();
+            rebuilds.increment();
+            lastRebuildMillis = System.currentTimeMillis() - start;
+            logger.info("Key filter rebuilt with {} keys in {} ms, {} bytes, expected false positive rate {}",
+                    rebuilt.insertions(), lastRebuildMillis, rebuilt.memoryBytes(), rebuilt.expectedFpp());
+        } catch (DataAccessException e) {
+            logger.warn("Key filter rebuild failed, keeping the current filter", e);
+        } finally {
+            next = null;
+        }
+    }
+
+    private void put(Collection<String> keys) {
+        // next first: if it is already cleared, current is the rebuilt filter
+        ConcurrentBloomFilter building = next;
+        ConcurrentBloomFilter filter = current;
+        for (String key : keys) {
+            if (building != null) {
+                building.put(key);
+            }
+            if (filter != null && filter != building) {
+                filter.put(key);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        ConcurrentBloomFilter filter = current;
+        metrics.add(new Metric<>("key.filter.ready", filter == null ? 0 : 1));
+        metrics.add(new Metric<>("key.filter.keys", filter == null ? 0 : filter.insertions()));
+        metrics.add(new Metric<>("key.filter.memory.bytes", filter == null ? 0 : filter.memoryBytes()));
+        metrics.add(new Metric<>("key.filter.hashes", filter == null ? 0 : filter.hashCount()));
+        metrics.add(new Metric<>("key.filter.fpp.target", fpp));
+        metrics.add(new Metric<>("key.filter.fpp.expected", filter == null ? 1.0 : filter.expectedFpp()));
+        metrics.add(new Metric<>("key.filter.rejections", rejections.sum()));
+        metrics.add(new Metric<>("key.filter.stale", staleKeys.sum()));
+        metrics.add(new Metric<>("key.filter.rebuilds", rebuilds.sum()));
+        metrics.add(new Metric<>("key.filter.rebuild.ms", lastRebuildMillis));
+        return metrics;
+    }
+}
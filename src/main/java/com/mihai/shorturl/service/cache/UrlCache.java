@@ -0,0 +1,380 @@
+package com.mihai.shorturl.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mihai.shorturl.service.ResolvedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of key to URL used by the redirect path.
+ * <p>
+ * Note: eviction is frequency aware (W-TinyLFU), so a few hot keys are not pushed out by one-off lookups
+ * Note: entries expire together with their URL and are never served after the expiration date
+ * Note: hot keys can be pinned, see {@link HeavyHitters}; pinned entries are served before the cache and are only
+ * dropped when they are unpinned, invalidated or expire
+ * Note: invalidations of other nodes carry the version of the row they wrote, see
+ * {@link #invalidateOlderThan(String, long)}; an older entry loaded afterwards is served but not kept
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class UrlCache implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(UrlCache.class);
+
+    private final Cache<String, ResolvedUrl> cache;
+    private final ConcurrentHashMap<String, ResolvedUrl> pinned = new ConcurrentHashMap<>();
+    private final LongAdder pinnedHits = new LongAdder();
+    private final LongAdder peekHits = new LongAdder();
+    private final Cache<String, Long> invalidatedVersions;
+    private final LongAdder staleLoads = new LongAdder();
+
+    /**
+     * @param maximumSize      the max number of entries, used when no weight limit is set
+     * @param maximumWeight    the max total weight (key + url characters), 0 to limit by size instead
+     * @param versionTtlMillis how long the version of an invalidation of another node is remembered, at least the
+     *                         replica lag and the delay of the invalidation messages
+     */
+    @Autowired
+    public UrlCache(@Value("${shorturl.cache.maximum-size:100000}") long maximumSize,
+                    @Value("${shorturl.cache.maximum-weight:0}") long maximumWeight,
+                    @Value("${shorturl.invalidation.version-ttl-ms:60000}") long versionTtlMillis) {
+        this.invalidatedVersions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(versionTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maximumWeight > 0) {
+            builder.maximumWeight(maximumWeight);
+            this.cache = builder
+                    .weigher((String key, ResolvedUrl value) -> key.length() + value.getUrl().length())
+                    .expireAfter(new UrlExpiry())
+                    .build();
+            logger.info("Url cache limited to a weight of {}", maximumWeight);
+        } else {
+            builder.maximumSize(maximumSize);
+            this.cache = builder
+                    .expireAfter(new UrlExpiry())
+                    .build();
+            logger.info("Url cache limited to {} entries", maximumSize);
+        }
+    }
+
+    /**
+     * Get the cached URL for the key, loading it if absent
+     *
+     * @param key    the key
+     * @param loader loads the URL on a miss, may return null when there is no valid URL
+     * @return the URL or NULL
+     */
+    public ResolvedUrl get(String key, Function<String, ResolvedUrl> loader) {
+        ResolvedUrl pinnedUrl = pinned.get(key);
+        if (pinnedUrl != null) {
+            if (!pinnedUrl.isExpired()) {
+                pinnedHits.increment();
+                return pinnedUrl;
+            }
+            pinned.remove(key, pinnedUrl);
+        }
+
+        ResolvedUrl[] staleUrl = new ResolvedUrl[1];
+        ResolvedUrl resolvedUrl = cache.get(key, missingKey -> {
+            ResolvedUrl loadedUrl = loader.apply(missingKey);
+            if (isStale(missingKey, loadedUrl)) {
+                staleUrl[0] = loadedUrl;
+                return null;
+            }
+            return loadedUrl;
+        });
+        if (resolvedUrl == null) {
+            return staleUrl[0];
+        }
+        if (resolvedUrl.isExpired()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return resolvedUrl;
+    }
+
+    /**
+     * Get the cached URL for the key, without loading it
+     * <p>
+     * Note: a miss is not recorded in the cache stats, the caller is expected to load the key with
+     * {@link #get(String, Function)} which records it
+     *
+     * @param key the key
+     * @return the URL, or NULL if it is not cached
+     */
+    public ResolvedUrl getIfPresent(String key) {
+        ResolvedUrl pinnedUrl = pinned.get(key);
+        if (pinnedUrl != null && !pinnedUrl.isExpired()) {
+            pinnedHits.increment();
+            return pinnedUrl;
+        }
+
+        ResolvedUrl resolvedUrl = cache.asMap().get(key);
+        if (resolvedUrl == null || resolvedUrl.isExpired()) {
+            return null;
+        }
+        peekHits.increment();
+        return resolvedUrl;
+    }
+
+    /**
+     * Get the cached URLs for several keys, loading the absent ones together
+     *
+     * @param keys   the keys
+     * @param loader loads the URLs of the keys which missed, leaving out the keys without a valid URL
+     * @return the URLs by key, without the keys which have none
+     */
+    public Map<String, ResolvedUrl> getAll(Collection<String> keys, Function<Set<String>, Map<String, ResolvedUrl>> loader) {
+        Map<String, ResolvedUrl> resolvedUrls = new HashMap<>();
+        List<String> unpinnedKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ResolvedUrl pinnedUrl = pinned.get(key);
+            if (pinnedUrl != null && !pinnedUrl.isExpired()) {
+                pinnedHits.increment();
+                resolvedUrls.put(key, pinnedUrl);
+            } else {
+                unpinnedKeys.add(key);
+            }
+        }
+        if (unpinnedKeys.isEmpty()) {
+            return resolvedUrls;
+        }
+
+        Map<String, ResolvedUrl> cachedUrls = cache.getAllPresent(unpinnedKeys);
+        cachedUrls.forEach((key, resolvedUrl) -> {
+            if (resolvedUrl.isExpired()) {
+                cache.invalidate(key);
+            } else {
+                resolvedUrls.put(key, resolvedUrl);
+            }
+        });
+        Set<String> keysToLoad = new HashSet<>(unpinnedKeys);
+        keysToLoad.removeAll(resolvedUrls.keySet());
+        if (!keysToLoad.isEmpty()) {
+            Map<String, ResolvedUrl> loadedUrls = loader.apply(keysToLoad);
+            loadedUrls.forEach((key, loadedUrl) -> {
+                if (!isStale(key, loadedUrl)) {
+                    cache.put(key, loadedUrl);
+                }
+            });
+            resolvedUrls.putAll(loadedUrls);
+        }
+        return resolvedUrls;
+    }
+
+    /**
+     * Put an entry which is already known, like one of a snapshot, unless the cache has one for the key
+     *
+     * @param key         the key
+     * @param resolvedUrl the entry
+     */
+    public void putIfAbsent(String key, ResolvedUrl resolvedUrl) {
+        if (!resolvedUrl.isExpired() && !isStale(key, resolvedUrl)) {
+            cache.asMap().putIfAbsent(key, resolvedUrl);
+        }
+    }
+
+    /**
+     * Get the entries most likely to be looked up again, the pinned ones first and then the most frequent ones
+     *
+     * @param limit the max number of entries
+     * @return the entries by key, the hottest first
+     */
+    public Map<String, ResolvedUrl> hottest(int limit) {
+        Map<String, ResolvedUrl> hottest = new LinkedHashMap<>();
+        for (Map.Entry<String, ResolvedUrl> entry : pinned.entrySet()) {
+            if (hottest.size() >= limit) {
+                return hottest;
+            }
+            hottest.put(entry.getKey(), entry.getValue());
+        }
+        cache.policy().eviction().ifPresent(eviction -> {
+            for (Map.Entry<String, ResolvedUrl> entry : eviction.hottest(limit).entrySet()) {
+                if (hottest.size() >= limit) {
+                    break;
+                }
+                hottest.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        });
+        return hottest;
+    }
+
+    /**
+     * Invalidate the entry for the key.
+     * <p>
+     * Note: inside a transaction it is invalidated again after completion, so a concurrent lookup cannot put back
+     * the row as it was before the commit
+     *
+     * @param key the key
+     */
+    public void invalidate(String key) {
+        invalidateNow(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Invalidate the entry for the key if it is older than a row written by another node, and remember the version
+     * so an older row read later, from a lagging replica or before the write, is not kept either
+     * <p>
+     * Note: invalidations may arrive out of order, an entry at or above the version is newer than the write and kept
+     *
+     * @param key     the key
+     * @param version the version of the row written by the other node
+     * @return true if an entry was invalidated
+     */
+    public boolean invalidateOlderThan(String key, long version) {
+        invalidatedVersions.asMap().merge(key, version, Math::max);
+        boolean[] invalidated = new boolean[1];
+        cache.asMap().computeIfPresent(key, (cachedKey, cachedUrl) -> {
+            if (cachedUrl.getVersion() >= version) {
+                return cachedUrl;
+            }
+            invalidated[0] = true;
+            return null;
+        });
+        pinned.computeIfPresent(key, (pinnedKey, pinnedUrl) -> pinnedUrl.getVersion() >= version ? pinnedUrl : null);
+        return invalidated[0];
+    }
+
+    /**
+     * Check a row read for the key against the invalidations received from other nodes, before keeping a copy of it
+     * elsewhere, like in the url store
+     *
+     * @param key     the key
+     * @param version the version of the row
+     * @return true if the row is older than an invalidation received for its key
+     */
+    public boolean isInvalidated(String key, long version) {
+        Long invalidatedVersion = invalidatedVersions.getIfPresent(key);
+        return invalidatedVersion != null && version < invalidatedVersion;
+    }
+
+    /**
+     * @return true if the entry is older than an invalidation received for its key
+     */
+    private boolean isStale(String key, ResolvedUrl resolvedUrl) {
+        if (resolvedUrl == null || !isInvalidated(key, resolvedUrl.getVersion())) {
+            return false;
+        }
+        staleLoads.increment();
+        return true;
+    }
+
+    /**
+     * Pin the entry of a key, if the cache still holds it
+     * <p>
+     * Note: the check and the pin are atomic with respect to invalidations of the key, so an entry which was
+     * invalidated meanwhile is not pinned
+     *
+     * @param key         the key
+     * @param resolvedUrl the entry which was resolved for the key
+     * @return true if the entry is pinned
+     */
+    public boolean pin(String key, ResolvedUrl resolvedUrl) {
+        cache.asMap().computeIfPresent(key, (cachedKey, cachedUrl) -> {
+            if (cachedUrl == resolvedUrl) {
+                pinned.put(cachedKey, cachedUrl);
+            }
+            return cachedUrl;
+        });
+        return pinned.get(key) == resolvedUrl;
+    }
+
+    /**
+     * @param key the key
+     */
+    public void unpin(String key) {
+        pinned.remove(key);
+    }
+
+    public boolean isPinned(String key) {
+        return pinned.containsKey(key);
+    }
+
+    public Set<String> pinnedKeys() {
+        return pinned.keySet();
+    }
+
+    private void invalidateNow(String key) {
+        // the cache first, so a concurrent pin either comes before and is removed, or finds nothing to pin
+        cache.invalidate(key);
+        pinned.remove(key);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = cache.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("cache.urls.size", cache.estimatedSize()));
+        metrics.add(new Metric<>("cache.urls.hits", stats.hitCount()));
+        metrics.add(new Metric<>("cache.urls.misses", stats.missCount()));
+        metrics.add(new Metric<>("cache.urls.evictions", stats.evictionCount()));
+        metrics.add(new Metric<>("cache.urls.hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>("cache.urls.pinned", pinned.size()));
+        metrics.add(new Metric<>("cache.urls.pinned.hits", pinnedHits.sum()));
+        metrics.add(new Metric<>("cache.urls.peek.hits", peekHits.sum()));
+        metrics.add(new Metric<>("cache.urls.stale.loads", staleLoads.sum()));
+        return metrics;
+    }
+
+    /**
+     * Expires each entry at the end of its URL expiration date
+     */
+    private static class UrlExpiry implements Expiry<String, ResolvedUrl> {
+        @Override
+        public long expireAfterCreate(String key, ResolvedUrl value, long currentTime) {
+            long remaining = value.getExpiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, ResolvedUrl value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, ResolvedUrl value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
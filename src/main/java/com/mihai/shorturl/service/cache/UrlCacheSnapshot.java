@@ -0,0 +1,260 @@
+package com.mihai.shorturl.service.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.routing.ReadRouting;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import com.mihai.shorturl.service.ResolvedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically writes the hottest entries of the url cache to a local snapshot, and loads it at startup so a
+ * restarted node does not start with an empty cache.
+ * <p>
+ * Note: the snapshot is read while the context starts and expired entries are skipped; the others are checked against
+ * the database in the background once the application is ready, and only the ones which did not change meanwhile are
+ * put in the cache, so a deleted or rewritten key is never served from the snapshot
+ * Note: the health stays out of service until the check is done; if it fails, the unchecked entries are dropped
+ * Note: the snapshot is also written on shutdown, so a deploy restarts with the cache as it was
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class UrlCacheSnapshot implements HealthIndicator, PublicMetrics, ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(UrlCacheSnapshot.class);
+
+    private final UrlCache urlCache;
+    private final UrlRepository urlRepository;
+    private final ReadRouting readRouting;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path file;
+    private final int maxEntries;
+    private final int verifyBatchSize;
+    private final long warmWindowMillis;
+
+    private volatile Map<String, ResolvedUrl> unverified = new LinkedHashMap<>();
+    private volatile boolean warm;
+    private volatile long loadMillis;
+    private volatile long loadedAtMillis;
+    private volatile CacheStats statsAtLoad;
+    private volatile CacheStats statsAfterWindow;
+    private volatile long snapshotBytes;
+    private volatile long writtenEntries;
+    private volatile long writeMillis;
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    @Autowired
+    public UrlCacheSnapshot(UrlCache urlCache, UrlRepository urlRepository, ReadRouting readRouting, ShardRouting shardRouting,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${shorturl.cache.snapshot.enabled:false}") boolean enabled,
+                            @Value("${shorturl.cache.snapshot.path:urlshort-cache.snapshot}") String path,
+                            @Value("${shorturl.cache.snapshot.max-entries:100000}") int maxEntries,
+                            @Value("${shorturl.cache.snapshot.verify-batch-size:500}") int verifyBatchSize,
+                            @Value("${shorturl.cache.snapshot.warm-window-ms:300000}") long warmWindowMillis) {
+        this.urlCache = urlCache;
+        this.urlRepository = urlRepository;
+        this.readRouting = readRouting;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.file = Paths.get(path);
+        this.maxEntries = maxEntries;
+        this.verifyBatchSize = verifyBatchSize;
+        this.warmWindowMillis = warmWindowMillis;
+    }
+
+    /**
+     * Load the snapshot into the url cache, if there is one
+     */
+    @PostConstruct
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            if (enabled && Files.exists(file)) {
+                Map<String, ResolvedUrl> entries = new LinkedHashMap<>();
+                UrlSnapshotFile.read(file, (key, resolvedUrl) -> {
+                    if (resolvedUrl.isExpired()) {
+                        expired.increment();
+                        return;
+                    }
+                    entries.put(key, resolvedUrl);
+                });
+                unverified = entries;
+                loaded.add(entries.size());
+                snapshotBytes = Files.size(file);
+                loadMillis = System.currentTimeMillis() - start;
+                logger.info("Loaded {} urls from the cache snapshot in {} ms, skipped {} expired ones",
+                        entries.size(), loadMillis, expired.sum());
+            }
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            logger.warn("Could not load the cache snapshot {}, starting with an empty cache", file, e);
+        }
+        if (unverified.isEmpty()) {
+            warmed();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (unverified.isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(this::verify, "url-cache-snapshot-verifier");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check the loaded entries against the database and put the ones which did not change in the url cache
+     */
+    public void verify() {
+        List<String> keys = new ArrayList<>(unverified.keySet());
+        int checked = 0;
+        try {
+            for (; checked < keys.size(); checked += verifyBatchSize) {
+                List<String> batch = keys.subList(checked, Math.min(checked + verifyBatchSize, keys.size()));
+                Map<String, UrlEntity> rows = new HashMap<>();
+                for (List<UrlEntity> shardRows : shardRouting.fanOut(shard -> readRouting.onPrimary(() ->
+                        transactionTemplate.execute(status -> urlRepository.findByKeyIn(batch))))) {
+                    shardRows.forEach(row -> rows.put(row.getKey(), row));
+                }
+                for (String key : batch) {
+                    ResolvedUrl resolvedUrl = unverified.get(key);
+                    if (matches(resolvedUrl, rows.get(key))) {
+                        urlCache.putIfAbsent(key, resolvedUrl);
+                        verified.increment();
+                    } else {
+                        invalidated.increment();
+                    }
+                }
+            }
+            logger.info("Checked the urls of the cache snapshot, {} changed since it was written", invalidated.sum());
+        } catch (DataAccessException e) {
+            failures.increment();
+            logger.warn("Checking the urls of the cache snapshot failed, dropping the unchecked ones", e);
+            invalidated.add(keys.size() - checked);
+        } finally {
+            unverified = new LinkedHashMap<>();
+            warmed();
+        }
+    }
+
+    private void warmed() {
+        statsAtLoad = urlCache.stats();
+        loadedAtMillis = System.currentTimeMillis();
+        warm = true;
+    }
+
+    private static boolean matches(ResolvedUrl resolvedUrl, UrlEntity row) {
+        return row != null
+                && row.getUrl().equals(resolvedUrl.getUrl())
+                && row.getExpiresAtMillis() == resolvedUrl.getExpiresAtMillis()
+                && row.getVersion() == resolvedUrl.getVersion();
+    }
+
+    /**
+     * Write the hottest entries of the url cache to the snapshot
+     */
+    @Scheduled(initialDelayString = "${shorturl.cache.snapshot.interval-ms:300000}",
+            fixedDelayString = "${shorturl.cache.snapshot.interval-ms:300000}")
+    @PreDestroy
+    public void write() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, ResolvedUrl> entries = urlCache.hottest(maxEntries);
+            snapshotBytes = UrlSnapshotFile.write(file, entries);
+            writtenEntries = entries.size();
+            writeMillis = System.currentTimeMillis() - start;
+            logger.debug("Wrote {} urls to the cache snapshot, {} bytes in {} ms", writtenEntries, snapshotBytes, writeMillis);
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            logger.warn("Could not write the cache snapshot {}", file, e);
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = warm ? Health.up() : Health.outOfService();
+        if (enabled) {
+            health.withDetail("loaded", loaded.sum())
+                    .withDetail("unverified", unverified.size());
+        }
+        return health.build();
+    }
+
+    /**
+     * @return the url cache statistics since the snapshot was loaded, up to the end of the warm window
+     */
+    private CacheStats warmStats() {
+        CacheStats atLoad = statsAtLoad;
+        if (atLoad == null) {
+            return CacheStats.empty();
+        }
+        if (statsAfterWindow == null && System.currentTimeMillis() - loadedAtMillis >= warmWindowMillis) {
+            statsAfterWindow = urlCache.stats();
+        }
+        return (statsAfterWindow != null ? statsAfterWindow : urlCache.stats()).minus(atLoad);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        CacheStats stats = warmStats();
+        metrics.add(new Metric<>("cache.snapshot.bytes", snapshotBytes));
+        metrics.add(new Metric<>("cache.snapshot.written", writtenEntries));
+        metrics.add(new Metric<>("cache.snapshot.write.ms", writeMillis));
+        metrics.add(new Metric<>("cache.snapshot.loaded", loaded.sum()));
+        metrics.add(new Metric<>("cache.snapshot.load.ms", loadMillis));
+        metrics.add(new Metric<>("cache.snapshot.expired", expired.sum()));
+        metrics.add(new Metric<>("cache.snapshot.verified", verified.sum()));
+        metrics.add(new Metric<>("cache.snapshot.invalidated", invalidated.sum()));
+        metrics.add(new Metric<>("cache.snapshot.failures", failures.sum()));
+        metrics.add(new Metric<>("cache.snapshot.warm.hits", stats.hitCount()));
+        metrics.add(new Metric<>("cache.snapshot.warm.misses", stats.missCount()));
+        metrics.add(new Metric<>("cache.snapshot.warm.hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+}
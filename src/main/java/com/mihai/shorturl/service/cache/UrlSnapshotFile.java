@@ -0,0 +1,128 @@
+package com.mihai.shorturl.service.cache;
+
+import com.mihai.shorturl.service.ResolvedUrl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file of key to URL and expiration date entries, see {@link UrlCacheSnapshot}.
+ * <p>
+ * Note: the layout is a header [magic][version][created millis][count], the entries [key length (2)][key]
+ * [url length (4)][url][expiration epoch day (8)][expires at epoch millis (8)][version (8)] and a CRC32 of
+ * everything before it
+ * Note: the file is written next to the target and moved over it, so a crash never leaves a partial snapshot
+ * Note: it is read through a memory mapping, in one pass without copying the file to the heap
+ *
+ * @author Mihai Iusan
+ */
+final class UrlSnapshotFile {
+    private static final int MAGIC = 0x55534E50;
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    private UrlSnapshotFile() {
+    }
+
+    /**
+     * @param file    the snapshot file
+     * @param entries the entries by key
+     * @return the size of the file
+     * @throws IOException if the file cannot be written
+     */
+    static long write(Path file, Map<String, ResolvedUrl> entries) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = (int) entries.keySet().stream()
+                .filter(key -> key.getBytes(StandardCharsets.UTF_8).length <= MAX_KEY_BYTES)
+                .count();
+        try (FileOutputStream fileOutput = new FileOutputStream(temporary.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(fileOutput);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream output = new DataOutputStream(checked);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeInt(count);
+            for (Map.Entry<String, ResolvedUrl> entry : entries.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                if (key.length > MAX_KEY_BYTES) {
+                    continue;
+                }
+                byte[] url = entry.getValue().getUrl().getBytes(StandardCharsets.UTF_8);
+                output.writeShort(key.length);
+                output.write(key);
+                output.writeInt(url.length);
+                output.write(url);
+                output.writeLong(entry.getValue().getExpirationDate().toEpochDay());
+                output.writeLong(entry.getValue().getExpiresAtMillis());
+                output.writeLong(entry.getValue().getVersion());
+            }
+            output.flush();
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    /**
+     * @param file     the snapshot file
+     * @param consumer receives each entry, expired ones included
+     * @return the number of entries
+     * @throws IOException if the file cannot be read, or it is not a complete snapshot
+     */
+    static int read(Path file, BiConsumer<String, ResolvedUrl> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a url snapshot: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int checksumPosition = (int) size - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.limit(checksumPosition);
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(checksumPosition)) {
+                throw new IOException("Corrupt url snapshot: " + file);
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported url snapshot: " + file);
+            }
+            buffer.getLong();
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buffer, buffer.getShort() & 0xFFFF);
+                String url = readString(buffer, buffer.getInt());
+                LocalDate expirationDate = LocalDate.ofEpochDay(buffer.getLong());
+                long expiresAtMillis = buffer.getLong();
+                consumer.accept(key, new ResolvedUrl(url, expirationDate, expiresAtMillis, buffer.getLong()));
+            }
+            return count;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -3,10 +3,12 @@ package com.mihai.shorturl.service.impl;
 import com.mihai.shorturl.service.KeyService;
 import com.mihai.shorturl.service.SupportedProtocol;
 import com.mihai.shorturl.service.exception.InvalidURLException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 @Service
+@ConditionalOnProperty(name = "shorturl.key.generator", havingValue = "hash")
 public class Base36HashService implements KeyService {
     private static final int RADIX = 36;
     private static final String PIPE = "-";
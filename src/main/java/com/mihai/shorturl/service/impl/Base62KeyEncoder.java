@@ -0,0 +1,92 @@
+package com.mihai.shorturl.service.impl;
+
+/**
+ * Encodes numeric ids as base62 keys.
+ * <p>
+ * Note: every key is at least minLength characters long and is zero padded
+ * Note: with obfuscation the id is mapped through a bijection of all the keys of the same length, so consecutive
+ * ids do not give consecutive keys but two different ids still never give the same key
+ *
+ * @author Mihai Iusan
+ */
+public class Base62KeyEncoder {
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final int RADIX = ALPHABET.length;
+    // The longest key length whose whole key space still fits in a long
+    private static final int MAX_OBFUSCATED_LENGTH = 10;
+    // Both must not be divisible by 2 or 31 so they are invertible modulo any power of 62
+    private static final long MULTIPLIER = 0x2545F4914F6CDD1DL;
+    private static final long INCREMENT = 0x5DEECE66DL;
+
+    private final int minLength;
+    private final boolean obfuscate;
+    private final long[] spaces;
+
+    public Base62KeyEncoder(int minLength, boolean obfuscate) {
+        if (minLength < 1 || (obfuscate && minLength > MAX_OBFUSCATED_LENGTH)) {
+            throw new IllegalArgumentException("Unsupported key length: " + minLength);
+        }
+        this.minLength = minLength;
+        this.obfuscate = obfuscate;
+        this.spaces = new long[MAX_OBFUSCATED_LENGTH + 1];
+        long space = 1;
+        for (int length = 0; length <= MAX_OBFUSCATED_LENGTH; length++) {
+            this.spaces[length] = space;
+            space *= RADIX;
+        }
+    }
+
+    /**
+     * Encode the id
+     *
+     * @param id the id, not negative
+     * @return the key
+     */
+    public String encode(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Cannot encode negative id: " + id);
+        }
+
+        int length = Math.max(minLength, digits(id));
+        long value = id;
+        if (obfuscate) {
+            if (length > MAX_OBFUSCATED_LENGTH) {
+                throw new IllegalArgumentException("Id too large to obfuscate: " + id);
+            }
+            long space = spaces[length];
+            value = (mulMod(value, MULTIPLIER % space, space) + INCREMENT % space) % space;
+        }
+
+        char[] key = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            key[i] = ALPHABET[(int) (value % RADIX)];
+            value /= RADIX;
+        }
+        return new String(key);
+    }
+
+    private static int digits(long id) {
+        int digits = 1;
+        while (id >= RADIX) {
+            id /= RADIX;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * (a * b) mod m without overflowing, for a, b smaller than m and m smaller than 2^62
+     */
+    private static long mulMod(long a, long b, long m) {
+        long result = 0;
+        a %= m;
+        while (b > 0) {
+            if ((b & 1) == 1) {
+                result = (result + a) % m;
+            }
+            a = (a << 1) % m;
+            b >>= 1;
+        }
+        return result;
+    }
+}
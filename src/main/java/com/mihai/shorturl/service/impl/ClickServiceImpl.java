@@ -0,0 +1,226 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.ClickStatEntity;
+import com.mihai.shorturl.repository.ClickStatRepository;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import com.mihai.shorturl.service.ClickService;
+import com.mihai.shorturl.service.ClickStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the redirects of each key in memory and periodically adds them to the click statistics in the database.
+ * <p>
+ * Note: recording a click of a key which is already counted is a map lookup and a LongAdder increment, so it does not
+ * allocate or block
+ * Note: at most maxKeys keys are counted between two flushes, the clicks of other keys are dropped and counted
+ * Note: the clicks of a flush go to the bucket in which the flush happens
+ * Note: a flush takes the clicks of a counter by subtracting what it read, so clicks racing the flush are left for the
+ * next one; a counter is removed after two flushes without clicks and read once more by the next flush, for the
+ * threads which still held it
+ * Note: the clicks of a key are cleared once the delete of its url or the reuse of its row for another url commits;
+ * the counters are dropped under the flush lock, so clicks read before are not written after, and the flushed clicks
+ * are then deleted in a transaction of their own, outside the lock
+ *
+ * @author Mihai Iusan
+ */
+@Service
+public class ClickServiceImpl implements ClickService, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(ClickServiceImpl.class);
+    private static final int IDLE_FLUSHES = 2;
+
+    private final ClickStatRepository clickStatRepository;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    // counters removed by the last flush, only used under the flush lock
+    private final Map<String, Counter> retired = new HashMap<>();
+    private final Object flushLock = new Object();
+    private final int maxKeys;
+    private final long bucketSeconds;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private volatile long lastFlushMillis = System.currentTimeMillis();
+
+    @Autowired
+    public ClickServiceImpl(ClickStatRepository clickStatRepository, ShardRouting shardRouting,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${shorturl.clicks.max-keys:100000}") int maxKeys,
+                            @Value("${shorturl.clicks.bucket-seconds:3600}") long bucketSeconds) {
+        this.clickStatRepository = clickStatRepository;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxKeys = maxKeys;
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    /**
+     * Count a redirect of the key
+     *
+     * @param key the key
+     */
+    @Override
+    public void recordClick(String key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxKeys) {
+                dropped.increment();
+                return;
+            }
+            counter = counters.computeIfAbsent(key, newKey -> new Counter());
+        }
+        counter.clicks.increment();
+    }
+
+    /**
+     * Get the click statistics of the key
+     *
+     * @param key the key
+     * @return the total and the clicks per bucket
+     */
+    @Override
+    public ClickStats getClickStats(String key) {
+        List<ClickStats.Bucket> buckets = new ArrayList<>();
+        long total = 0;
+        for (ClickStatEntity clickStat : clickStatRepository.findByKeyOrderByBucketStartAsc(key)) {
+            buckets.add(new ClickStats.Bucket(Instant.ofEpochSecond(clickStat.getBucketStart()), clickStat.getClicks()));
+            total += clickStat.getClicks();
+        }
+
+        Counter pending = counters.get(key);
+        if (pending != null) {
+            total += pending.clicks.sum();
+        }
+        return new ClickStats(key, total, buckets);
+    }
+
+    /**
+     * Write the clicks counted since the last flush to the database in one batch
+     * <p>
+     * Note: keys without new clicks are removed from memory; if the write fails, the clicks are counted again
+     */
+    @Scheduled(fixedDelayString = "${shorturl.clicks.flush-interval-ms:5000}")
+    @PreDestroy
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Long> clicks = new HashMap<>();
+            retired.forEach((key, counter) -> addClicks(clicks, key, takeClicks(counter)));
+            retired.clear();
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                Counter counter = entry.getValue();
+                long delta = takeClicks(counter);
+                if (delta > 0) {
+                    counter.idleFlushes = 0;
+                    addClicks(clicks, entry.getKey(), delta);
+                } else if (++counter.idleFlushes >= IDLE_FLUSHES && counters.remove(entry.getKey(), counter)) {
+                    retired.put(entry.getKey(), counter);
+                }
+            }
+
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            long bucketStart = nowSeconds - nowSeconds % bucketSeconds;
+            try {
+                if (!clicks.isEmpty()) {
+                    clickStatRepository.addClicks(clicks, bucketStart);
+                }
+                flushed.add(clicks.values().stream().mapToLong(Long::longValue).sum());
+                lastFlushMillis = System.currentTimeMillis();
+                logger.debug("Flushed the clicks of {} keys", clicks.size());
+            } catch (DataAccessException e) {
+                flushFailures.increment();
+                clicks.forEach((key, delta) -> counters.computeIfAbsent(key, newKey -> new Counter()).clicks.add(delta));
+                logger.warn("Could not flush the clicks of {} keys, keeping them for the next flush", clicks.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Drop the clicks of the key, counted and flushed, once the current transaction commits, like the reuse of a row
+     * for another url, or right away without one
+     * <p>
+     * Note: the flushed clicks are deleted in their own transaction on the home shard, where the clicks are flushed
+     *
+     * @param key the key
+     */
+    @Override
+    public void clearClicks(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    clear(key);
+                }
+            });
+        } else {
+            clear(key);
+        }
+    }
+
+    private void clear(String key) {
+        synchronized (flushLock) {
+            counters.remove(key);
+            retired.remove(key);
+        }
+        shardRouting.onShard(ShardRouting.HOME_SHARD, () -> transactionTemplate.execute(status -> {
+            clickStatRepository.deleteClicks(key);
+            return null;
+        }));
+    }
+
+    /**
+     * Take the clicks of a counter without losing the ones recorded meanwhile, unlike {@link LongAdder#sumThenReset()}
+     */
+    private static long takeClicks(Counter counter) {
+        long clicks = counter.clicks.sum();
+        counter.clicks.add(-clicks);
+        return clicks;
+    }
+
+    private static void addClicks(Map<String, Long> clicks, String key, long delta) {
+        if (delta > 0) {
+            clicks.merge(key, delta, Long::sum);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("clicks.pending.keys", counters.size()));
+        metrics.add(new Metric<>("clicks.flushed", flushed.sum()));
+        metrics.add(new Metric<>("clicks.dropped", dropped.sum()));
+        metrics.add(new Metric<>("clicks.flush.failures", flushFailures.sum()));
+        metrics.add(new Metric<>("clicks.flush.lag.ms", System.currentTimeMillis() - lastFlushMillis));
+        return metrics;
+    }
+
+    private static final class Counter {
+        private final LongAdder clicks = new LongAdder();
+        // flushes in a row which found no clicks, only used under the flush lock
+        private int idleFlushes;
+    }
+}
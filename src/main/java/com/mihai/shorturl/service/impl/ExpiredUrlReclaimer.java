@@ -0,0 +1,186 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Finds expired rows in the background and keeps their ids in a bounded queue, so new urls can reuse them without
+ * searching for them.
+ * <p>
+ * Note: the scan goes through the expiration date index in batches ordered by id
+ * Note: once the queue is full, the remaining expired rows are deleted in bulk
+ * Note: a queued row can be extended before it is reused, so callers must check it is still expired
+ * Note: with several shards, the shards are scanned in parallel and all the expired rows are deleted, since an id
+ * does not tell the shard of its row
+ * Note: the rows of the keys which expire while the node runs are handed over by {@link UrlExpiryTracker} as they
+ * expire, so the scan only finds the ones which expired before
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class ExpiredUrlReclaimer implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(ExpiredUrlReclaimer.class);
+
+    private final UrlRepository urlRepository;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Long> reusableIds;
+    private final Set<Long> queuedIds = ConcurrentHashMap.newKeySet();
+    private final int batchSize;
+
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    @Autowired
+    public ExpiredUrlReclaimer(UrlRepository urlRepository, ShardRouting shardRouting, PlatformTransactionManager transactionManager,
+                               @Value("${shorturl.reclaim.queue-size:10000}") int queueSize,
+                               @Value("${shorturl.reclaim.batch-size:1000}") int batchSize) {
+        this.urlRepository = urlRepository;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reusableIds = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Take the id of an expired row to reuse
+     *
+     * @return the id or NULL if there is none queued
+     */
+    public Long poll() {
+        Long id = reusableIds.poll();
+        if (id != null) {
+            queuedIds.remove(id);
+            reused.increment();
+        }
+        return id;
+    }
+
+    /**
+     * Scan the expired rows, queue their ids and delete the ones which do not fit in the queue
+     */
+    @Scheduled(initialDelayString = "${shorturl.reclaim.initial-delay-ms:10000}",
+            fixedDelayString = "${shorturl.reclaim.interval-ms:60000}")
+    public void reclaim() {
+        LocalDate today = LocalDate.now();
+        shardRouting.fanOut(shard -> reclaim(today));
+    }
+
+    private Void reclaim(LocalDate today) {
+        long now = System.currentTimeMillis();
+        long afterId = 0;
+        int queued = 0;
+        long purgedBefore = purged.sum();
+        try {
+            List<Long> expiredIds;
+            do {
+                long scanFrom = afterId;
+                expiredIds = transactionTemplate.execute(status ->
+                        urlRepository.findIdsByExpirationDateBefore(today, scanFrom, new PageRequest(0, batchSize)));
+                queued += queueOrDelete(expiredIds, today, now);
+                if (!expiredIds.isEmpty()) {
+                    afterId = expiredIds.get(expiredIds.size() - 1);
+                }
+            } while (expiredIds.size() == batchSize);
+        } catch (DataAccessException e) {
+            logger.warn("Reclaiming expired urls failed, retrying on the next run", e);
+        }
+
+        logger.debug("Queued {} expired urls for reuse and deleted {}, {} queued in total", queued,
+                purged.sum() - purgedBefore, reusableIds.size());
+        return null;
+    }
+
+    /**
+     * Queue or delete the rows of keys which just expired
+     * <p>
+     * Note: only the rows which are still expired are taken, the key may have been extended meanwhile
+     * Note: the rows are looked up through the key index, on the shard of each key
+     *
+     * @param keys the expired keys
+     */
+    public void reclaimKeys(Collection<String> keys) {
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        Map<Integer, List<String>> keysByShard = keys.stream().collect(Collectors.groupingBy(shardRouting::shardOfKey));
+        keysByShard.forEach((shard, shardKeys) -> shardRouting.onShard(shard, () -> {
+            try {
+                List<Long> expiredIds = transactionTemplate.execute(status ->
+                        urlRepository.findExpiredIdsByKeyIn(shardKeys, today, now));
+                queueOrDelete(expiredIds, today, now);
+            } catch (DataAccessException e) {
+                logger.warn("Reclaiming {} expired urls failed, the scan picks them up later", shardKeys.size(), e);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Queue the ids of expired rows for reuse while there is room, delete the others
+     * <p>
+     * Note: the scan and the expiry hand-over can run at the same time, an id is in the queue at most once and an id
+     * which did not fit is deleted, never left marked as queued
+     *
+     * @return the number of queued ids
+     */
+    private int queueOrDelete(List<Long> expiredIds, LocalDate today, long now) {
+        boolean reuse = !shardRouting.isEnabled();
+        int queued = 0;
+        List<Long> idsToDelete = new ArrayList<>();
+        for (Long id : expiredIds) {
+            if (queuedIds.contains(id)) {
+                continue;
+            }
+            if (reuse && reusableIds.remainingCapacity() > 0) {
+                if (!queuedIds.add(id)) {
+                    // queued by a concurrent run
+                    continue;
+                }
+                if (reusableIds.offer(id)) {
+                    queued++;
+                    continue;
+                }
+                // a concurrent run filled the queue since the capacity check
+                queuedIds.remove(id);
+            }
+            idsToDelete.add(id);
+        }
+        if (!idsToDelete.isEmpty()) {
+            purged.add(transactionTemplate.execute(status -> urlRepository.deleteExpiredByIdIn(idsToDelete, today, now)));
+        }
+        return queued;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("reclaim.queued", reusableIds.size()));
+        metrics.add(new Metric<>("reclaim.reused", reused.sum()));
+        metrics.add(new Metric<>("reclaim.purged", purged.sum()));
+        return metrics;
+    }
+}
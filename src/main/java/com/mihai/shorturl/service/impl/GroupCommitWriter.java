@@ -0,0 +1,226 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Queues url creates and hands them to a single writer thread in micro-batches, so that one transaction and one
+ * commit serve many concurrent creates.
+ * <p>
+ * Note: a batch is written once it has maxBatchSize creates or maxWaitMillis passed since its first create; with a
+ * max wait of 0 it takes only what is already queued
+ * Note: when the queue is full, creates are rejected instead of waiting
+ * Note: every queued create is completed, creates still queued when the writer stops fail with a 503
+ * Note: disabled by default, creates then run in their own transaction
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class GroupCommitWriter implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final BlockingQueue<PendingCreate> queue;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Object submitLock = new Object();
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public GroupCommitWriter(@Value("${shorturl.create.group-commit.enabled:false}") boolean enabled,
+                             @Value("${shorturl.create.group-commit.queue-size:10000}") int queueSize,
+                             @Value("${shorturl.create.group-commit.max-batch-size:100}") int maxBatchSize,
+                             @Value("${shorturl.create.group-commit.max-wait-ms:0}") long maxWaitMillis) {
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * @return true if creates should go through the writer
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start the writer thread
+     *
+     * @param batchWriter writes a batch in one transaction and completes the result of each create in it
+     */
+    public synchronized void start(Consumer<List<PendingCreate>> batchWriter) {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(() -> run(batchWriter), "group-commit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue the create of an url
+     *
+     * @param url the verified, normalized url
+     * @return the entry, once its batch is committed
+     * @throws ServiceOverloadedException if the queue is full or the writer stopped
+     */
+    public CompletableFuture<UrlEntity> submit(String url) {
+        PendingCreate pending = new PendingCreate(url);
+        // under the lock of stop, so nothing is queued once the writer drained the queue for the last time
+        synchronized (submitLock) {
+            if (running && queue.offer(pending)) {
+                return pending.result;
+            }
+        }
+        rejected.increment();
+        throw new ServiceOverloadedException("Too many pending creates, try again later");
+    }
+
+    /**
+     * Stop accepting creates and write the queued ones
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+        stop();
+        try {
+            writerThread.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued("The service is shutting down");
+    }
+
+    private void stop() {
+        synchronized (submitLock) {
+            running = false;
+        }
+    }
+
+    private void failQueued(String message) {
+        for (PendingCreate pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.fail(new ServiceOverloadedException(message));
+        }
+    }
+
+    private void run(Consumer<List<PendingCreate>> batchWriter) {
+        List<PendingCreate> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCreate first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                write(batchWriter, batch);
+            } catch (InterruptedException e) {
+                logger.warn("Group commit writer interrupted, failing {} creates", batch.size() + queue.size());
+                stop();
+                for (PendingCreate pending : batch) {
+                    pending.fail(new ServiceOverloadedException("The create was not written, try again later"));
+                }
+                failQueued("The create was not written, try again later");
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<PendingCreate> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            // take what is already queued before waiting for more
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return;
+            }
+            PendingCreate next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(Consumer<List<PendingCreate>> batchWriter, List<PendingCreate> batch) {
+        try {
+            batchWriter.accept(batch);
+        } catch (RuntimeException | Error e) {
+            logger.error("Group commit of {} creates failed", batch.size(), e);
+            for (PendingCreate pending : batch) {
+                pending.fail(e);
+            }
+        }
+        batches.increment();
+        writes.add(batch.size());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("group.commit.queued", queue.size()));
+        metrics.add(new Metric<>("group.commit.batches", batches.sum()));
+        metrics.add(new Metric<>("group.commit.writes", writes.sum()));
+        metrics.add(new Metric<>("group.commit.rejected", rejected.sum()));
+        return metrics;
+    }
+
+    /**
+     * A queued create and the future of its result.
+     */
+    public static final class PendingCreate {
+        private final String url;
+        private final CompletableFuture<UrlEntity> result = new CompletableFuture<>();
+
+        PendingCreate(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void complete(UrlEntity urlEntity) {
+            result.complete(urlEntity);
+        }
+
+        public void fail(Throwable error) {
+            result.completeExceptionally(error);
+        }
+    }
+}
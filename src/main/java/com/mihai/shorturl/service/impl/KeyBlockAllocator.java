@@ -0,0 +1,60 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.KeySequenceEntity;
+import com.mihai.shorturl.repository.KeySequenceRepository;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reserves blocks of ids from a persistent sequence (hi/lo).
+ * <p>
+ * Note: every reservation runs in its own transaction, so a block is never handed out twice even if the
+ * surrounding create is rolled back
+ * Note: the sequences are kept on the home shard, whatever shard the surrounding work runs on
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class KeyBlockAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(KeyBlockAllocator.class);
+    private static final long INITIAL_VALUE = 1;
+
+    private final KeySequenceRepository sequenceRepository;
+    private final ShardRouting shardRouting;
+
+    @Autowired
+    public KeyBlockAllocator(KeySequenceRepository sequenceRepository, ShardRouting shardRouting) {
+        this.sequenceRepository = sequenceRepository;
+        this.shardRouting = shardRouting;
+    }
+
+    /**
+     * Reserve the next block of ids of the sequence
+     *
+     * @param name      the sequence name
+     * @param blockSize the number of ids to reserve
+     * @return the first id of the block, the block ends before first + blockSize
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long allocate(String name, int blockSize) {
+        // the connection is opened by the first statement, so it comes from the home shard
+        return shardRouting.onShard(ShardRouting.HOME_SHARD, () -> {
+            KeySequenceEntity sequence = sequenceRepository.findByName(name);
+            if (sequence == null) {
+                sequence = new KeySequenceEntity(name, INITIAL_VALUE);
+            }
+
+            long first = sequence.getNextValue();
+            sequence.setNextValue(first + blockSize);
+            sequenceRepository.save(sequence);
+
+            logger.debug("Reserved ids [{}, {}) from sequence {}", first, first + blockSize, name);
+            return first;
+        });
+    }
+}
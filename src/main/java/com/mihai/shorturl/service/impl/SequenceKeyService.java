@@ -0,0 +1,96 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.service.KeyService;
+import com.mihai.shorturl.service.exception.UrlNotSavedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Key service which hands out unique keys from blocks of a persistent sequence.
+ * <p>
+ * Note: keys never collide, so they do not have to be checked against the database
+ * Note: the default minimum length of 7 keeps the keys apart from the ones of {@link Base36HashService}, which are
+ * at most 6 characters long
+ *
+ * @author Mihai Iusan
+ */
+@Service
+@ConditionalOnProperty(name = "shorturl.key.generator", havingValue = "sequence", matchIfMissing = true)
+public class SequenceKeyService implements KeyService {
+    private static final Logger logger = LoggerFactory.getLogger(SequenceKeyService.class);
+    private static final String SEQUENCE_NAME = "url_keys";
+    private static final int MAX_ALLOCATION_TRIES = 3;
+
+    private final KeyBlockAllocator allocator;
+    private final Base62KeyEncoder encoder;
+    private final int blockSize;
+    private volatile Block block = new Block(0, 0);
+
+    @Autowired
+    public SequenceKeyService(KeyBlockAllocator allocator,
+                              @Value("${shorturl.key.block-size:1000}") int blockSize,
+                              @Value("${shorturl.key.min-length:7}") int minLength,
+                              @Value("${shorturl.key.obfuscate:true}") boolean obfuscate) {
+        this.allocator = allocator;
+        this.blockSize = blockSize;
+        this.encoder = new Base62KeyEncoder(minLength, obfuscate);
+    }
+
+    @Override
+    public String shorten(String url) {
+        return encoder.encode(nextId());
+    }
+
+    @Override
+    public boolean isCollisionFree() {
+        return true;
+    }
+
+    private long nextId() {
+        while (true) {
+            Block current = block;
+            long id = current.next.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserveBlock();
+                }
+            }
+        }
+    }
+
+    private Block reserveBlock() {
+        for (int tries = 1; ; tries++) {
+            try {
+                long first = allocator.allocate(SEQUENCE_NAME, blockSize);
+                return new Block(first, first + blockSize);
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                // another node reserved a block or created the sequence at the same time
+                logger.debug("Could not reserve a key block, try {} of {}", tries, MAX_ALLOCATION_TRIES, e);
+                if (tries >= MAX_ALLOCATION_TRIES) {
+                    throw new UrlNotSavedException("Could not reserve keys", e);
+                }
+            }
+        }
+    }
+
+    private static class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long first, long end) {
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+    }
+}
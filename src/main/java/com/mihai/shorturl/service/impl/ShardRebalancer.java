@@ -0,0 +1,362 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.entity.UrlKeyMappingEntity;
+import com.mihai.shorturl.repository.UrlKeyMappingRepository;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.UrlStore;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import com.mihai.shorturl.service.cache.KeyFilter;
+import com.mihai.shorturl.service.cache.UrlCache;
+import com.mihai.shorturl.service.invalidation.UrlInvalidations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the rows and url mappings which are not on their shard after the number of shards changed.
+ * <p>
+ * Note: it runs in the background once the application is ready, if shorturl.shards.reshard is set; lookups which
+ * miss on the shard of their key look on the other shards meanwhile
+ * Note: a row is inserted on its new shard before it is deleted from the old one, in batches of one transaction per
+ * shard; if it stops, running it again picks up where it stopped
+ * Note: the delete only takes rows whose version did not change since they were copied, the others are read and
+ * copied again, up to a few times per batch
+ * Note: when the new shard already holds the url under another key, the row is merged into that one instead: the
+ * kept row expires at the later of the two, and the moved key is deleted like {@link UrlServiceImpl#deleteByKey}
+ * Note: it also creates the missing mappings of the rows, so it can be used to fill them in for existing rows
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class ShardRebalancer implements ApplicationListener<ApplicationReadyEvent>, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final int MAX_MOVE_ATTEMPTS = 3;
+
+    private final UrlRepository urlRepository;
+    private final UrlKeyMappingRepository urlKeyMappingRepository;
+    private final ShardRouting shardRouting;
+    private final UrlCache urlCache;
+    private final KeyFilter keyFilter;
+    private final UrlExpiryTracker expiryTracker;
+    private final UrlInvalidations invalidations;
+    private final UrlStore urlStore;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final boolean reshard;
+    private final int batchSize;
+
+    private final LongAdder movedRows = new LongAdder();
+    private final LongAdder mergedRows = new LongAdder();
+    private final LongAdder createdMappings = new LongAdder();
+    private final LongAdder droppedMappings = new LongAdder();
+    private volatile boolean running;
+    private volatile boolean complete;
+
+    @Autowired
+    public ShardRebalancer(UrlRepository urlRepository, UrlKeyMappingRepository urlKeyMappingRepository,
+                           ShardRouting shardRouting, UrlCache urlCache, KeyFilter keyFilter,
+                           UrlExpiryTracker expiryTracker, UrlInvalidations invalidations, ObjectProvider<UrlStore> urlStore,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${shorturl.shards.reshard:false}") boolean reshard,
+                           @Value("${shorturl.shards.reshard-batch-size:500}") int batchSize) {
+        this.urlRepository = urlRepository;
+        this.urlKeyMappingRepository = urlKeyMappingRepository;
+        this.shardRouting = shardRouting;
+        this.urlCache = urlCache;
+        this.keyFilter = keyFilter;
+        this.expiryTracker = expiryTracker;
+        this.invalidations = invalidations;
+        this.urlStore = urlStore.getIfAvailable();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.reshard = reshard;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!reshard || !shardRouting.isEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(this::rebalance, "shard-rebalancer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Move the misplaced rows, then create the missing mappings and drop the misplaced ones
+     */
+    public void rebalance() {
+        running = true;
+        long start = System.currentTimeMillis();
+        try {
+            for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+                moveRows(shard);
+            }
+            for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+                createMappings(shard);
+            }
+            for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+                dropMappings(shard);
+            }
+            complete = true;
+            logger.info("Rebalanced {} shards in {} ms, moved {} rows, merged {}, created {} mappings and dropped {}",
+                    shardRouting.getShardCount(), System.currentTimeMillis() - start, movedRows.sum(), mergedRows.sum(),
+                    createdMappings.sum(), droppedMappings.sum());
+        } catch (DataAccessException e) {
+            logger.warn("Rebalancing the shards stopped after moving {} rows, run it again to resume", movedRows.sum(), e);
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * @return true once a run went through all the shards
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private void moveRows(int source) {
+        long afterId = 0;
+        List<UrlEntity> urls;
+        do {
+            urls = scanRows(source, afterId);
+            Map<Integer, List<UrlEntity>> misplacedUrls = urls.stream()
+                    .filter(url -> shardRouting.shardOfKey(url.getKey()) != source)
+                    .collect(Collectors.groupingBy(url -> shardRouting.shardOfKey(url.getKey())));
+            misplacedUrls.forEach((target, targetUrls) -> moveRows(source, target, targetUrls));
+            if (!urls.isEmpty()) {
+                afterId = urls.get(urls.size() - 1).getId();
+            }
+        } while (urls.size() == batchSize);
+    }
+
+    private void moveRows(int source, int target, List<UrlEntity> urls) {
+        List<UrlEntity> pending = urls;
+        for (int attempt = 0; attempt < MAX_MOVE_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            List<UrlEntity> urlsToMove = pending;
+            List<UrlEntity> extendedUrls = new ArrayList<>();
+            Set<String> mergedKeys = shardRouting.onShard(target, () -> transactionTemplate.execute(status ->
+                    copyRows(urlsToMove, extendedUrls)));
+            extendedUrls.forEach(this::onRowWritten);
+
+            // a row written or deleted since it was read is kept, its copy is brought up to date below
+            boolean[] deleted = shardRouting.onShard(source, () -> transactionTemplate.execute(status ->
+                    urlRepository.deleteUnchanged(urlsToMove)));
+            List<UrlEntity> changedUrls = new ArrayList<>();
+            for (int i = 0; i < urlsToMove.size(); i++) {
+                UrlEntity url = urlsToMove.get(i);
+                if (!deleted[i]) {
+                    changedUrls.add(url);
+                } else if (mergedKeys.contains(url.getKey())) {
+                    mergedRows.increment();
+                    onRowDeleted(url);
+                } else {
+                    movedRows.increment();
+                }
+            }
+            pending = changedUrls.isEmpty() ? Collections.emptyList() : rereadRows(source, target, changedUrls);
+        }
+        if (!pending.isEmpty()) {
+            logger.warn("{} rows of shard {} kept changing while they were moved to shard {}, the next run moves them",
+                    pending.size(), source, target);
+        }
+        logger.debug("Moved {} rows from shard {} to shard {}", urls.size() - pending.size(), source, target);
+    }
+
+    /**
+     * Copy the rows on the shard of the transaction, their url mappings are created later
+     *
+     * @param urls         the rows to copy
+     * @param extendedUrls receives the rows of the shard whose expiration was extended by a merged row
+     * @return the keys of the rows which were merged into a row with the same url instead of being copied
+     */
+    private Set<String> copyRows(List<UrlEntity> urls, List<UrlEntity> extendedUrls) {
+        List<String> keys = urls.stream().map(UrlEntity::getKey).collect(Collectors.toList());
+        // a run which stopped between the insert and the delete already copied some of them, maybe before a write
+        Map<String, UrlEntity> copies = urlRepository.findByKeyIn(keys).stream()
+                .collect(Collectors.toMap(UrlEntity::getKey, Function.identity()));
+        List<Long> staleCopyIds = new ArrayList<>();
+        List<UrlEntity> urlsToCopy = new ArrayList<>();
+        for (UrlEntity url : urls) {
+            UrlEntity copy = copies.get(url.getKey());
+            if (copy == null) {
+                urlsToCopy.add(url);
+            } else if (copy.getVersion() < url.getVersion()) {
+                staleCopyIds.add(copy.getId());
+                urlsToCopy.add(url);
+            }
+        }
+        if (!staleCopyIds.isEmpty()) {
+            urlRepository.deleteByIdIn(staleCopyIds);
+        }
+
+        // urls are deduplicated across shards on a best effort basis, the shard may hold the same url under another key
+        Map<String, UrlEntity> sameUrls = urlsToCopy.isEmpty() ? Collections.emptyMap() :
+                urlRepository.findByUrlIn(urlsToCopy.stream().map(UrlEntity::getUrl).collect(Collectors.toList())).stream()
+                        .collect(Collectors.toMap(UrlEntity::getUrl, Function.identity()));
+        Set<String> mergedKeys = new HashSet<>();
+        for (Iterator<UrlEntity> iterator = urlsToCopy.iterator(); iterator.hasNext(); ) {
+            UrlEntity url = iterator.next();
+            UrlEntity keptUrl = sameUrls.get(url.getUrl());
+            if (keptUrl == null) {
+                continue;
+            }
+            iterator.remove();
+            mergedKeys.add(url.getKey());
+            logger.warn("Shard already holds {} under key {}, merging key {} into it", url.getUrl(), keptUrl.getKey(), url.getKey());
+            if (url.getExpiresAtMillis() > keptUrl.getExpiresAtMillis()) {
+                if (url.getExpiresAt() == null) {
+                    keptUrl.setExpirationDate(url.getExpirationDate());
+                } else {
+                    keptUrl.setExpiresAt(url.getExpiresAt());
+                }
+                extendedUrls.add(keptUrl);
+            }
+        }
+
+        urlsToCopy.forEach(UrlEntity::updateUrlHash);
+        if (!urlsToCopy.isEmpty()) {
+            urlRepository.batchInsert(urlsToCopy);
+        }
+        return mergedKeys;
+    }
+
+    /**
+     * Read again the rows which changed since they were copied, and drop the copies of the ones which are gone
+     */
+    private List<UrlEntity> rereadRows(int source, int target, List<UrlEntity> changedUrls) {
+        List<Long> ids = changedUrls.stream().map(UrlEntity::getId).collect(Collectors.toList());
+        List<UrlEntity> urls = shardRouting.onShard(source, () -> readOnlyTransactionTemplate.execute(status ->
+                urlRepository.findAll(ids)));
+        Set<Long> foundIds = urls.stream().map(UrlEntity::getId).collect(Collectors.toSet());
+        Map<String, Long> goneVersions = changedUrls.stream()
+                .filter(url -> !foundIds.contains(url.getId()))
+                .collect(Collectors.toMap(UrlEntity::getKey, UrlEntity::getVersion));
+        if (!goneVersions.isEmpty()) {
+            shardRouting.onShard(target, () -> transactionTemplate.execute(status -> {
+                List<UrlEntity> goneCopies = urlRepository.findByKeyIn(goneVersions.keySet()).stream()
+                        .filter(copy -> copy.getVersion() == goneVersions.get(copy.getKey()))
+                        .collect(Collectors.toList());
+                return goneCopies.isEmpty() ? null : urlRepository.deleteUnchanged(goneCopies);
+            }));
+        }
+        return urls;
+    }
+
+    private void onRowWritten(UrlEntity url) {
+        urlCache.invalidate(url.getKey());
+        expiryTracker.track(url.getKey(), url.getExpirationDate(), url.getExpiresAtMillis());
+        if (invalidations.isEnabled()) {
+            invalidations.publish(url.getKey(), url.getVersion());
+        }
+    }
+
+    private void onRowDeleted(UrlEntity url) {
+        urlCache.invalidate(url.getKey());
+        keyFilter.remove(url.getKey());
+        expiryTracker.untrack(url.getKey());
+        if (urlStore != null) {
+            urlStore.deleteByKey(url.getKey());
+        }
+        if (invalidations.isEnabled()) {
+            invalidations.publish(url.getKey(), url.getVersion() + 1);
+        }
+    }
+
+    private void createMappings(int shard) {
+        long afterId = 0;
+        List<UrlEntity> urls;
+        do {
+            urls = scanRows(shard, afterId);
+            Map<Integer, List<UrlEntity>> urlsByMappingShard = urls.stream()
+                    .collect(Collectors.groupingBy(url -> shardRouting.shardOfUrl(UrlEntity.hashOf(url.getUrl()))));
+            urlsByMappingShard.forEach(this::createMappings);
+            if (!urls.isEmpty()) {
+                afterId = urls.get(urls.size() - 1).getId();
+            }
+        } while (urls.size() == batchSize);
+    }
+
+    private void createMappings(int mappingShard, List<UrlEntity> urls) {
+        List<UrlKeyMappingEntity> mappings = urls.stream()
+                .map(url -> new UrlKeyMappingEntity(UrlEntity.hashOf(url.getUrl()), url.getKey()))
+                .collect(Collectors.toList());
+        Set<Long> urlHashes = mappings.stream().map(UrlKeyMappingEntity::getUrlHash).collect(Collectors.toSet());
+        shardRouting.onShard(mappingShard, () -> transactionTemplate.execute(status -> {
+            Set<UrlKeyMappingEntity> existingMappings = new HashSet<>(urlKeyMappingRepository.findByUrlHashIn(urlHashes));
+            List<UrlKeyMappingEntity> missingMappings = mappings.stream()
+                    .filter(mapping -> !existingMappings.contains(mapping))
+                    .collect(Collectors.toList());
+            urlKeyMappingRepository.save(missingMappings);
+            createdMappings.add(missingMappings.size());
+            return null;
+        }));
+    }
+
+    private void dropMappings(int shard) {
+        long afterId = 0;
+        List<UrlKeyMappingEntity> mappings;
+        do {
+            long scanFrom = afterId;
+            mappings = shardRouting.onShard(shard, () -> readOnlyTransactionTemplate.execute(status ->
+                    urlKeyMappingRepository.findByIdGreaterThanOrderByIdAsc(scanFrom, new PageRequest(0, batchSize))));
+            List<Long> misplacedIds = mappings.stream()
+                    .filter(mapping -> shardRouting.shardOfUrl(mapping.getUrlHash()) != shard)
+                    .map(UrlKeyMappingEntity::getId)
+                    .collect(Collectors.toList());
+            if (!misplacedIds.isEmpty()) {
+                droppedMappings.add(shardRouting.onShard(shard, () ->
+                        transactionTemplate.execute(status -> urlKeyMappingRepository.deleteByIdIn(misplacedIds))));
+            }
+            if (!mappings.isEmpty()) {
+                afterId = mappings.get(mappings.size() - 1).getId();
+            }
+        } while (mappings.size() == batchSize);
+    }
+
+    private List<UrlEntity> scanRows(int shard, long afterId) {
+        return shardRouting.onShard(shard, () -> readOnlyTransactionTemplate.execute(status ->
+                urlRepository.findByIdGreaterThanOrderByIdAsc(afterId, new PageRequest(0, batchSize))));
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!shardRouting.isEnabled()) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("shards.rebalance.running", running ? 1 : 0));
+        metrics.add(new Metric<>("shards.rebalance.moved.rows", movedRows.sum()));
+        metrics.add(new Metric<>("shards.rebalance.merged.rows", mergedRows.sum()));
+        metrics.add(new Metric<>("shards.rebalance.created.mappings", createdMappings.sum()));
+        metrics.add(new Metric<>("shards.rebalance.dropped.mappings", droppedMappings.sum()));
+        return metrics;
+    }
+}
@@ -0,0 +1,173 @@
+package com.mihai.shorturl.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of items with a deadline, which adds, cancels and expires an item in constant time.
+ * <p>
+ * Note: the lowest wheel has one slot per tick, each wheel above has slots as wide as a whole turn of the wheel below;
+ * the items of a slot are moved down when the slot comes up, so an item moves at most once per wheel
+ * Note: wheels are added as far deadlines need them, the memory is one node per item plus the slots of the wheels
+ * Note: an item expires at the first tick at or after its deadline, never before it
+ * Note: it is not thread safe, callers synchronize
+ *
+ * @param <T> the items
+ * @author Mihai Iusan
+ */
+final class TimingWheel<T> {
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final List<Timeout[]> wheels = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis the width of a slot of the lowest wheel
+     * @param slots      the slots per wheel, rounded up to a power of two
+     * @param nowMillis  the current time
+     */
+    TimingWheel(long tickMillis, int slots, long nowMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(2, slots) - 1));
+        this.mask = (1 << bits) - 1;
+        this.currentTick = Math.floorDiv(nowMillis, this.tickMillis);
+    }
+
+    /**
+     * @param item           the item
+     * @param deadlineMillis the time at which the item expires
+     * @return the timeout of the item, or NULL if the deadline already passed
+     */
+    Timeout add(T item, long deadlineMillis) {
+        long deadlineTick = -Math.floorDiv(-deadlineMillis, tickMillis);
+        if (deadlineTick <= currentTick) {
+            return null;
+        }
+        Timeout timeout = new Timeout(item, deadlineTick);
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Move the wheels up to the time and expire the items whose deadline passed
+     *
+     * @param nowMillis the current time
+     * @param expired   receives the expired items, in deadline order
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick;
+                return;
+            }
+            currentTick++;
+            // a slot of a higher wheel comes up when the digits of the wheels below it all turn to zero
+            int levels = Math.min(Long.numberOfTrailingZeros(currentTick) / bits, wheels.size() - 1);
+            for (int level = levels; level > 0; level--) {
+                Timeout head = wheels.get(level)[slotOf(currentTick, level)];
+                for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+                    timeout.unlink();
+                    insert(timeout);
+                }
+            }
+            if (wheels.isEmpty()) {
+                continue;
+            }
+            Timeout head = wheels.get(0)[slotOf(currentTick, 0)];
+            for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+                timeout.unlink();
+                size--;
+                expired.accept(timeout.item);
+            }
+        }
+    }
+
+    /**
+     * @return the number of items which did not expire and were not cancelled
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of wheels
+     */
+    int wheelCount() {
+        return wheels.size();
+    }
+
+    /**
+     * Put the timeout in the lowest wheel whose turn reaches its deadline, on the slot of the deadline
+     */
+    private void insert(Timeout timeout) {
+        long differentBits = timeout.deadlineTick ^ currentTick;
+        int level = differentBits == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differentBits)) / bits;
+        while (wheels.size() <= level) {
+            wheels.add(newWheel());
+        }
+        timeout.linkBefore(wheels.get(level)[slotOf(timeout.deadlineTick, level)]);
+    }
+
+    private int slotOf(long tick, int level) {
+        return (int) ((tick >>> (bits * level)) & mask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Timeout[] newWheel() {
+        Timeout[] slots = (Timeout[]) new TimingWheel.Timeout[mask + 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Timeout(null, 0);
+        }
+        return slots;
+    }
+
+    /**
+     * Node of the list of a slot, the head of each slot is an empty node
+     */
+    final class Timeout {
+        private final T item;
+        private final long deadlineTick;
+        private Timeout previous = this;
+        private Timeout next = this;
+
+        private Timeout(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        T getItem() {
+            return item;
+        }
+
+        /**
+         * @return true if the item was removed, false if it already expired or was cancelled
+         */
+        boolean cancel() {
+            if (next == this) {
+                return false;
+            }
+            unlink();
+            size--;
+            return true;
+        }
+
+        private void linkBefore(Timeout head) {
+            previous = head.previous;
+            next = head;
+            head.previous.next = this;
+            head.previous = this;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.repository.ExpiringKey;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.UrlStore;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import com.mihai.shorturl.service.cache.UrlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the keys which expire soon in a {@link TimingWheel}, and purges each one as its expiration passes: the url
+ * cache and the url store drop it, and its row is queued for reuse or deleted in bulk by the {@link ExpiredUrlReclaimer}.
+ * <p>
+ * Note: only the keys expiring up to the horizon are tracked; the keys of each following day are loaded once,
+ * through the expiration date index, when the day comes within the horizon
+ * Note: created and extended keys are tracked after the commit, if they expire within the loaded days
+ * Note: keys which expired while the node was down are left to the scan of the reclaimer
+ * Note: it ticks on its own thread instead of the shared scheduler, so the other scheduled jobs do not delay the
+ * purges; the days are loaded on a second thread, so a slow load does not delay the ticks either
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class UrlExpiryTracker implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(UrlExpiryTracker.class);
+
+    private final UrlRepository urlRepository;
+    private final ShardRouting shardRouting;
+    private final ExpiredUrlReclaimer reclaimer;
+    private final UrlCache urlCache;
+    private final UrlStore urlStore;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final boolean enabled;
+    private final long tickMillis;
+    private final int horizonDays;
+    private final int batchSize;
+
+    private final TimingWheel<String> wheel;
+    private ScheduledExecutorService executor;
+    private final Map<String, TimingWheel<String>.Timeout> timeouts = new HashMap<>();
+    private final List<String> dueKeys = new ArrayList<>();
+    private LocalDate loadedThrough;
+
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private volatile long purgeMillis;
+
+    /**
+     * @param tickMillis  the precision of the expirations
+     * @param slots       the slots of each wheel
+     * @param horizonDays the days after today whose keys are tracked
+     * @param batchSize   the keys loaded per query and reclaimed per transaction
+     */
+    @Autowired
+    public UrlExpiryTracker(UrlRepository urlRepository, ShardRouting shardRouting, ExpiredUrlReclaimer reclaimer,
+                            UrlCache urlCache, ObjectProvider<UrlStore> urlStore, PlatformTransactionManager transactionManager,
+                            @Value("${shorturl.expiry.wheel.enabled:true}") boolean enabled,
+                            @Value("${shorturl.expiry.wheel.tick-ms:1000}") long tickMillis,
+                            @Value("${shorturl.expiry.wheel.slots:64}") int slots,
+                            @Value("${shorturl.expiry.wheel.horizon-days:1}") int horizonDays,
+                            @Value("${shorturl.expiry.wheel.batch-size:1000}") int batchSize) {
+        this.urlRepository = urlRepository;
+        this.shardRouting = shardRouting;
+        this.reclaimer = reclaimer;
+        this.urlCache = urlCache;
+        this.urlStore = urlStore.getIfAvailable();
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.tickMillis = tickMillis;
+        this.horizonDays = Math.max(0, horizonDays);
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel<>(tickMillis, slots, System.currentTimeMillis());
+    }
+
+    /**
+     * Track the expiration of a key, replacing the one tracked before
+     *
+     * @param key             the key
+     * @param expirationDate  the expiration date
+     * @param expiresAtMillis the moment it expires
+     */
+    public void track(String key, LocalDate expirationDate, long expiresAtMillis) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            untrack(key);
+            if (loadedThrough == null || expirationDate.isAfter(loadedThrough)) {
+                // loaded with its day
+                return;
+            }
+            schedule(key, expiresAtMillis);
+        }
+    }
+
+    /**
+     * Stop tracking a key, like a deleted one
+     *
+     * @param key the key
+     */
+    public synchronized void untrack(String key) {
+        TimingWheel<String>.Timeout timeout = timeouts.remove(key);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("url-expiry-");
+        threadFactory.setDaemon(true);
+        executor = Executors.newScheduledThreadPool(2, threadFactory);
+        executor.scheduleWithFixedDelay(this::loadUpcomingDays, 0, tickMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Purge the keys which expired
+     */
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        List<String> expiredKeys = new ArrayList<>();
+        synchronized (this) {
+            expiredKeys.addAll(dueKeys);
+            dueKeys.clear();
+            wheel.advance(System.currentTimeMillis(), key -> {
+                timeouts.remove(key);
+                expiredKeys.add(key);
+            });
+        }
+        if (!expiredKeys.isEmpty()) {
+            try {
+                purge(expiredKeys);
+            } catch (RuntimeException e) {
+                // a task which throws is not run again by the executor
+                logger.warn("Purging {} expired keys failed, the reclaimer scan picks them up", expiredKeys.size(), e);
+            }
+        }
+    }
+
+    private void purge(List<String> expiredKeys) {
+        long start = System.currentTimeMillis();
+        for (String key : expiredKeys) {
+            urlCache.invalidate(key);
+            if (urlStore != null) {
+                urlStore.deleteByKey(key);
+            }
+        }
+        for (int from = 0; from < expiredKeys.size(); from += batchSize) {
+            reclaimer.reclaimKeys(expiredKeys.subList(from, Math.min(from + batchSize, expiredKeys.size())));
+        }
+        expired.add(expiredKeys.size());
+        purgeMillis = System.currentTimeMillis() - start;
+        logger.debug("Purged {} expired keys in {} ms", expiredKeys.size(), purgeMillis);
+    }
+
+    /**
+     * Load the days which came within the horizon
+     */
+    private void loadUpcomingDays() {
+        LocalDate today = LocalDate.now();
+        LocalDate from;
+        synchronized (this) {
+            from = loadedThrough == null || loadedThrough.isBefore(today) ? today : loadedThrough.plusDays(1);
+        }
+        LocalDate horizon = today.plusDays(horizonDays);
+        for (LocalDate date = from; !date.isAfter(horizon); date = date.plusDays(1)) {
+            try {
+                loadDay(date);
+            } catch (RuntimeException e) {
+                logger.warn("Loading the keys expiring on {} failed, retrying on the next tick", date, e);
+                return;
+            }
+            synchronized (this) {
+                loadedThrough = date;
+            }
+        }
+    }
+
+    private void loadDay(LocalDate date) {
+        shardRouting.fanOut(shard -> {
+            String afterKey = "";
+            List<ExpiringKey> expiringKeys;
+            do {
+                String scanFrom = afterKey;
+                expiringKeys = readOnlyTransactionTemplate.execute(status ->
+                        urlRepository.findExpiringKeys(date, scanFrom, new PageRequest(0, batchSize)));
+                synchronized (this) {
+                    for (ExpiringKey expiringKey : expiringKeys) {
+                        untrack(expiringKey.getKey());
+                        schedule(expiringKey.getKey(), expiringKey.getExpiresAtMillis());
+                    }
+                }
+                loaded.add(expiringKeys.size());
+                if (!expiringKeys.isEmpty()) {
+                    afterKey = expiringKeys.get(expiringKeys.size() - 1).getKey();
+                }
+            } while (expiringKeys.size() == batchSize);
+            return null;
+        });
+        logger.debug("Tracking the keys expiring on {}", date);
+    }
+
+    private void schedule(String key, long expiresAtMillis) {
+        TimingWheel<String>.Timeout timeout = wheel.add(key, expiresAtMillis);
+        if (timeout != null) {
+            timeouts.put(key, timeout);
+        } else {
+            dueKeys.add(key);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (!enabled) {
+            return metrics;
+        }
+        synchronized (this) {
+            metrics.add(new Metric<>("expiry.tracked", wheel.size()));
+            metrics.add(new Metric<>("expiry.wheels", wheel.wheelCount()));
+        }
+        metrics.add(new Metric<>("expiry.loaded", loaded.sum()));
+        metrics.add(new Metric<>("expiry.expired", expired.sum()));
+        metrics.add(new Metric<>("expiry.purge.ms", purgeMillis));
+        return metrics;
+    }
+}
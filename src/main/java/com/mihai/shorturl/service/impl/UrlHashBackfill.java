@@ -0,0 +1,87 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Fills in the url digest of the rows created before the urlHash column existed.
+ * <p>
+ * Note: it runs once the application is ready, in batches of one transaction each
+ * Note: until it completes, url lookups also fall back to comparing the full url
+ * Note: with several shards, the shards are backfilled one after the other
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class UrlHashBackfill implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(UrlHashBackfill.class);
+
+    private final UrlRepository urlRepository;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private volatile boolean complete;
+
+    @Autowired
+    public UrlHashBackfill(UrlRepository urlRepository, ShardRouting shardRouting, PlatformTransactionManager transactionManager,
+                           @Value("${shorturl.url-hash.backfill-batch-size:500}") int batchSize) {
+        this.urlRepository = urlRepository;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        backfill();
+    }
+
+    /**
+     * Backfill the digest of all the rows which miss it
+     */
+    public void backfill() {
+        long total = 0;
+        try {
+            for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+                int updated;
+                do {
+                    updated = shardRouting.onShard(shard, () -> transactionTemplate.execute(status -> backfillBatch()));
+                    total += updated;
+                } while (updated > 0);
+            }
+            complete = true;
+            logger.info("Url hash backfill complete, updated {} rows", total);
+        } catch (DataAccessException e) {
+            logger.warn("Url hash backfill stopped after {} rows, lookups keep comparing full urls", total, e);
+        }
+    }
+
+    /**
+     * @return true once every row has its url digest
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private int backfillBatch() {
+        // updated rows no longer match, so the first page always holds the next batch
+        List<UrlEntity> urls = urlRepository.findByUrlHashIsNull(new PageRequest(0, batchSize));
+        urls.forEach(UrlEntity::updateUrlHash);
+        urlRepository.save(urls);
+        return urls.size();
+    }
+}
@@ -1,26 +1,73 @@
 package com.mihai.shorturl.service.impl;
 
 import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.entity.UrlKeyMappingEntity;
+import com.mihai.shorturl.repository.UrlKeyMappingRepository;
 import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.repository.UrlStore;
+import com.mihai.shorturl.repository.routing.ReadRouting;
+import com.mihai.shorturl.repository.shard.ShardRouting;
+import com.mihai.shorturl.service.ClickService;
 import com.mihai.shorturl.service.KeyService;
+import com.mihai.shorturl.service.ResolvedUrl;
+import com.mihai.shorturl.service.ShortenResult;
 import com.mihai.shorturl.service.SupportedProtocol;
+import com.mihai.shorturl.service.UrlNormalizer;
+import com.mihai.shorturl.service.UrlPage;
 import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.cache.KeyFilter;
+import com.mihai.shorturl.service.cache.UrlCache;
+import com.mihai.shorturl.service.exception.BatchTooLargeException;
+import com.mihai.shorturl.service.exception.InvalidCursorException;
 import com.mihai.shorturl.service.exception.InvalidURLException;
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import com.mihai.shorturl.service.exception.UrlException;
 import com.mihai.shorturl.service.exception.UrlNotFoundException;
 import com.mihai.shorturl.service.exception.UrlNotSavedException;
+import com.mihai.shorturl.service.invalidation.UrlInvalidations;
+import com.mihai.shorturl.service.metrics.Event;
+import com.mihai.shorturl.service.metrics.ServiceMetrics;
+import com.mihai.shorturl.service.metrics.Stage;
 import com.mihai.shorturl.service.verifier.UrlVerifiers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.NotNull;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * This is the URL service which is responsible to create save and find entities from the UrlRepository
@@ -30,46 +77,195 @@ import java.util.List;
 @Service
 public class UrlServiceImpl implements UrlService {
     private static final Logger logger = LoggerFactory.getLogger(UrlServiceImpl.class);
+    private static final int MAX_KEY_TRIES = 10;
+    private static final int MAX_PAGE_SIZE = 1000;
     private UrlRepository urlRepository;
+    private UrlKeyMappingRepository urlKeyMappingRepository;
     private KeyService shortenService;
     private UrlVerifiers verifiers;
+    private UrlCache urlCache;
+    private KeyFilter keyFilter;
+    private UrlStore urlStore;
+    private ReadRouting readRouting;
+    private ShardRouting shardRouting;
+    private UrlHashBackfill urlHashBackfill;
+    private ExpiredUrlReclaimer reclaimer;
+    private UrlExpiryTracker expiryTracker;
+    private UrlInvalidations invalidations;
+    private ClickService clickService;
+    private GroupCommitWriter groupCommitWriter;
+    private ServiceMetrics metrics;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+    private int maxBatchSize;
+    private int batchChunkSize;
+    private int maxResolveKeys;
+    private long validityMillis;
+    private long createTimeoutMillis;
+    private final ConcurrentHashMap<String, CompletableFuture<UrlEntity>> inFlightCreates = new ConcurrentHashMap<>();
 
     @Autowired
-    public UrlServiceImpl(KeyService shortenService, UrlVerifiers verifiers, UrlRepository urlRepository) {
+    public UrlServiceImpl(KeyService shortenService, UrlVerifiers verifiers, UrlRepository urlRepository,
+                          UrlKeyMappingRepository urlKeyMappingRepository, UrlCache urlCache,
+                          KeyFilter keyFilter, ObjectProvider<UrlStore> urlStore, ReadRouting readRouting, ShardRouting shardRouting,
+                          UrlHashBackfill urlHashBackfill, ExpiredUrlReclaimer reclaimer, UrlExpiryTracker expiryTracker,
+                          UrlInvalidations invalidations, ClickService clickService, GroupCommitWriter groupCommitWriter,
+                          ServiceMetrics metrics,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${shorturl.batch.max-size:50000}") int maxBatchSize,
+                          @Value("${shorturl.batch.chunk-size:1000}") int batchChunkSize,
+                          @Value("${shorturl.resolve.max-keys:1000}") int maxResolveKeys,
+                          @Value("${shorturl.expiry.validity-ms:0}") long validityMillis,
+                          @Value("${shorturl.create.await-timeout-ms:10000}") long createTimeoutMillis) {
         this.urlRepository = urlRepository;
+        this.urlKeyMappingRepository = urlKeyMappingRepository;
         this.shortenService = shortenService;
         this.verifiers = verifiers;
+        this.urlCache = urlCache;
+        this.keyFilter = keyFilter;
+        this.urlStore = urlStore.getIfAvailable();
+        this.readRouting = readRouting;
+        this.shardRouting = shardRouting;
+        this.urlHashBackfill = urlHashBackfill;
+        this.reclaimer = reclaimer;
+        this.expiryTracker = expiryTracker;
+        this.invalidations = invalidations;
+        this.clickService = clickService;
+        this.groupCommitWriter = groupCommitWriter;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.maxBatchSize = maxBatchSize;
+        this.batchChunkSize = batchChunkSize;
+        this.maxResolveKeys = maxResolveKeys;
+        this.validityMillis = validityMillis;
+        this.createTimeoutMillis = createTimeoutMillis;
+        groupCommitWriter.start(this::writeBatch);
     }
 
     /**
      * Gets all the items from database base on the offset and the limit
+     * <p>
+     * Note: with several shards, each shard returns its first offset + limit items, which are merged in id order
      *
      * @param offset the offset
      * @param limit  the limit
      * @return the list of UrlEntities
      */
     @Override
-    @Transactional(readOnly = true)
     public List<UrlEntity> find(int offset, int limit) {
-        int page = (int) Math.ceil(offset / limit);
-        Pageable pageRequest = new PageRequest(page, limit);
-        Page<UrlEntity> foundUrls = urlRepository.findAll(pageRequest);
+        boolean sharded = shardRouting.isEnabled();
+        List<UrlEntity> mergedUrls = mergeById(shardRouting.fanOut(shard -> readOnlyTransactionTemplate.execute(status ->
+                sharded ? urlRepository.findRange(0, offset + limit) : urlRepository.findRange(offset, limit))));
+        List<UrlEntity> foundUrls = !sharded ? mergedUrls
+                : mergedUrls.subList(Math.min(offset, mergedUrls.size()), Math.min(offset + limit, mergedUrls.size()));
+
+        logger.debug("Found {} URLs", foundUrls.size());
+        return foundUrls;
+    }
+
+    /**
+     * Gets a page of the URLs which did not expire, in id order, starting after the cursor
+     * <p>
+     * Note: pages are found through the id index (keyset pagination), without an offset scan or a count
+     * Note: with several shards, the shards are queried in parallel and the page is ordered by id, then by shard;
+     * the cursor then also holds the shard of the last URL
+     *
+     * @param cursor the cursor returned with the previous page, NULL or empty for the first page
+     * @param limit  the max number of URLs, capped at 1000
+     * @return the page with the cursor of the next page
+     */
+    @Override
+    public UrlPage findPage(String cursor, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        long[] position = StringUtils.isEmpty(cursor) ? new long[]{0, 0} : decodeCursor(cursor);
+        LocalDate today = LocalDate.now();
+
+        // one more than needed tells if there is a next page
+        List<List<UrlEntity>> shardUrls = shardRouting.fanOut(shard -> {
+            // ids are only unique within a shard, the later shards may still have the id of the cursor
+            long afterId = shard > position[1] ? position[0] - 1 : position[0];
+            return readOnlyTransactionTemplate.execute(status -> urlRepository.findByIdGreaterThanAndExpirationDateNotBefore(
+                    afterId, today, new PageRequest(0, pageSize + 1)));
+        });
+        List<SimpleImmutableEntry<UrlEntity, Integer>> foundUrls = mergeByIdAndShard(shardUrls);
+        // urls with a finer expiration which passed are left out after paging, so they do not end the pages early
+        if (foundUrls.size() <= pageSize) {
+            return new UrlPage(foundUrls.stream()
+                    .map(SimpleImmutableEntry::getKey)
+                    .filter(url -> !isUrlExpired(url))
+                    .collect(Collectors.toList()), null);
+        }
+        List<UrlEntity> pageUrls = foundUrls.subList(0, pageSize).stream()
+                .map(SimpleImmutableEntry::getKey)
+                .filter(url -> !isUrlExpired(url))
+                .collect(Collectors.toList());
+        SimpleImmutableEntry<UrlEntity, Integer> last = foundUrls.get(pageSize - 1);
+        return new UrlPage(pageUrls, encodeCursor(last.getKey().getId(), last.getValue()));
+    }
 
-        logger.debug("Found {} URLs", foundUrls.getTotalElements());
-        return foundUrls.getContent();
+    /**
+     * Merge the urls of the shards in id order, then shard order
+     *
+     * @param shardUrls the urls of each shard, in id order
+     * @return the urls with their shard
+     */
+    private static List<SimpleImmutableEntry<UrlEntity, Integer>> mergeByIdAndShard(List<List<UrlEntity>> shardUrls) {
+        List<SimpleImmutableEntry<UrlEntity, Integer>> mergedUrls = new ArrayList<>();
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            for (UrlEntity url : shardUrls.get(shard)) {
+                mergedUrls.add(new SimpleImmutableEntry<>(url, shard));
+            }
+        }
+        if (shardUrls.size() > 1) {
+            mergedUrls.sort(Comparator.comparing((SimpleImmutableEntry<UrlEntity, Integer> entry) -> entry.getKey().getId())
+                    .thenComparing(SimpleImmutableEntry::getValue));
+        }
+        return mergedUrls;
+    }
+
+    private static List<UrlEntity> mergeById(List<List<UrlEntity>> shardUrls) {
+        return mergeByIdAndShard(shardUrls).stream().map(SimpleImmutableEntry::getKey).collect(Collectors.toList());
+    }
+
+    /**
+     * Go through all the URLs which did not expire, in id order
+     * <p>
+     * Note: the URLs are read with a forward only cursor, so memory use does not depend on the number of URLs
+     * Note: with several shards, the shards are read one after the other, each in id order
+     *
+     * @param consumer receives each URL
+     */
+    @Override
+    public void exportUrls(Consumer<UrlEntity> consumer) {
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+            shardRouting.onShard(shard, () -> readOnlyTransactionTemplate.execute(status -> {
+                urlRepository.forEachByExpirationDateNotBefore(today, url -> {
+                    if (!url.isExpired(now)) {
+                        consumer.accept(url);
+                    }
+                });
+                return null;
+            }));
+        }
     }
 
     /**
      * Find UrlEntity by key
+     * <p>
+     * Note: the entity only has the url, key and expiration date, expired urls are filtered out by the query
+     * Note: the lookup may go to a read replica, see {@link #findValidByKey(String)}
      *
      * @param key the key
      * @return the URL entity
      */
     @Override
-    @Transactional(readOnly = true)
     public UrlEntity find(String key) {
-        UrlEntity foundUrl = urlRepository.findByKey(key);
-        if (foundUrl == null || isUrlExpired(foundUrl)) {
+        UrlEntity foundUrl = findValidByKey(key);
+        if (foundUrl == null) {
             throw new UrlNotFoundException("URL \'" + key + "\' not found");
         }
         return foundUrl;
@@ -79,66 +275,477 @@ public class UrlServiceImpl implements UrlService {
      * Create a new URL entry in the db.
      * <p>
      * Note: If it already exists, it will retrieve the old one and update the expiry date if needed
-     * Note: If
+     * Note: The url is normalized first, so urls which only differ in the case of the scheme or host are the same
+     * Note: concurrent creates of the same url on this node are coalesced, only the first one runs a transaction and
+     * the others return its entity
+     * Note: if another node or a batch inserts the same url at the same time, the entry it inserted is returned
+     * Note: in group commit mode, the create shares a transaction with the other creates queued at the same time
+     * Note: with several shards, group commit is not used, see {@link #createOnShards(String)}
      *
      * @param url the url
      * @return new UrlEntity
      */
     @Override
-    @Transactional
     public UrlEntity create(@NotNull String url) {
         logger.debug("Request to shortenUrl: {}", url);
-        UrlEntity resultUrl;
+        long start = System.nanoTime();
+
+        UrlEntity resultUrl = createCoalesced(verifyUrl(url));
+        metrics.record(Stage.CREATE, start);
+        return resultUrl;
+    }
+
+    /**
+     * Create the entry of a verified url, or wait for the create of the same url which is already in flight
+     * <p>
+     * Note: the in-flight map is a ConcurrentHashMap, so creates of different urls only contend on the same bin
+     *
+     * @param newUrl the normalized url
+     * @return the entry
+     */
+    private UrlEntity createCoalesced(@NotNull String newUrl) {
+        CompletableFuture<UrlEntity> creation = new CompletableFuture<>();
+        CompletableFuture<UrlEntity> inFlight = inFlightCreates.putIfAbsent(newUrl, creation);
+        if (inFlight != null) {
+            logger.debug("URL {} is already being created, waiting for it", newUrl);
+            metrics.increment(Event.CREATE_COALESCED);
+            return awaitCreation(inFlight);
+        }
+
+        try {
+            UrlEntity resultUrl = groupCommitWriter.isEnabled() && !shardRouting.isEnabled()
+                    ? awaitCreation(groupCommitWriter.submit(newUrl))
+                    : createInTransaction(newUrl);
+            creation.complete(resultUrl);
+            return resultUrl;
+        } catch (RuntimeException | Error e) {
+            creation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCreates.remove(newUrl, creation);
+        }
+    }
+
+    /**
+     * Wait for a create which runs on another thread, the group commit writer or the first request for the url
+     *
+     * @throws ServiceOverloadedException if it did not complete in time
+     */
+    private UrlEntity awaitCreation(CompletableFuture<UrlEntity> creation) {
+        try {
+            return creation.get(createTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // rethrow what the first create failed with
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (TimeoutException e) {
+            throw new ServiceOverloadedException("The URL could not be created in time, try again later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceOverloadedException("The URL could not be created in time, try again later");
+        }
+    }
+
+    /**
+     * Create the entry of a verified url in its own transaction
+     * <p>
+     * Note: if the insert violates a unique constraint, the url is looked up again; a concurrent insert of the same
+     * url returns its entry, a concurrent insert of the same key is retried once with a new key
+     *
+     * @param newUrl the normalized url
+     * @return the entry
+     */
+    private UrlEntity createInTransaction(@NotNull String newUrl) {
+        try {
+            return shardRouting.isEnabled() ? createOnShards(newUrl) : transactionTemplate.execute(status -> findOrCreate(newUrl));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("URL {} was created concurrently, reading it again", newUrl, e);
+            metrics.increment(Event.CREATE_RACE);
+            return shardRouting.isEnabled() ? createOnShards(newUrl) : transactionTemplate.execute(status -> findOrCreate(newUrl));
+        }
+    }
+
+    /**
+     * Create the entry of a verified url when the urls are spread over several shards
+     * <p>
+     * Note: the existing entry is found through the mappings from the url digest to keys, on the shard of the url,
+     * and checked on the shard of each key
+     * Note: a new row is saved on the shard of its key, then its mapping on the shard of the url; the two are not in
+     * one transaction, so if the mapping is lost the next create of the url gets another key
+     * Note: expired rows are not reused, the reclaimer deletes them
+     *
+     * @param newUrl the normalized url
+     * @return the entry
+     */
+    private UrlEntity createOnShards(@NotNull String newUrl) {
+        long urlHash = UrlEntity.hashOf(newUrl);
+        int urlShard = shardRouting.shardOfUrl(urlHash);
+
+        long start = System.nanoTime();
+        List<String> candidateKeys = shardRouting.onShard(urlShard, () ->
+                readOnlyTransactionTemplate.execute(status -> urlKeyMappingRepository.findKeysByUrlHash(urlHash)));
+        metrics.record(Stage.DEDUPE_LOOKUP, start);
+        for (String candidateKey : candidateKeys) {
+            UrlEntity existingUrl = shardRouting.onShard(shardRouting.shardOfKey(candidateKey), () ->
+                    transactionTemplate.execute(status -> {
+                        UrlEntity candidate = urlRepository.findByKey(candidateKey);
+                        if (candidate == null || !newUrl.equals(candidate.getUrl())) {
+                            return null;
+                        }
+                        logger.debug("URL {} already exists in database: {}", newUrl, candidate);
+                        metrics.increment(Event.DEDUPE_HIT);
+                        return extendExpirationDate(candidate);
+                    }));
+            if (existingUrl != null) {
+                return existingUrl;
+            }
+        }
+
+        long keyStart = System.nanoTime();
+        String key = getKey(newUrl);
+        metrics.record(Stage.KEY_GENERATION, keyStart);
+
+        UrlEntity savedUrl = shardRouting.onShard(shardRouting.shardOfKey(key), () ->
+                transactionTemplate.execute(status -> saveUrl(newUrlEntity(newUrl, key))));
+        shardRouting.onShard(urlShard, () ->
+                transactionTemplate.execute(status -> urlKeyMappingRepository.save(new UrlKeyMappingEntity(urlHash, key))));
+        return savedUrl;
+    }
+
+    /**
+     * Create the entries of a batch of queued creates in one transaction, see {@link GroupCommitWriter}
+     * <p>
+     * Note: the results are handed out only after the commit
+     * Note: a create which fails on its own, like a key which cannot be generated, fails alone; if the transaction
+     * fails, the creates of the batch are retried each in its own transaction
+     *
+     * @param batch the creates of distinct urls
+     */
+    private void writeBatch(List<GroupCommitWriter.PendingCreate> batch) {
+        long start = System.nanoTime();
+        UrlEntity[] results = new UrlEntity[batch.size()];
+        RuntimeException[] errors = new RuntimeException[batch.size()];
+        try {
+            transactionTemplate.execute(status -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        results[i] = findOrCreate(batch.get(i).getUrl());
+                    } catch (UrlException e) {
+                        errors[i] = e;
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.info("Group commit of {} urls failed, creating them one by one", batch.size(), e);
+            for (int i = 0; i < batch.size(); i++) {
+                results[i] = null;
+                errors[i] = null;
+                try {
+                    results[i] = createInTransaction(batch.get(i).getUrl());
+                } catch (RuntimeException oneByOneError) {
+                    // fails this create alone, the ones before it are committed and must complete
+                    errors[i] = oneByOneError;
+                }
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) {
+                batch.get(i).fail(errors[i]);
+            } else {
+                batch.get(i).complete(results[i]);
+            }
+        }
+        metrics.record(Stage.GROUP_COMMIT, start);
+    }
+
+    private UrlEntity findOrCreate(@NotNull String newUrl) {
+        UrlEntity existingUrl = findExistingUrl(newUrl);
+        if (existingUrl != null) {
+            logger.debug("URL {} already exists in database: {}", newUrl, existingUrl);
+            metrics.increment(Event.DEDUPE_HIT);
+            return extendExpirationDate(existingUrl);
+        }
+        return createAndSaveUrl(newUrl);
+    }
+
+    /**
+     * Create new URL entries for a batch of urls.
+     * <p>
+     * Note: the urls are looked up with one query and inserted with batched statements, one transaction per chunk
+     * Note: if a chunk fails, for example because a concurrent request inserted one of its urls, its urls are
+     * created one by one instead
+     * Note: with several shards, a chunk cannot be inserted in one transaction, so the urls are created one by one
+     * Note: an url which cannot be verified or created in time fails on its own, the rest of the batch goes on
+     *
+     * @param urls the urls
+     * @return a result for each url, in the same order
+     */
+    @Override
+    public List<ShortenResult> createAll(@NotNull List<String> urls) {
+        logger.debug("Request to shorten {} urls", urls.size());
+        if (urls.size() > maxBatchSize) {
+            throw new BatchTooLargeException("Too many urls, max supported batch size is: " + maxBatchSize);
+        }
+
+        ShortenResult[] results = new ShortenResult[urls.size()];
+        // positions of each distinct url in the request
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            try {
+                positions.computeIfAbsent(verifyUrl(url), newUrl -> new ArrayList<>()).add(i);
+            } catch (InvalidURLException | ServiceOverloadedException e) {
+                results[i] = ShortenResult.failed(url, e.getMessage());
+            }
+        }
 
-        String newUrl = url.trim();
+        List<String> newUrls = new ArrayList<>(positions.keySet());
+        for (int from = 0; from < newUrls.size(); from += batchChunkSize) {
+            List<String> chunk = newUrls.subList(from, Math.min(from + batchChunkSize, newUrls.size()));
+            Map<String, ShortenResult> chunkResults;
+            if (shardRouting.isEnabled()) {
+                chunkResults = createOneByOne(chunk);
+            } else {
+                try {
+                    chunkResults = transactionTemplate.execute(status -> createChunk(chunk));
+                } catch (UrlException | DataAccessException e) {
+                    logger.info("Batch of {} urls failed, creating them one by one", chunk.size(), e);
+                    chunkResults = createOneByOne(chunk);
+                }
+            }
+            for (String newUrl : chunk) {
+                ShortenResult result = chunkResults.get(newUrl);
+                for (int position : positions.get(newUrl)) {
+                    results[position] = result.getError() == null
+                            ? ShortenResult.shortened(urls.get(position), result.getKey())
+                            : ShortenResult.failed(urls.get(position), result.getError());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Create the entries of verified, distinct urls in the current transaction
+     *
+     * @param urls the normalized urls
+     * @return the result for each url
+     */
+    private Map<String, ShortenResult> createChunk(List<String> urls) {
+        Map<String, UrlEntity> existingUrls = findExistingUrls(urls);
+        Map<String, ShortenResult> results = new HashMap<>();
+        List<String> missingUrls = new ArrayList<>();
+        for (String url : urls) {
+            UrlEntity existingUrl = existingUrls.get(url);
+            if (existingUrl != null) {
+                metrics.increment(Event.DEDUPE_HIT);
+                results.put(url, ShortenResult.shortened(url, extendExpirationDate(existingUrl).getKey()));
+            } else {
+                missingUrls.add(url);
+            }
+        }
+
+        List<String> keys = getKeys(missingUrls);
+        List<UrlEntity> urlsToSave = new ArrayList<>(missingUrls.size());
+        for (int i = 0; i < missingUrls.size(); i++) {
+            urlsToSave.add(newUrlEntity(missingUrls.get(i), keys.get(i)));
+            results.put(missingUrls.get(i), ShortenResult.shortened(missingUrls.get(i), keys.get(i)));
+        }
+        long start = System.nanoTime();
+        urlRepository.batchInsert(urlsToSave);
+        keyFilter.addAll(keys);
+        if (invalidations.isEnabled()) {
+            afterCommit(() -> invalidations.publishAll(keys, 0));
+        }
+        urlsToSave.forEach(this::storeAfterCommit);
+        urlsToSave.forEach(this::trackAfterCommit);
+        readRouting.recordWrites(keys);
+        metrics.record(Stage.BATCH_INSERT, start);
+
+        logger.debug("Batch created {} urls, {} already existed", urlsToSave.size(), existingUrls.size());
+        return results;
+    }
+
+    private Map<String, ShortenResult> createOneByOne(List<String> urls) {
+        Map<String, ShortenResult> results = new HashMap<>();
+        for (String url : urls) {
+            try {
+                UrlEntity urlEntity = createCoalesced(url);
+                results.put(url, ShortenResult.shortened(url, urlEntity.getKey()));
+            } catch (UrlException | DataAccessException e) {
+                results.put(url, ShortenResult.failed(url, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Check that the url can be shortened
+     *
+     * @param url the url as submitted
+     * @return the normalized url
+     * @throws InvalidURLException if the url is too long, has an unsupported protocol or is not safe
+     * @throws ServiceOverloadedException if the verifiers could not give a verdict in time
+     */
+    private String verifyUrl(@NotNull String url) {
+        long start = System.nanoTime();
+        try {
+            return verifyNormalizedUrl(UrlNormalizer.normalize(url));
+        } finally {
+            metrics.record(Stage.VERIFY, start);
+        }
+    }
+
+    private String verifyNormalizedUrl(@NotNull String newUrl) {
         // Check if the URL is longer then the max size that can be saved to DB
         if (newUrl.length() > UrlEntity.MAX_URL_LENGTH) {
             throw new InvalidURLException("URL is too long, max supported size is: " + UrlEntity.MAX_URL_LENGTH);
         }
 
         // Check if the protocol is supported
-        boolean isSupportedProtocol = SupportedProtocol.contains(url);
+        boolean isSupportedProtocol = SupportedProtocol.contains(newUrl);
         if (!isSupportedProtocol) {
             throw new InvalidURLException("URL protocol not supported");
         }
         boolean isSafeUrl = verifiers.isSafe(newUrl);
-        if (isSafeUrl) {
-            UrlEntity existingUrl = urlRepository.findByUrl(newUrl);
-            if (existingUrl != null) {
-                logger.debug("URL {} already exists in database: {}", newUrl, existingUrl);
-                LocalDate validityPeriod = LocalDate.now().plusDays(UrlEntity.DEFAULT_VALID_DAYS);
-                LocalDate expirationDate = existingUrl.getExpirationDate();
-                if (validityPeriod.isAfter(expirationDate)) {
-                    existingUrl = updateExpirationDateAndSaveUrl(existingUrl, validityPeriod);
-                }
-                resultUrl = existingUrl;
-            } else {
-                resultUrl = createAndSaveUrl(newUrl);
-            }
-            return resultUrl;
-        } else {
+        if (!isSafeUrl) {
             throw new InvalidURLException("URL " + newUrl + " might pose a security risk, so we won't process it");
         }
+        return newUrl;
+    }
+
+    /**
+     * Extend the expiration of an existing entry to the default validity period, if it ends earlier
+     *
+     * @param existingUrl the existing entry
+     * @return the entry with the new expiration
+     */
+    private UrlEntity extendExpirationDate(@NotNull UrlEntity existingUrl) {
+        long validUntil = validityMillis > 0
+                ? System.currentTimeMillis() + validityMillis
+                : UrlEntity.endOfDay(UrlEntity.getDefaultExpirationDate());
+        if (validUntil > existingUrl.getExpiresAtMillis()) {
+            return updateExpirationDateAndSaveUrl(existingUrl);
+        }
+        return existingUrl;
+    }
+
+    /**
+     * Create the entry of a new key, valid for the default validity period
+     */
+    private UrlEntity newUrlEntity(@NotNull String url, @NotNull String key) {
+        UrlEntity urlEntity = new UrlEntity(url, key);
+        applyValidity(urlEntity);
+        return urlEntity;
+    }
+
+    /**
+     * Set the expiration of an entry to the default validity period: whole days, or shorturl.expiry.validity-ms
+     * from now if it is set
+     */
+    private void applyValidity(@NotNull UrlEntity urlEntity) {
+        if (validityMillis > 0) {
+            urlEntity.setExpiresAt(System.currentTimeMillis() + validityMillis);
+        } else {
+            urlEntity.setExpirationDate(UrlEntity.getDefaultExpirationDate());
+        }
+    }
+
+    /**
+     * Find the entry of an url by its digest, comparing the full url only for the rows with the same digest
+     * <p>
+     * Note: until the digest of the old rows is backfilled, it falls back to the full url lookup
+     *
+     * @param url the normalized url
+     * @return the existing entry or NULL
+     */
+    private UrlEntity findExistingUrl(@NotNull String url) {
+        long start = System.nanoTime();
+        try {
+            return findExistingUrlByHash(url);
+        } finally {
+            metrics.record(Stage.DEDUPE_LOOKUP, start);
+        }
+    }
+
+    private UrlEntity findExistingUrlByHash(@NotNull String url) {
+        for (UrlEntity candidate : urlRepository.findByUrlHash(UrlEntity.hashOf(url))) {
+            if (url.equals(candidate.getUrl())) {
+                return candidate;
+            }
+        }
+        if (!urlHashBackfill.isComplete()) {
+            return urlRepository.findByUrl(url);
+        }
+        return null;
+    }
+
+    /**
+     * Find the entries of several urls with one query, see {@link #findExistingUrl(String)}
+     *
+     * @param urls the normalized urls
+     * @return the existing entries by url
+     */
+    private Map<String, UrlEntity> findExistingUrls(@NotNull List<String> urls) {
+        long start = System.nanoTime();
+        List<Long> urlHashes = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            urlHashes.add(UrlEntity.hashOf(url));
+        }
+
+        Set<String> wantedUrls = new HashSet<>(urls);
+        Map<String, UrlEntity> existingUrls = new HashMap<>();
+        for (UrlEntity candidate : urlRepository.findByUrlHashIn(urlHashes)) {
+            if (wantedUrls.contains(candidate.getUrl())) {
+                existingUrls.put(candidate.getUrl(), candidate);
+            }
+        }
+        if (!urlHashBackfill.isComplete() && existingUrls.size() < urls.size()) {
+            for (UrlEntity existingUrl : urlRepository.findByUrlIn(urls)) {
+                existingUrls.put(existingUrl.getUrl(), existingUrl);
+            }
+        }
+        metrics.record(Stage.DEDUPE_LOOKUP, start);
+        return existingUrls;
     }
 
     /**
      * Delete operation by key for the URL entry
+     * <p>
+     * Note: the row is deleted on the shard of its key, the mapping of its url is left for the next create to skip
+     * Note: the click statistics of the key are cleared once the row is deleted
      *
      * @param key the key
      */
     @Override
-    @Transactional
     public void deleteByKey(String key) {
         // Not in use
         logger.info("Delete request for url with key: ", key);
 
-        UrlEntity foundUrl = urlRepository.findByKey(key);
-        if (foundUrl == null) {
-            throw new UrlNotFoundException("No url found for key: " + key);
-        }
+        shardRouting.onShard(shardRouting.shardOfKey(key), () -> transactionTemplate.execute(status -> {
+            UrlEntity foundUrl = urlRepository.findByKey(key);
+            if (foundUrl == null) {
+                throw new UrlNotFoundException("No url found for key: " + key);
+            }
 
-        urlRepository.delete(foundUrl);
-        logger.info("Deleted: {}", foundUrl);
+            urlRepository.delete(foundUrl);
+            urlCache.invalidate(key);
+            long deletedVersion = foundUrl.getVersion() + 1;
+            afterCommit(() -> expiryTracker.untrack(key));
+            afterCommit(() -> invalidations.publish(key, deletedVersion));
+            keyFilter.remove(key);
+            readRouting.recordWrite(key);
+            if (urlStore != null) {
+                afterCommit(() -> urlStore.deleteByKey(key));
+            }
+            logger.info("Deleted: {}", foundUrl);
+            return null;
+        }));
+        clickService.clearClicks(key);
     }
 
     /**
@@ -149,52 +756,329 @@ public class UrlServiceImpl implements UrlService {
      */
     @Override
     public String findUrlByKey(String key) {
-        logger.trace("Retrieving url for the key: ", key);
+        ResolvedUrl resolvedUrl = resolve(key);
+        return resolvedUrl == null ? null : resolvedUrl.getUrl();
+    }
 
-        String result = null;
-        UrlEntity foundUrl = urlRepository.findByKey(key);
+    /**
+     * Resolve a key to its URL and expiration
+     * <p>
+     * Note: lookups go through the url cache and only reach the database on a miss
+     *
+     * @param key the key
+     * @return the resolved URL or NULL if it does not exist or it expired
+     */
+    @Override
+    public ResolvedUrl resolve(String key) {
+        logger.trace("Retrieving url for the key: {}", key);
+        long start = System.nanoTime();
 
-        if (foundUrl != null && !isUrlExpired(foundUrl)) {
-            logger.debug("Found url corresponding to the key: {} is {}", foundUrl);
-            result = foundUrl.getUrl();
-        } else {
+        ResolvedUrl resolvedUrl = urlCache.get(key, this::loadUrl);
+        if (resolvedUrl == null) {
             logger.info("No url found for key: {}", key);
+            metrics.increment(Event.NOT_FOUND);
         }
+        metrics.record(Stage.RESOLVE, start);
+        return resolvedUrl;
+    }
 
-        return result;
+    /**
+     * Resolve a key to its URL and expiration only if it is in the url cache, so it never waits on the database
+     *
+     * @param key the key
+     * @return the resolved URL, or NULL if it is not cached; the key may still exist, see {@link #resolve(String)}
+     */
+    @Override
+    public ResolvedUrl resolveCached(String key) {
+        long start = System.nanoTime();
+        ResolvedUrl resolvedUrl = urlCache.getIfPresent(key);
+        if (resolvedUrl != null) {
+            metrics.record(Stage.RESOLVE, start);
+        }
+        return resolvedUrl;
+    }
+
+    /**
+     * Resolve several keys to their URL and expiration
+     * <p>
+     * Note: the keys which miss the url cache are loaded together, with one query per shard instead of one per key
+     *
+     * @param keys the keys
+     * @return the resolved URLs by key, without the keys which do not exist or expired
+     * @throws BatchTooLargeException if there are more keys than allowed
+     */
+    @Override
+    public Map<String, ResolvedUrl> resolveAll(Collection<String> keys) {
+        if (keys.size() > maxResolveKeys) {
+            throw new BatchTooLargeException("Too many keys, max supported batch size is: " + maxResolveKeys);
+        }
+        long start = System.nanoTime();
+
+        Set<String> distinctKeys = new LinkedHashSet<>(keys);
+        Map<String, ResolvedUrl> resolvedUrls = urlCache.getAll(distinctKeys, this::loadUrls);
+        for (int i = resolvedUrls.size(); i < distinctKeys.size(); i++) {
+            metrics.increment(Event.NOT_FOUND);
+        }
+        logger.debug("Resolved {} of {} keys", resolvedUrls.size(), distinctKeys.size());
+        metrics.record(Stage.RESOLVE_ALL, start);
+        return resolvedUrls;
+    }
+
+    /**
+     * Load the valid URLs of several keys, like {@link #loadUrl(String)} with one query per shard
+     *
+     * @param keys the keys
+     * @return the resolved URLs by key, without the keys which do not exist or expired
+     */
+    private Map<String, ResolvedUrl> loadUrls(Set<String> keys) {
+        Map<String, ResolvedUrl> loadedUrls = new HashMap<>();
+        List<String> keysToFind = new ArrayList<>();
+        for (String key : keys) {
+            if (!keyFilter.mightContain(key)) {
+                continue;
+            }
+            if (urlStore != null) {
+                long storeStart = System.nanoTime();
+                UrlEntity storedUrl = urlStore.findByKey(key);
+                metrics.record(Stage.STORE_LOOKUP, storeStart);
+                if (storedUrl != null && !isUrlExpired(storedUrl)) {
+                    loadedUrls.put(key, ResolvedUrl.of(storedUrl));
+                    continue;
+                }
+            }
+            keysToFind.add(key);
+        }
+        if (keysToFind.isEmpty()) {
+            return loadedUrls;
+        }
+
+        long start = System.nanoTime();
+        for (UrlEntity foundUrl : findValidByKeys(keysToFind)) {
+            storeAfterCommit(foundUrl);
+            loadedUrls.put(foundUrl.getKey(), ResolvedUrl.of(foundUrl));
+        }
+        metrics.record(Stage.BULK_KEY_LOOKUP, start);
+        return loadedUrls;
+    }
+
+    /**
+     * Load a valid URL by key from the url store or the database
+     * <p>
+     * Note: keys which the key filter rules out are not looked up
+     * Note: keys which the url store misses or has expired are looked up in the database, and the valid ones are
+     * copied to the store
+     * Note: the database query only reads the url and expiration date of a valid row, without a managed entity
+     *
+     * @param key the key
+     * @return the resolved URL or NULL if it does not exist or it expired
+     */
+    private ResolvedUrl loadUrl(String key) {
+        if (!keyFilter.mightContain(key)) {
+            return null;
+        }
+        if (urlStore != null) {
+            long storeStart = System.nanoTime();
+            UrlEntity storedUrl = urlStore.findByKey(key);
+            metrics.record(Stage.STORE_LOOKUP, storeStart);
+            if (storedUrl != null && !isUrlExpired(storedUrl)) {
+                return ResolvedUrl.of(storedUrl);
+            }
+        }
+        long start = System.nanoTime();
+        UrlEntity foundUrl = findValidByKey(key);
+        metrics.record(Stage.KEY_LOOKUP, start);
+        if (foundUrl == null) {
+            return null;
+        }
+        // only valid rows are copied, expired ones are the only ones which can be reused for another url meanwhile
+        storeAfterCommit(foundUrl);
+        logger.debug("Found url corresponding to the key: {} is {}", key, foundUrl);
+        return ResolvedUrl.of(foundUrl);
+    }
+
+    /**
+     * Find a valid entry by key, on a read replica if there are any
+     * <p>
+     * Note: keys written by this node within the max replica lag are read from the primary, so a created, reused or
+     * deleted key is read back as written
+     * Note: keys which the replica does not have are read again from the primary, they may have been created on
+     * another node since the replica last caught up
+     *
+     * @param key the key
+     * @return the entry, which is not managed, or NULL if it does not exist or it expired
+     */
+    private UrlEntity findValidByKey(String key) {
+        UrlEntity foundUrl = findValidOnDateByKey(key);
+        return foundUrl == null || isUrlExpired(foundUrl) ? null : foundUrl;
+    }
+
+    /**
+     * Find an entry by key which did not expire on the current date, see {@link #findValidByKey(String)}
+     */
+    private UrlEntity findValidOnDateByKey(String key) {
+        LocalDate today = LocalDate.now();
+        if (shardRouting.isEnabled()) {
+            return findValidByKeyOnShards(key, today);
+        }
+        if (readRouting.isRecentlyWritten(key)) {
+            return readRouting.readRecentWrite(() -> urlRepository.findValidByKey(key, today));
+        }
+        UrlEntity foundUrl = urlRepository.findValidByKey(key, today);
+        if (foundUrl == null && readRouting.isEnabled()) {
+            return readRouting.readAfterReplicaMiss(() -> urlRepository.findValidByKey(key, today));
+        }
+        return foundUrl;
+    }
+
+    /**
+     * Find the valid entries of several keys, see {@link #findValidByKey(String)}
+     * <p>
+     * Note: the keys are grouped by shard and the shards are queried in parallel
+     *
+     * @param keys the distinct keys
+     * @return the entries, which are not managed, of the keys which exist and did not expire
+     */
+    private List<UrlEntity> findValidByKeys(List<String> keys) {
+        return findValidOnDateByKeys(keys).stream().filter(url -> !isUrlExpired(url)).collect(Collectors.toList());
+    }
+
+    private List<UrlEntity> findValidOnDateByKeys(List<String> keys) {
+        LocalDate today = LocalDate.now();
+        Map<Integer, List<String>> keysByShard = keys.stream().collect(Collectors.groupingBy(shardRouting::shardOfKey));
+        List<UrlEntity> foundUrls = new ArrayList<>();
+        shardRouting.fanOut(shard -> findValidByKeysOnShard(keysByShard.getOrDefault(shard, Collections.emptyList()), today))
+                .forEach(foundUrls::addAll);
+
+        if (shardRouting.isResharding() && foundUrls.size() < keys.size()) {
+            Set<String> foundKeys = foundUrls.stream().map(UrlEntity::getKey).collect(Collectors.toSet());
+            List<String> missedKeys = keys.stream().filter(key -> !foundKeys.contains(key)).collect(Collectors.toList());
+            shardRouting.missFallback();
+            shardRouting.fanOut(shard -> urlRepository.findValidByKeyIn(missedKeys, today)).forEach(foundUrls::addAll);
+        }
+        return foundUrls;
+    }
+
+    private List<UrlEntity> findValidByKeysOnShard(List<String> keys, LocalDate today) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Boolean, List<String>> keysByRecentWrite = keys.stream()
+                .collect(Collectors.partitioningBy(readRouting::isRecentlyWritten));
+        List<String> recentKeys = keysByRecentWrite.get(true);
+        List<String> otherKeys = keysByRecentWrite.get(false);
+
+        List<UrlEntity> foundUrls = new ArrayList<>();
+        if (!recentKeys.isEmpty()) {
+            foundUrls.addAll(readRouting.readRecentWrite(() -> urlRepository.findValidByKeyIn(recentKeys, today)));
+        }
+        if (!otherKeys.isEmpty()) {
+            List<UrlEntity> replicaUrls = urlRepository.findValidByKeyIn(otherKeys, today);
+            foundUrls.addAll(replicaUrls);
+            if (readRouting.isEnabled() && replicaUrls.size() < otherKeys.size()) {
+                Set<String> foundKeys = replicaUrls.stream().map(UrlEntity::getKey).collect(Collectors.toSet());
+                List<String> missedKeys = otherKeys.stream().filter(key -> !foundKeys.contains(key)).collect(Collectors.toList());
+                foundUrls.addAll(readRouting.readAfterReplicaMiss(() -> urlRepository.findValidByKeyIn(missedKeys, today)));
+            }
+        }
+        return foundUrls;
+    }
+
+    /**
+     * Find a valid entry by key on the shard of the key
+     * <p>
+     * Note: while resharding, a key which the shard does not have is looked up on the other shards, its row may not
+     * have been moved yet
+     *
+     * @param key   the key
+     * @param today the current date
+     * @return the entry, which is not managed, or NULL if it does not exist or it expired
+     */
+    private UrlEntity findValidByKeyOnShards(String key, LocalDate today) {
+        int keyShard = shardRouting.shardOfKey(key);
+        UrlEntity foundUrl = shardRouting.onShard(keyShard, () -> urlRepository.findValidByKey(key, today));
+        if (foundUrl != null || !shardRouting.isResharding()) {
+            return foundUrl;
+        }
+
+        shardRouting.missFallback();
+        for (UrlEntity movedUrl : shardRouting.fanOut(shard -> shard == keyShard ? null : urlRepository.findValidByKey(key, today))) {
+            if (movedUrl != null) {
+                return movedUrl;
+            }
+        }
+        return null;
     }
 
     /**
      * Creates and saves a new URL entry
      * <p>
-     * Note: If there is an expired entry in db, it will be overwritten with the new URL. This is done to reuse rows
+     * Note: If there is an expired entry queued by the reclaimer, it will be overwritten with the new URL. This is done
+     * to reuse rows
      *
      * @param url the url to save
      * @return the saved entry
      */
     private UrlEntity createAndSaveUrl(@NotNull String url) {
-        UrlEntity urlToSave;
-
-        // Get entries that expired and overwrite the entry in the database
-        UrlEntity foundUrl = urlRepository.findFirstByExpirationDateBefore(LocalDate.now());
-        if (foundUrl != null) {
-            foundUrl.setUrl(url);
-            foundUrl.setExpirationDate(UrlEntity.getDefaultExpirationDate());
-            urlToSave = foundUrl;
+        long start = System.nanoTime();
+        UrlEntity urlToSave = findReusableUrl();
+        metrics.record(Stage.REUSE_LOOKUP, start);
+        if (urlToSave != null) {
+            metrics.increment(Event.ROW_REUSED);
+            urlCache.invalidate(urlToSave.getKey());
+            clickService.clearClicks(urlToSave.getKey());
+            urlToSave.setUrl(url);
+            applyValidity(urlToSave);
         } else {
+            long keyStart = System.nanoTime();
             String key = getKey(url);
+            metrics.record(Stage.KEY_GENERATION, keyStart);
 
-            urlToSave = new UrlEntity(url, key);
+            urlToSave = newUrlEntity(url, key);
         }
+        return saveUrl(urlToSave);
+    }
+
+    /**
+     * Save a new or reused URL entry and keep the key filter, url store, expiry tracker and read routing up to date
+     *
+     * @param urlToSave the entry to save
+     * @return the saved entry
+     */
+    private UrlEntity saveUrl(@NotNull UrlEntity urlToSave) {
+        long saveStart = System.nanoTime();
         UrlEntity savedUrl = urlRepository.save(urlToSave);
+        keyFilter.add(savedUrl.getKey());
+        storeAfterCommit(savedUrl);
+        trackAfterCommit(savedUrl);
+        publishAfterCommit(savedUrl);
+        readRouting.recordWrite(savedUrl.getKey());
+        metrics.record(Stage.SAVE, saveStart);
 
         logger.debug("Successfully created new url: {}", savedUrl);
         return savedUrl;
     }
 
+    /**
+     * Get an expired entry to overwrite from the ids queued by the reclaimer
+     * <p>
+     * Note: queued entries which were deleted or extended in the meantime are skipped
+     *
+     * @return the expired entry or NULL if there is none queued
+     */
+    private UrlEntity findReusableUrl() {
+        for (Long id = reclaimer.poll(); id != null; id = reclaimer.poll()) {
+            UrlEntity foundUrl = urlRepository.findOne(id);
+            if (foundUrl != null && isUrlExpired(foundUrl)) {
+                return foundUrl;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get unique key to store for the url
      * <p>
+     * Note: keys of a collision free key service are used as they are, without a database check
      * Note: if there is a database collision with the key, it will try to generate a new one
      * Note: if it cannot generate the key in max 10 tries, it will throw an exception
      *
@@ -204,44 +1088,202 @@ public class UrlServiceImpl implements UrlService {
     private String getKey(String url) {
         // shorten the url
         String key = shortenService.shorten(url);
+        if (shortenService.isCollisionFree()) {
+            return key;
+        }
 
-        // Do database check to prevent key collisions
+        // Do database check to prevent key collisions, unless the key filter rules the key out
         // while key exists in the database, generate a new key by adding extra empty spaces at the end to the url
-        int maxTries = 10;
-        while (urlRepository.findByKey(key) != null) {
+        int triesLeft = MAX_KEY_TRIES;
+        while (keyFilter.mightContain(key) && keyExists(key)) {
             logger.debug("key {} already exists in database, generating a new one", key);
-            maxTries--;
+            metrics.increment(Event.KEY_COLLISION);
+            triesLeft--;
+            if (triesLeft <= 0) {
+                throw new UrlNotSavedException("Could not save the URL");
+            }
             url = url.concat(" ");
             key = shortenService.shorten(url);
-            if (maxTries <= 10)
-                throw new UrlNotSavedException("Could not save the URL");
         }
         return key;
     }
 
+    private boolean keyExists(String key) {
+        return shardRouting.onShard(shardRouting.shardOfKey(key), () -> urlRepository.findByKey(key) != null);
+    }
+
+    /**
+     * Get unique keys for a batch of urls
+     * <p>
+     * Note: unless the key service is collision free, the keys are checked against the database with one query and
+     * against each other, the colliding ones are generated again like in {@link #getKey(String)}
+     *
+     * @param urls the urls to shorten
+     * @return the url keys, in the same order
+     */
+    private List<String> getKeys(List<String> urls) {
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            keys.add(shortenService.shorten(url));
+        }
+        if (shortenService.isCollisionFree() || keys.isEmpty()) {
+            metrics.record(Stage.KEY_GENERATION, start);
+            return keys;
+        }
+
+        Set<String> takenKeys = new HashSet<>();
+        List<String> possiblyTakenKeys = keys.stream().filter(keyFilter::mightContain).collect(Collectors.toList());
+        if (!possiblyTakenKeys.isEmpty()) {
+            for (UrlEntity existingUrl : urlRepository.findByKeyIn(possiblyTakenKeys)) {
+                takenKeys.add(existingUrl.getKey());
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String url = urls.get(i);
+            String key = keys.get(i);
+            int triesLeft = MAX_KEY_TRIES;
+            // taken by an existing row or by an earlier url of the batch
+            while (!takenKeys.add(key)) {
+                metrics.increment(Event.KEY_COLLISION);
+                triesLeft--;
+                if (triesLeft <= 0) {
+                    throw new UrlNotSavedException("Could not save the URL");
+                }
+                url = url.concat(" ");
+                key = getKey(url);
+            }
+            keys.set(i, key);
+        }
+        metrics.record(Stage.KEY_GENERATION, start);
+        return keys;
+    }
+
     /**
-     * Update the epiration date and save the new entity.
+     * Update the epiration date to the default validity period and save the new entity.
      *
-     * @param urlEntity      the entity to change the expiration date
-     * @param expirationDate the new expiration date
+     * @param urlEntity the entity to change the expiration date
      * @return the saved entity
      */
-    private UrlEntity updateExpirationDateAndSaveUrl(@NotNull UrlEntity urlEntity, @NotNull LocalDate expirationDate) {
-        urlEntity.setExpirationDate(expirationDate);
+    private UrlEntity updateExpirationDateAndSaveUrl(@NotNull UrlEntity urlEntity) {
+        applyValidity(urlEntity);
         UrlEntity savedUrl = urlRepository.save(urlEntity);
+        urlCache.invalidate(savedUrl.getKey());
+        storeAfterCommit(savedUrl);
+        trackAfterCommit(savedUrl);
+        publishAfterCommit(savedUrl);
+        readRouting.recordWrite(savedUrl.getKey());
 
         logger.debug("Successfully updated expiration date for url: {}", savedUrl);
         return savedUrl;
     }
 
+    /**
+     * Copy an entry to the url store once the transaction commits, right away if there is none
+     * <p>
+     * Note: if the copy fails, the key is removed from the store, so it is read from the database instead
+     * Note: a row older than an invalidation received from another node is not copied, see
+     * {@link UrlCache#isInvalidated(String, long)}
+     *
+     * @param urlEntity the saved entry
+     */
+    private void storeAfterCommit(@NotNull UrlEntity urlEntity) {
+        if (urlStore == null) {
+            return;
+        }
+        UrlEntity copy = new UrlEntity(urlEntity.getUrl(), urlEntity.getKey(), urlEntity.getExpirationDate(),
+                urlEntity.getExpiresAt());
+        afterCommit(() -> {
+            // the store holds no version, so a row older than an invalidation of another node is not copied
+            long version = urlEntity.getVersion();
+            if (urlCache.isInvalidated(copy.getKey(), version)) {
+                return;
+            }
+            try {
+                urlStore.save(copy);
+            } catch (RuntimeException e) {
+                logger.warn("Could not copy url {} to the url store", copy.getKey(), e);
+                urlStore.deleteByKey(copy.getKey());
+                return;
+            }
+            // an invalidation applied during the save deleted the key before it was written
+            if (urlCache.isInvalidated(copy.getKey(), version)) {
+                urlStore.deleteByKey(copy.getKey());
+            }
+        });
+    }
+
+    /**
+     * Track the expiration of a saved entry once the transaction commits, see {@link UrlExpiryTracker}
+     *
+     * @param urlEntity the saved entry
+     */
+    private void trackAfterCommit(@NotNull UrlEntity urlEntity) {
+        String key = urlEntity.getKey();
+        LocalDate expirationDate = urlEntity.getExpirationDate();
+        long expiresAtMillis = urlEntity.getExpiresAtMillis();
+        afterCommit(() -> expiryTracker.track(key, expirationDate, expiresAtMillis));
+    }
+
+    /**
+     * Send the key of a saved entry to the other nodes once the transaction commits, see {@link UrlInvalidations}
+     * <p>
+     * Note: the version is read after the commit, once the flush incremented it
+     *
+     * @param urlEntity the saved entry
+     */
+    private void publishAfterCommit(@NotNull UrlEntity urlEntity) {
+        if (invalidations.isEnabled()) {
+            afterCommit(() -> invalidations.publish(urlEntity.getKey(), urlEntity.getVersion()));
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Note: the cursor of a single shard only holds the id, like before sharding
+     */
+    private String encodeCursor(long id, int shard) {
+        String position = shardRouting.isEnabled() ? id + ":" + shard : Long.toString(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the id and the shard of the position
+     */
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = position.indexOf(':');
+            if (separator < 0) {
+                return new long[]{Long.parseLong(position), 0};
+            }
+            return new long[]{Long.parseLong(position.substring(0, separator)),
+                    Integer.parseInt(position.substring(separator + 1))};
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+        }
+    }
+
     /**
      * If the URL is before
      *
      * @param urlEntity the url entity to check
-     * @return true if the url expiration date is before today
+     * @return true if the url expiration date is before today, or its finer expiration passed
      */
     private boolean isUrlExpired(@NotNull UrlEntity urlEntity) {
-        return urlEntity.getExpirationDate().isBefore(LocalDate.now());
+        return urlEntity.isExpired(System.currentTimeMillis());
     }
 
 }
@@ -0,0 +1,70 @@
+package com.mihai.shorturl.service.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation bus between the application contexts of one JVM, each context being a node, for tests.
+ * <p>
+ * Note: nodes on the same shorturl.invalidation.channel receive each other's batches, on the publishing thread
+ *
+ * @author Mihai Iusan
+ */
+@Component
+@ConditionalOnProperty(name = "shorturl.invalidation.bus", havingValue = "in-process")
+public class InProcessInvalidationBus implements InvalidationBus {
+    private static final Logger logger = LoggerFactory.getLogger(InProcessInvalidationBus.class);
+    private static final ConcurrentHashMap<String, Set<InProcessInvalidationBus>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private final List<Consumer<List<KeyInvalidation>>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public InProcessInvalidationBus(@Value("${shorturl.invalidation.channel:shorturl}") String channel) {
+        this.channel = channel;
+        CHANNELS.computeIfAbsent(channel, name -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public void publish(List<KeyInvalidation> invalidations) {
+        for (InProcessInvalidationBus node : CHANNELS.getOrDefault(channel, ConcurrentHashMap.newKeySet())) {
+            if (node != this) {
+                node.deliver(invalidations);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<List<KeyInvalidation>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    private void deliver(List<KeyInvalidation> invalidations) {
+        for (Consumer<List<KeyInvalidation>> subscriber : subscribers) {
+            try {
+                subscriber.accept(invalidations);
+            } catch (RuntimeException e) {
+                logger.warn("Could not apply {} invalidations", invalidations.size(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        CHANNELS.computeIfPresent(channel, (name, nodes) -> {
+            nodes.remove(this);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+}
@@ -0,0 +1,26 @@
+package com.mihai.shorturl.service.invalidation;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries the invalidations of a node to the other nodes which share its storage, selected with
+ * shorturl.invalidation.bus.
+ * <p>
+ * Note: a node does not receive its own invalidations
+ * Note: delivery may be lossy or reordered, the receivers compare versions, see {@link KeyInvalidation}
+ *
+ * @author Mihai Iusan
+ */
+public interface InvalidationBus {
+
+    /**
+     * @param invalidations a batch of invalidations of this node
+     */
+    void publish(List<KeyInvalidation> invalidations);
+
+    /**
+     * @param subscriber receives the batches of the other nodes, on a thread of the bus
+     */
+    void subscribe(Consumer<List<KeyInvalidation>> subscriber);
+}
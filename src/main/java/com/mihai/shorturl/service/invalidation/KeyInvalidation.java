@@ -0,0 +1,53 @@
+package com.mihai.shorturl.service.invalidation;
+
+import javax.validation.constraints.NotNull;
+import java.util.Objects;
+
+/**
+ * A key whose row was changed or deleted by a node, with the version of the row after the change.
+ * <p>
+ * Note: the version of a deleted row is one more than its last version, so every copy of the row is older
+ *
+ * @author Mihai Iusan
+ */
+public final class KeyInvalidation {
+    private final String key;
+    private final long version;
+
+    public KeyInvalidation(@NotNull final String key, final long version) {
+        Objects.requireNonNull(key);
+
+        this.key = key;
+        this.version = version;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        KeyInvalidation that = (KeyInvalidation) o;
+        return version == that.version && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, version);
+    }
+
+    @Override
+    public String toString() {
+        return "KeyInvalidation { key='" + key + ", version=" + version + '}';
+    }
+}
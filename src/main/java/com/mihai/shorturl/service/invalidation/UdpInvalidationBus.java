@@ -0,0 +1,237 @@
+package com.mihai.shorturl.service.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation bus over UDP datagrams sent to a fixed list of peers, meant for nodes on one machine or one network.
+ * <p>
+ * Note: the layout of a datagram is [magic][sender id (8)][count (2)] and the entries [key length (2)][key]
+ * [version (8)]; a batch takes as many datagrams as it needs
+ * Note: datagrams may be lost, a lost invalidation leaves a peer stale until the entry expires or is invalidated
+ * again, which is why it suits loopback and reliable networks
+ * Note: datagrams carrying the id of this node, like those sent to itself, are dropped
+ *
+ * @author Mihai Iusan
+ */
+@Component
+@ConditionalOnProperty(name = "shorturl.invalidation.bus", havingValue = "udp")
+public class UdpInvalidationBus implements InvalidationBus, PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(UdpInvalidationBus.class);
+    private static final int MAGIC = 0x5553494E;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Short.BYTES;
+    private static final int ENTRY_OVERHEAD_BYTES = Short.BYTES + Long.BYTES;
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final int maxPacketBytes;
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<List<KeyInvalidation>>> subscribers = new CopyOnWriteArrayList<>();
+    private final Thread receiver;
+    private final LongAdder sentPackets = new LongAdder();
+    private final LongAdder receivedPackets = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+
+    /**
+     * @param address        the address to receive on
+     * @param port           the port to receive on, 0 for any free port
+     * @param peers          the host:port of the other nodes, comma separated
+     * @param maxPacketBytes the max size of a datagram, below the MTU so it is not fragmented
+     */
+    @Autowired
+    public UdpInvalidationBus(@Value("${shorturl.invalidation.udp.address:127.0.0.1}") String address,
+                              @Value("${shorturl.invalidation.udp.port:0}") int port,
+                              @Value("${shorturl.invalidation.udp.peers:}") String peers,
+                              @Value("${shorturl.invalidation.udp.max-packet-bytes:1400}") int maxPacketBytes) {
+        this.maxPacketBytes = maxPacketBytes;
+        for (String peer : StringUtils.commaDelimitedListToStringArray(peers)) {
+            String hostAndPort = peer.trim();
+            int separator = hostAndPort.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalidation peers must be host:port, got: " + hostAndPort);
+            }
+            addPeer(new InetSocketAddress(hostAndPort.substring(0, separator),
+                    Integer.parseInt(hostAndPort.substring(separator + 1))));
+        }
+        try {
+            this.socket = new DatagramSocket(new InetSocketAddress(address, port));
+        } catch (SocketException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.receiver = new Thread(this::receive, "invalidation-udp");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        logger.info("Receiving invalidations on {}, sending them to {}", socket.getLocalSocketAddress(), this.peers);
+    }
+
+    /**
+     * @param peer the address of another node
+     */
+    public void addPeer(InetSocketAddress peer) {
+        peers.add(peer);
+    }
+
+    /**
+     * @return the port invalidations are received on
+     */
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void publish(List<KeyInvalidation> invalidations) {
+        for (byte[] datagram : encode(nodeId, invalidations, maxPacketBytes)) {
+            for (InetSocketAddress peer : peers) {
+                try {
+                    socket.send(new DatagramPacket(datagram, datagram.length, peer));
+                    sentPackets.increment();
+                } catch (IOException e) {
+                    sendFailures.increment();
+                    logger.warn("Could not send invalidations to {}", peer, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<List<KeyInvalidation>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[0xFFFF];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("Could not receive invalidations", e);
+                }
+                continue;
+            }
+            ByteBuffer datagram = ByteBuffer.wrap(buffer, 0, packet.getLength());
+            if (datagram.remaining() < HEADER_BYTES || datagram.getInt() != MAGIC || datagram.getLong() == nodeId) {
+                droppedPackets.increment();
+                continue;
+            }
+            List<KeyInvalidation> invalidations = decode(datagram);
+            if (invalidations == null) {
+                droppedPackets.increment();
+                continue;
+            }
+            receivedPackets.increment();
+            for (Consumer<List<KeyInvalidation>> subscriber : subscribers) {
+                try {
+                    subscriber.accept(invalidations);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not apply {} invalidations", invalidations.size(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param sender         the id of the sending node
+     * @param invalidations  the invalidations
+     * @param maxPacketBytes the max size of a datagram
+     * @return the datagrams, in order
+     */
+    static List<byte[]> encode(long sender, List<KeyInvalidation> invalidations, int maxPacketBytes) {
+        List<byte[]> datagrams = new ArrayList<>();
+        ByteBuffer datagram = null;
+        int count = 0;
+        for (KeyInvalidation invalidation : invalidations) {
+            byte[] key = invalidation.getKey().getBytes(StandardCharsets.UTF_8);
+            int entryBytes = ENTRY_OVERHEAD_BYTES + key.length;
+            if (HEADER_BYTES + entryBytes > maxPacketBytes) {
+                logger.warn("Key {} is too long to be sent as an invalidation", invalidation.getKey());
+                continue;
+            }
+            if (datagram == null || datagram.remaining() < entryBytes || count == Short.MAX_VALUE) {
+                if (datagram != null) {
+                    datagrams.add(finish(datagram, count));
+                }
+                datagram = ByteBuffer.allocate(maxPacketBytes);
+                datagram.putInt(MAGIC).putLong(sender).putShort((short) 0);
+                count = 0;
+            }
+            datagram.putShort((short) key.length).put(key).putLong(invalidation.getVersion());
+            count++;
+        }
+        if (datagram != null) {
+            datagrams.add(finish(datagram, count));
+        }
+        return datagrams;
+    }
+
+    private static byte[] finish(ByteBuffer datagram, int count) {
+        datagram.putShort(Integer.BYTES + Long.BYTES, (short) count);
+        byte[] bytes = new byte[datagram.position()];
+        datagram.flip();
+        datagram.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param datagram the datagram, positioned after the magic and the sender id
+     * @return the invalidations, or NULL if the datagram is malformed
+     */
+    static List<KeyInvalidation> decode(ByteBuffer datagram) {
+        try {
+            int count = datagram.getShort();
+            List<KeyInvalidation> invalidations = new ArrayList<>(Math.max(0, count));
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[datagram.getShort() & 0xFFFF];
+                datagram.get(key);
+                invalidations.add(new KeyInvalidation(new String(key, StandardCharsets.UTF_8), datagram.getLong()));
+            }
+            return count < 0 || datagram.hasRemaining() ? null : invalidations;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        socket.close();
+        receiver.join(1000);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("invalidation.udp.sent", sentPackets.sum()));
+        metrics.add(new Metric<>("invalidation.udp.received", receivedPackets.sum()));
+        metrics.add(new Metric<>("invalidation.udp.dropped", droppedPackets.sum()));
+        metrics.add(new Metric<>("invalidation.udp.send.failures", sendFailures.sum()));
+        return metrics;
+    }
+}
@@ -0,0 +1,186 @@
+package com.mihai.shorturl.service.invalidation;
+
+import com.mihai.shorturl.repository.UrlStore;
+import com.mihai.shorturl.service.cache.KeyFilter;
+import com.mihai.shorturl.service.cache.UrlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the keys written by this node to the other nodes through the {@link InvalidationBus}, and applies theirs to
+ * the per-node caches: the url cache, the url store and the key filter.
+ * <p>
+ * Note: the writes are queued and sent by a single thread, a batch takes what is queued, up to max-batch keys, and
+ * keeps only the highest version of each key
+ * Note: the url cache only drops entries older than the received version, see {@link UrlCache#invalidateOlderThan}
+ * Note: the url store holds no version, its copy of a key is dropped unless the row is new (version 0); rows read
+ * afterwards are only copied back to it if they are not older than the received version
+ * Note: without a bus, nothing is queued
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class UrlInvalidations implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(UrlInvalidations.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final InvalidationBus bus;
+    private final UrlCache urlCache;
+    private final KeyFilter keyFilter;
+    private final UrlStore urlStore;
+    private final BlockingQueue<KeyInvalidation> queue;
+    private final int maxBatch;
+    private final Thread sender;
+    private volatile boolean running;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    @Autowired
+    public UrlInvalidations(ObjectProvider<InvalidationBus> bus, UrlCache urlCache, KeyFilter keyFilter,
+                            ObjectProvider<UrlStore> urlStore,
+                            @Value("${shorturl.invalidation.queue-size:100000}") int queueSize,
+                            @Value("${shorturl.invalidation.max-batch:256}") int maxBatch) {
+        this.bus = bus.getIfAvailable();
+        this.urlCache = urlCache;
+        this.keyFilter = keyFilter;
+        this.urlStore = urlStore.getIfAvailable();
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatch = maxBatch;
+        if (this.bus == null) {
+            this.sender = null;
+            return;
+        }
+        this.bus.subscribe(this::apply);
+        this.running = true;
+        this.sender = new Thread(this::run, "invalidation-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+        logger.info("Sending and receiving url invalidations through {}", this.bus.getClass().getSimpleName());
+    }
+
+    public boolean isEnabled() {
+        return bus != null;
+    }
+
+    /**
+     * Queue a written key for the other nodes, call it once the write committed
+     *
+     * @param key     the key
+     * @param version the version of the row after the write, one more than the last one for a deleted row
+     */
+    public void publish(String key, long version) {
+        if (bus == null) {
+            return;
+        }
+        if (!queue.offer(new KeyInvalidation(key, version))) {
+            dropped.increment();
+            logger.warn("Invalidation queue full, the other nodes may serve key {} until it expires", key);
+        }
+    }
+
+    /**
+     * Queue several written keys, see {@link #publish(String, long)}
+     */
+    public void publishAll(Collection<String> keys, long version) {
+        for (String key : keys) {
+            publish(key, version);
+        }
+    }
+
+    private void run() {
+        List<KeyInvalidation> drained = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                KeyInvalidation first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(drained, maxBatch - 1);
+            send(drained);
+            drained.clear();
+        }
+    }
+
+    private void send(List<KeyInvalidation> drained) {
+        Map<String, Long> versions = new LinkedHashMap<>();
+        for (KeyInvalidation invalidation : drained) {
+            versions.merge(invalidation.getKey(), invalidation.getVersion(), Math::max);
+        }
+        List<KeyInvalidation> batch = new ArrayList<>(versions.size());
+        versions.forEach((key, version) -> batch.add(new KeyInvalidation(key, version)));
+        try {
+            bus.publish(batch);
+            published.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException e) {
+            dropped.add(batch.size());
+            logger.warn("Could not send {} invalidations", batch.size(), e);
+        }
+    }
+
+    /**
+     * Apply a batch of another node
+     */
+    private void apply(List<KeyInvalidation> batch) {
+        for (KeyInvalidation invalidation : batch) {
+            String key = invalidation.getKey();
+            received.increment();
+            if (urlCache.invalidateOlderThan(key, invalidation.getVersion())) {
+                invalidated.increment();
+            }
+            if (urlStore != null && invalidation.getVersion() > 0) {
+                urlStore.deleteByKey(key);
+            }
+            keyFilter.add(key);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (sender != null) {
+            running = false;
+            sender.join(IDLE_POLL_MILLIS * 10);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        if (bus == null) {
+            return metrics;
+        }
+        metrics.add(new Metric<>("invalidation.queued", queue.size()));
+        metrics.add(new Metric<>("invalidation.published", published.sum()));
+        metrics.add(new Metric<>("invalidation.batches", batches.sum()));
+        metrics.add(new Metric<>("invalidation.dropped", dropped.sum()));
+        metrics.add(new Metric<>("invalidation.received", received.sum()));
+        metrics.add(new Metric<>("invalidation.invalidated", invalidated.sum()));
+        return metrics;
+    }
+}
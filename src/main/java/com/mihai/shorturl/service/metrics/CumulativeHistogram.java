@@ -0,0 +1,60 @@
+package com.mihai.shorturl.service.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of all the values recorded since startup.
+ * <p>
+ * Note: values are recorded into a {@link Recorder}, which is wait-free and does not allocate; readers move the
+ * values recorded since the last read into the total
+ * Note: values above the highest trackable value are recorded as the highest trackable value; the sum keeps their
+ * exact value
+ *
+ * @author Mihai Iusan
+ */
+public final class CumulativeHistogram {
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+    private final Recorder recorder;
+    private final Histogram total;
+    private final LongAdder sum = new LongAdder();
+    private Histogram interval;
+
+    /**
+     * @param highestTrackableValue the highest value which is told apart from larger ones
+     */
+    public CumulativeHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = highestTrackableValue;
+        this.recorder = new Recorder(highestTrackableValue, SIGNIFICANT_DIGITS);
+        this.total = new Histogram(highestTrackableValue, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long recordedValue = Math.max(value, 0);
+        recorder.recordValue(Math.min(recordedValue, highestTrackableValue));
+        sum.add(recordedValue);
+    }
+
+    /**
+     * @return the exact sum of the values recorded so far
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return a copy of the values recorded so far
+     */
+    public synchronized Histogram snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return total.copy();
+    }
+}
@@ -0,0 +1,24 @@
+package com.mihai.shorturl.service.metrics;
+
+/**
+ * The classes of HTTP requests which are measured separately.
+ *
+ * @author Mihai Iusan
+ */
+public enum Endpoint {
+    CREATE("create"),
+    BATCH_CREATE("batch_create"),
+    REDIRECT("redirect"),
+    BATCH_RESOLVE("batch_resolve"),
+    OTHER("other");
+
+    private final String label;
+
+    Endpoint(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
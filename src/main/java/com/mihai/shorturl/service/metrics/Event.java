@@ -0,0 +1,43 @@
+package com.mihai.shorturl.service.metrics;
+
+/**
+ * The counted outcomes of creating and resolving urls.
+ *
+ * @author Mihai Iusan
+ */
+public enum Event {
+    /**
+     * A created url already had an entry
+     */
+    DEDUPE_HIT("dedupe_hits"),
+    /**
+     * A create waited for a concurrent create of the same url instead of running its own
+     */
+    CREATE_COALESCED("creates_coalesced"),
+    /**
+     * A create lost an insert race on a unique column and read the winning entry again
+     */
+    CREATE_RACE("create_races"),
+    /**
+     * An expired entry was overwritten instead of inserting a new one
+     */
+    ROW_REUSED("rows_reused"),
+    /**
+     * A generated key was taken and had to be generated again
+     */
+    KEY_COLLISION("key_collisions"),
+    /**
+     * A key did not resolve, because it does not exist or it expired
+     */
+    NOT_FOUND("not_found");
+
+    private final String label;
+
+    Event(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
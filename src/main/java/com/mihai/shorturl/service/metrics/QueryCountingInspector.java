@@ -0,0 +1,41 @@
+package com.mihai.shorturl.service.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on each thread, so the queries of a request can be counted.
+ * <p>
+ * Note: registered with hibernate.session_factory.statement_inspector, Hibernate creates the instance itself
+ * Note: statements run through JdbcTemplate are not counted
+ *
+ * @author Mihai Iusan
+ */
+public class QueryCountingInspector implements StatementInspector {
+    /**
+     * Request attribute with the statements an async request prepared off its request thread, as an AtomicLong
+     * which the request thread puts before going async
+     */
+    public static final String ASYNC_COUNT_ATTRIBUTE = QueryCountingInspector.class.getName() + ".ASYNC_COUNT";
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Start counting from 0 on the current thread
+     */
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    /**
+     * @return the statements prepared on the current thread since the last reset
+     */
+    public static long count() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,122 @@
+package com.mihai.shorturl.service.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the create and resolve stages and of the HTTP requests, outcome counters and the number of
+ * queries per request.
+ * <p>
+ * Note: recording does not allocate or lock, so it stays on under full load
+ * Note: latencies are kept in microseconds, up to one minute
+ *
+ * @author Mihai Iusan
+ */
+@Component
+public class ServiceMetrics {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final long MAX_QUERIES = 100000;
+
+    private final CumulativeHistogram[] stageLatencies = new CumulativeHistogram[Stage.values().length];
+    private final LongAdder[] events = new LongAdder[Event.values().length];
+    private final CumulativeHistogram[] requestLatencies = new CumulativeHistogram[Endpoint.values().length];
+    private final CumulativeHistogram[] requestQueries = new CumulativeHistogram[Endpoint.values().length];
+
+    public ServiceMetrics() {
+        for (int i = 0; i < stageLatencies.length; i++) {
+            stageLatencies[i] = new CumulativeHistogram(MAX_LATENCY_MICROS);
+        }
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new LongAdder();
+        }
+        for (int i = 0; i < requestLatencies.length; i++) {
+            requestLatencies[i] = new CumulativeHistogram(MAX_LATENCY_MICROS);
+            requestQueries[i] = new CumulativeHistogram(MAX_QUERIES);
+        }
+    }
+
+    /**
+     * Record the time spent in a stage until now
+     *
+     * @param stage      the stage
+     * @param startNanos the {@link System#nanoTime()} at the start of the stage
+     */
+    public void record(Stage stage, long startNanos) {
+        stageLatencies[stage.ordinal()].record(elapsedMicros(startNanos));
+    }
+
+    /**
+     * @param event the event to count
+     */
+    public void increment(Event event) {
+        events[event.ordinal()].increment();
+    }
+
+    /**
+     * Record a finished HTTP request
+     *
+     * @param endpoint   the class of the request
+     * @param startNanos the {@link System#nanoTime()} at the start of the request
+     * @param queries    the number of queries it ran
+     */
+    public void recordRequest(Endpoint endpoint, long startNanos, long queries) {
+        requestLatencies[endpoint.ordinal()].record(elapsedMicros(startNanos));
+        requestQueries[endpoint.ordinal()].record(queries);
+    }
+
+    /**
+     * @return the latencies of the stage in microseconds
+     */
+    public Histogram getStageLatencies(Stage stage) {
+        return stageLatencies[stage.ordinal()].snapshot();
+    }
+
+    /**
+     * @return the exact sum of the latencies of the stage in microseconds
+     */
+    public long getStageLatencySum(Stage stage) {
+        return stageLatencies[stage.ordinal()].getSum();
+    }
+
+    /**
+     * @return the number of times the event happened
+     */
+    public long getEvents(Event event) {
+        return events[event.ordinal()].sum();
+    }
+
+    /**
+     * @return the latencies of the requests in microseconds
+     */
+    public Histogram getRequestLatencies(Endpoint endpoint) {
+        return requestLatencies[endpoint.ordinal()].snapshot();
+    }
+
+    /**
+     * @return the exact sum of the latencies of the requests in microseconds
+     */
+    public long getRequestLatencySum(Endpoint endpoint) {
+        return requestLatencies[endpoint.ordinal()].getSum();
+    }
+
+    /**
+     * @return the number of queries of the requests
+     */
+    public Histogram getRequestQueries(Endpoint endpoint) {
+        return requestQueries[endpoint.ordinal()].snapshot();
+    }
+
+    /**
+     * @return the exact number of queries of all the requests
+     */
+    public long getRequestQuerySum(Endpoint endpoint) {
+        return requestQueries[endpoint.ordinal()].getSum();
+    }
+
+    private static long elapsedMicros(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,71 @@
+package com.mihai.shorturl.service.metrics;
+
+/**
+ * The timed stages of creating and resolving urls.
+ *
+ * @author Mihai Iusan
+ */
+public enum Stage {
+    /**
+     * Normalizing the url and running the verifiers
+     */
+    VERIFY("verify"),
+    /**
+     * Looking up an existing entry of the url
+     */
+    DEDUPE_LOOKUP("dedupe_lookup"),
+    /**
+     * Looking up an expired entry to overwrite
+     */
+    REUSE_LOOKUP("reuse_lookup"),
+    /**
+     * Generating a key, including the collision checks
+     */
+    KEY_GENERATION("key_generation"),
+    /**
+     * Saving a new or reused entry
+     */
+    SAVE("save"),
+    /**
+     * Inserting the new entries of a batch chunk
+     */
+    BATCH_INSERT("batch_insert"),
+    /**
+     * Writing a batch of queued creates in one transaction, including the commit
+     */
+    GROUP_COMMIT("group_commit"),
+    /**
+     * Loading a key from the database on a cache miss
+     */
+    KEY_LOOKUP("key_lookup"),
+    /**
+     * Loading the keys of a multi-key resolve which missed the cache from the database, with one query per shard
+     */
+    BULK_KEY_LOOKUP("bulk_key_lookup"),
+    /**
+     * Looking up a key in the url store before the database
+     */
+    STORE_LOOKUP("store_lookup"),
+    /**
+     * A whole create, without the commit
+     */
+    CREATE("create"),
+    /**
+     * A whole resolve, through the cache
+     */
+    RESOLVE("resolve"),
+    /**
+     * A whole multi-key resolve, through the cache
+     */
+    RESOLVE_ALL("resolve_all");
+
+    private final String label;
+
+    Stage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
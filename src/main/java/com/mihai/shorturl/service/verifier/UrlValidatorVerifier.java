@@ -8,11 +8,12 @@ import org.springframework.stereotype.Component;
 @Component
 public class UrlValidatorVerifier implements UrlVerifier {
     private static final Logger LOGGER = LoggerFactory.getLogger(UrlValidatorVerifier.class);
+    // Immutable and thread safe, shared by all the calls
+    private static final UrlValidator URL_VALIDATOR = UrlValidator.getInstance();
 
     @Override
     public final boolean isSafe(final String url) {
-        LOGGER.debug("Validating URL: " + url);
-        UrlValidator urlValidator = new UrlValidator();
-        return urlValidator.isValid(url);
+        LOGGER.debug("Validating URL: {}", url);
+        return URL_VALIDATOR.isValid(url);
     }
 }
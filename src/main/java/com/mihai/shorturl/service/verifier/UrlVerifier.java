@@ -2,4 +2,11 @@ package com.mihai.shorturl.service.verifier;
 
 public interface UrlVerifier {
     public boolean isSafe(String url);
+
+    /**
+     * @return how long the verifier may take before the url is rejected, 0 or less for the default timeout
+     */
+    default long getTimeoutMillis() {
+        return 0;
+    }
 }
@@ -1,32 +1,211 @@
 package com.mihai.shorturl.service.verifier;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
+/**
+ * Runs all the verifiers on an url and keeps the recent verdicts.
+ * <p>
+ * Note: the verifiers run concurrently on a bounded pool, the url is rejected as soon as one of them rejects it; a
+ * single verifier runs on the pool as well, so its timeout is enforced
+ * Note: a verifier which fails rejects the url; a verifier which does not answer within its timeout or cannot be
+ * scheduled gives no verdict, the request fails with a {@link ServiceOverloadedException}; neither is cached
+ *
+ * @author Mihai Iusan
+ */
 @Component
-public class UrlVerifiers {
+public class UrlVerifiers implements PublicMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(UrlVerifiers.class);
+    private static final int QUEUED_TASKS_PER_THREAD = 64;
+
     private final List<UrlVerifier> verifiers;
+    private final String[] names;
+    private final long[] timeoutNanos;
+    private final LongAdder[] calls;
+    private final LongAdder[] nanos;
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final Cache<String, Boolean> verdicts;
+    private final ThreadPoolExecutor executor;
 
     @Autowired
-    public UrlVerifiers(List<UrlVerifier> vrfrs) {
-        this.verifiers = vrfrs;
+    public UrlVerifiers(List<UrlVerifier> vrfrs,
+                        @Value("${shorturl.verifier.timeout-ms:2000}") long timeoutMillis,
+                        @Value("${shorturl.verifier.threads:8}") int threads,
+                        @Value("${shorturl.verifier.cache.maximum-size:10000}") long cacheSize,
+                        @Value("${shorturl.verifier.cache.expire-after-write-seconds:600}") long cacheSeconds) {
+        this.verifiers = vrfrs.stream().filter(Objects::nonNull).collect(Collectors.toList());
+
+        int count = verifiers.size();
+        this.names = new String[count];
+        this.timeoutNanos = new long[count];
+        this.calls = new LongAdder[count];
+        this.nanos = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            UrlVerifier verifier = verifiers.get(i);
+            long verifierTimeout = verifier.getTimeoutMillis() > 0 ? verifier.getTimeoutMillis() : timeoutMillis;
+            this.names[i] = ClassUtils.getUserClass(verifier).getSimpleName();
+            this.timeoutNanos[i] = TimeUnit.MILLISECONDS.toNanos(verifierTimeout);
+            this.calls[i] = new LongAdder();
+            this.nanos[i] = new LongAdder();
+        }
+
+        this.verdicts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("url-verifier-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_TASKS_PER_THREAD), threadFactory);
     }
 
+    /**
+     * Check the url with all the verifiers
+     *
+     * @param url the normalized url
+     * @return true if every verifier considers it safe
+     * @throws ServiceOverloadedException if a verifier timed out or the pool is full
+     */
     public boolean isSafe(String url) {
-        boolean safe = true;
-
-        for (UrlVerifier verifier : verifiers) {
-            if (verifier != null) {
-                boolean isValidByProvider = verifier.isSafe(url);
-                if (!isValidByProvider) {
-                    safe = false;
-                    break;
+        Boolean verdict = verdicts.getIfPresent(url);
+        if (verdict != null) {
+            return verdict;
+        }
+
+        verdict = verifyConcurrently(url);
+        if (verdict == null) {
+            return false;
+        }
+        verdicts.put(url, verdict);
+        return verdict;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the verdict, or NULL if a verifier failed
+     */
+    private Boolean verifyConcurrently(String url) {
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Boolean>> futures = new ArrayList<>(verifiers.size());
+        long[] deadlines = new long[verifiers.size()];
+        try {
+            for (int i = 0; i < verifiers.size(); i++) {
+                final int index = i;
+                deadlines[i] = System.nanoTime() + timeoutNanos[i];
+                futures.add(completionService.submit(() -> verify(index, url)));
+            }
+
+            for (int pending = futures.size(); pending > 0; pending--) {
+                Future<Boolean> done = completionService.poll(nanosUntilNextDeadline(futures, deadlines), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    timeouts.increment();
+                    logger.warn("Verifier {} timed out for url {}", names[firstPending(futures)], url);
+                    throw new ServiceOverloadedException("The URL could not be verified in time, try again later");
+                }
+                if (!done.get()) {
+                    return false;
                 }
             }
+            return true;
+        } catch (ExecutionException e) {
+            failures.increment();
+            logger.warn("Verifying url {} failed", url, e);
+            return null;
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new ServiceOverloadedException("Too many URLs are being verified, try again later", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceOverloadedException("Interrupted while verifying the URL", e);
+        } finally {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private boolean verify(int index, String url) {
+        long start = System.nanoTime();
+        try {
+            return verifiers.get(index).isSafe(url);
+        } finally {
+            calls[index].increment();
+            nanos[index].add(System.nanoTime() - start);
+        }
+    }
+
+    private static long nanosUntilNextDeadline(List<Future<Boolean>> futures, long[] deadlines) {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        for (int i = 0; i < futures.size(); i++) {
+            if (!futures.get(i).isDone()) {
+                wait = Math.min(wait, deadlines[i] - now);
+            }
+        }
+        // all of them are done, the next poll returns at once
+        return wait == Long.MAX_VALUE ? 0 : Math.max(0, wait);
+    }
+
+    private static int firstPending(List<Future<Boolean>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            if (!futures.get(i).isDone()) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (int i = 0; i < verifiers.size(); i++) {
+            long count = calls[i].sum();
+            metrics.add(new Metric<>("verifier." + names[i] + ".calls", count));
+            metrics.add(new Metric<>("verifier." + names[i] + ".mean.ms", count == 0 ? 0.0 : nanos[i].sum() / 1e6 / count));
         }
+        metrics.add(new Metric<>("verifier.timeouts", timeouts.sum()));
+        metrics.add(new Metric<>("verifier.failures", failures.sum()));
+        metrics.add(new Metric<>("verifier.rejections", rejections.sum()));
 
-        return safe;
+        CacheStats stats = verdicts.stats();
+        metrics.add(new Metric<>("verifier.cache.hits", stats.hitCount()));
+        metrics.add(new Metric<>("verifier.cache.misses", stats.missCount()));
+        metrics.add(new Metric<>("verifier.cache.hit.ratio", stats.hitRate()));
+        return metrics;
     }
 }
@@ -0,0 +1,33 @@
+package com.mihai.shorturl.api;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncCompletionTests {
+
+	@Test
+	public void runsRightAwayForARequestWhichDidNotGoAsync() {
+		AtomicInteger runs = new AtomicInteger();
+		AsyncCompletion.whenComplete(new MockHttpServletRequest(), runs::incrementAndGet);
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void runsOnceTheAsyncRequestCompletes() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAsyncSupported(true);
+		request.startAsync(request, new MockHttpServletResponse());
+		AtomicInteger runs = new AtomicInteger();
+
+		AsyncCompletion.whenComplete(request, runs::incrementAndGet);
+		assertEquals(0, runs.get());
+
+		request.getAsyncContext().complete();
+		assertEquals(1, runs.get());
+	}
+}
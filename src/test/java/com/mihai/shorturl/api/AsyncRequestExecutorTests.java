@@ -0,0 +1,123 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.admission.AdmissionControl;
+import com.mihai.shorturl.service.metrics.Endpoint;
+import com.mihai.shorturl.service.metrics.ServiceMetrics;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:hsqldb:mem:asyncRequestExecutorTests",
+		"shorturl.async.enabled=true",
+		"shorturl.async.db-threads=1",
+		"shorturl.async.queue-size=1",
+		"shorturl.async.timeout-ms=60000"})
+@AutoConfigureMockMvc
+public class AsyncRequestExecutorTests {
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AsyncRequestExecutor asyncRequestExecutor;
+
+	@Autowired
+	private AdmissionControl admissionControl;
+
+	@Autowired
+	private ServiceMetrics serviceMetrics;
+
+	@After
+	public void releaseThePool() {
+		release.countDown();
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void admissionAndMetricsAreReleasedOnceTheAsyncRequestCompletes() throws Exception {
+		long redirects = serviceMetrics.getRequestLatencies(Endpoint.REDIRECT).getTotalCount();
+
+		MvcResult result = mockMvc.perform(get("/redirect/completedKey"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertEquals(1L, metric(admissionControl, "admission.reads.in.flight"));
+		assertEquals(redirects, serviceMetrics.getRequestLatencies(Endpoint.REDIRECT).getTotalCount());
+
+		// the dispatch completes the async context, like the container does
+		mockMvc.perform(asyncDispatch(result)).andExpect(status().isNotFound());
+		assertEquals(0L, metric(admissionControl, "admission.reads.in.flight"));
+		assertEquals(redirects + 1, serviceMetrics.getRequestLatencies(Endpoint.REDIRECT).getTotalCount());
+	}
+
+	@Test
+	public void requestsBeyondTheQueueOrPastTheirTimeoutAreOverloaded() throws Exception {
+		occupyThePool();
+		MvcResult queued = mockMvc.perform(get("/redirect/queuedKey"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		long rejected = metric(asyncRequestExecutor, "async.db.rejected");
+
+		mockMvc.perform(get("/redirect/rejectedKey")).andExpect(status().isServiceUnavailable());
+		assertEquals(rejected + 1, metric(asyncRequestExecutor, "async.db.rejected"));
+
+		MockAsyncContext asyncContext = (MockAsyncContext) queued.getRequest().getAsyncContext();
+		for (AsyncListener listener : asyncContext.getListeners()) {
+			listener.onTimeout(new AsyncEvent(asyncContext));
+		}
+		mockMvc.perform(asyncDispatch(queued)).andExpect(status().isServiceUnavailable());
+		assertEquals(1L, metric(asyncRequestExecutor, "async.db.timeouts"));
+		assertEquals(0L, metric(admissionControl, "admission.reads.in.flight"));
+	}
+
+	private void occupyThePool() throws InterruptedException {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		asyncRequestExecutor.submit(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		});
+		RequestContextHolder.resetRequestAttributes();
+		for (int i = 0; metric(asyncRequestExecutor, "async.db.active") == 0; i++) {
+			if (i == 100) {
+				fail("The pool did not pick up the blocking work");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static long metric(PublicMetrics metrics, String name) {
+		return metrics.metrics().stream()
+				.filter(metric -> metric.getName().equals(name))
+				.findFirst()
+				.map(metric -> metric.getValue().longValue())
+				.orElseThrow(() -> new AssertionError("No metric " + name));
+	}
+}
@@ -0,0 +1,128 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.service.metrics.Endpoint;
+import com.mihai.shorturl.service.metrics.ServiceMetrics;
+import com.mihai.shorturl.service.metrics.Stage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:hsqldb:mem:prometheusTests")
+@AutoConfigureMockMvc
+public class PrometheusControllerTests {
+	private static final Pattern TYPE = Pattern.compile("# TYPE (shorturl_\\w+) (counter|gauge|summary)");
+	private static final Pattern SAMPLE =
+			Pattern.compile("(shorturl_\\w+?)(_sum|_count)?(\\{[^}]*})? (-?[0-9.]+(E-?[0-9]+)?|NaN|[+-]Inf)");
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	public void scrapeIsValidExpositionText() throws Exception {
+		mockMvc.perform(post("/url/")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.param("longUrl", "https://scraped.example.com"))
+				.andExpect(status().isOk());
+
+		String scrape = mockMvc.perform(get("/prometheus"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		Map<String, Double> samples = parse(scrape);
+
+		assertEquals(1.0, samples.get("shorturl_request_latency_seconds_count{endpoint=\"create\"}"), 0);
+		assertTrue(samples.get("shorturl_request_latency_seconds_sum{endpoint=\"create\"}") > 0);
+		assertTrue(samples.containsKey("shorturl_cache_urls_size"));
+	}
+
+	@Test
+	public void summariesHaveExactSumsAndGaugesAreTyped() throws Exception {
+		ServiceMetrics serviceMetrics = new ServiceMetrics();
+		long now = System.nanoTime();
+		serviceMetrics.recordRequest(Endpoint.REDIRECT, now, 3);
+		serviceMetrics.recordRequest(Endpoint.REDIRECT, now, 1_000_003);
+		serviceMetrics.recordRequest(Endpoint.REDIRECT, now, 7);
+		PublicMetrics publicMetrics = () -> Arrays.asList(
+				new Metric<>("cache.size", 12),
+				new Metric<>("cache-size", 13),
+				new Metric<>("clicks.flush.lag.ms", Double.POSITIVE_INFINITY));
+		PrometheusController controller = new PrometheusController(serviceMetrics, Collections.singletonList(publicMetrics));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		controller.scrape(response);
+		Map<String, Double> samples = parse(response.getContentAsString());
+
+		// above the highest trackable value of the histogram, the sum is still exact
+		assertEquals(1_000_013.0, samples.get("shorturl_request_queries_sum{endpoint=\"redirect\"}"), 0);
+		assertEquals(3.0, samples.get("shorturl_request_queries_count{endpoint=\"redirect\"}"), 0);
+		assertEquals(0.0, samples.get("shorturl_stage_latency_seconds_sum{stage=\"" + Stage.SAVE.getLabel() + "\"}"), 0);
+		assertEquals(12.0, samples.get("shorturl_cache_size"), 0);
+		assertEquals(Double.POSITIVE_INFINITY, samples.get("shorturl_clicks_flush_lag_ms"), 0);
+		assertTrue(response.getContentAsString().contains("# TYPE shorturl_cache_size gauge\n"));
+	}
+
+	@Test
+	public void requestsAreClassifiedByMethodAndPath() {
+		assertEquals(Endpoint.REDIRECT, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("GET", "/redirect/abc")));
+		assertEquals(Endpoint.OTHER, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("POST", "/redirect/abc")));
+		assertEquals(Endpoint.CREATE, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("POST", "/url/")));
+		assertEquals(Endpoint.OTHER, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("GET", "/url/")));
+		assertEquals(Endpoint.BATCH_CREATE, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("POST", "/url/batch")));
+		assertEquals(Endpoint.BATCH_RESOLVE, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("POST", "/url/resolve")));
+		assertEquals(Endpoint.OTHER, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("GET", "/url/list")));
+		assertEquals(Endpoint.OTHER, RequestMetricsFilter.endpointOf(new MockHttpServletRequest("GET", "/prometheus")));
+	}
+
+	/**
+	 * @return the value of each sample by name and labels, after checking that every family is typed once before its
+	 * samples and every sample is unique
+	 */
+	private static Map<String, Double> parse(String scrape) {
+		assertTrue(scrape.endsWith("\n"));
+		Set<String> typedFamilies = new HashSet<>();
+		Map<String, Double> samples = new HashMap<>();
+		for (String line : scrape.split("\n")) {
+			Matcher type = TYPE.matcher(line);
+			if (type.matches()) {
+				assertTrue("Typed twice: " + line, typedFamilies.add(type.group(1)));
+				continue;
+			}
+			assertFalse("Comment: " + line, line.startsWith("#"));
+			Matcher sample = SAMPLE.matcher(line);
+			assertTrue("Not a sample: " + line, sample.matches());
+			assertTrue("Not typed: " + line, typedFamilies.contains(sample.group(1))
+					|| typedFamilies.contains(sample.group(1) + (sample.group(2) == null ? "" : sample.group(2))));
+			String name = line.substring(0, line.lastIndexOf(' '));
+			String value = sample.group(4);
+			assertFalse("Duplicate: " + line, samples.containsKey(name));
+			samples.put(name, value.endsWith("Inf") ? (value.startsWith("-") ? Double.NEGATIVE_INFINITY
+					: Double.POSITIVE_INFINITY) : Double.parseDouble(value));
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,50 @@
+package com.mihai.shorturl.api;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.UrlService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:hsqldb:mem:redirectControllerTests")
+@AutoConfigureMockMvc
+public class RedirectControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Test
+	public void redirectsWithCachingHeadersUntilTheUrlExpires() throws Exception {
+		UrlEntity url = urlService.create("https://redirect.example.com/");
+
+		MockHttpServletResponse response = mockMvc.perform(get("/redirect/" + url.getKey())).andReturn().getResponse();
+
+		assertEquals(302, response.getStatus());
+		assertEquals(url.getUrl(), response.getHeader(HttpHeaders.LOCATION));
+		assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).startsWith("public, max-age="));
+		assertEquals(url.getExpiresAtMillis() / 1000, response.getDateHeader(HttpHeaders.EXPIRES) / 1000);
+		assertEquals(0, response.getContentLength());
+	}
+
+	@Test
+	public void unknownKeysAreNotFoundAndNotCached() throws Exception {
+		MockHttpServletResponse response = mockMvc.perform(get("/redirect/unknownKey")).andReturn().getResponse();
+
+		assertEquals(404, response.getStatus());
+		assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+	}
+}
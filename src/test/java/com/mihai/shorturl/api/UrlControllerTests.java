@@ -0,0 +1,105 @@
+package com.mihai.shorturl.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.UrlService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:hsqldb:mem:urlControllerTests")
+@AutoConfigureMockMvc
+public class UrlControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Test
+	public void resolvedLinesCarryTheExactExpiration() throws Exception {
+		UrlEntity url = urlService.create("https://resolve.example.com/lines");
+
+		String lines = mockMvc.perform(post("/url/resolve")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(ApiMediaTypes.APPLICATION_NDJSON_VALUE)
+				.content(objectMapper.writeValueAsString(Arrays.asList(url.getKey(), "missing"))))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		String[] records = lines.split("\n");
+		assertEquals(2, records.length);
+		JsonNode found = objectMapper.readTree(records[0]);
+		assertEquals(url.getUrl(), found.get("url").asText());
+		assertEquals(url.getExpirationDate().toString(), found.get("expirationDate").asText());
+		assertEquals(url.getExpiresAtMillis(), found.get("expiresAt").asLong());
+		assertTrue(objectMapper.readTree(records[1]).get("url").isNull());
+	}
+
+	@Test
+	public void resolvedBinaryCarriesTheExactExpiration() throws Exception {
+		UrlEntity url = urlService.create("https://resolve.example.com/binary");
+
+		byte[] body = mockMvc.perform(post("/url/resolve")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE)
+				.content(objectMapper.writeValueAsString(Arrays.asList(url.getKey(), "missing"))))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsByteArray();
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+		assertEquals(2, input.readInt());
+		assertEquals(url.getKey(), readString(input, input.readUnsignedShort()));
+		assertEquals(url.getUrl(), readString(input, input.readInt()));
+		assertEquals(url.getExpirationDate().toEpochDay(), input.readLong());
+		assertEquals(url.getExpiresAtMillis(), input.readLong());
+		assertEquals("missing", readString(input, input.readUnsignedShort()));
+		assertEquals(-1, input.readInt());
+		assertEquals(-1, input.read());
+	}
+
+	@Test
+	public void nullOrOversizedKeysAreBadRequests() throws Exception {
+		mockMvc.perform(post("/url/resolve")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE)
+				.content("[\"abc\", null]"))
+				.andExpect(status().isBadRequest());
+
+		char[] key = new char[0xFFFF / 3 + 1];
+		Arrays.fill(key, 'é');
+		mockMvc.perform(post("/url/resolve")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(ApiMediaTypes.APPLICATION_RESOLVED_URLS_VALUE)
+				.content(objectMapper.writeValueAsString(Collections.singletonList(new String(key)))))
+				.andExpect(status().isBadRequest());
+	}
+
+	private static String readString(DataInputStream input, int length) throws Exception {
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,123 @@
+package com.mihai.shorturl.repository.log;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LogStructuredUrlStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void findsTheLatestRecordOfEachKey() {
+		LogStructuredUrlStore store = open(1 << 20);
+		store.save(new UrlEntity("https://a.com", "a1"));
+		store.save(new UrlEntity("https://b.com", "b1"));
+		store.save(new UrlEntity("https://c.com", "a1"));
+		store.deleteByKey("b1");
+
+		assertEquals("https://c.com", store.findByKey("a1").getUrl());
+		assertNull(store.findByKey("b1"));
+		assertNull(store.findByKey("missing"));
+	}
+
+	@Test
+	public void deletingAKeyWithoutRecordLeavesTheLogAlone() {
+		LogStructuredUrlStore store = open(1 << 20);
+		store.save(new UrlEntity("https://a.com", "a1"));
+		Number bytes = metric(store, "store.log.bytes");
+
+		store.deleteByKey("missing");
+		store.deleteByKey("a2");
+		assertEquals(bytes, metric(store, "store.log.bytes"));
+		assertEquals(Long.valueOf(1), metric(store, "store.log.writes"));
+
+		store.deleteByKey("a1");
+		store.deleteByKey("a1");
+		assertNull(store.findByKey("a1"));
+		assertEquals(Long.valueOf(2), metric(store, "store.log.writes"));
+	}
+
+	@Test
+	public void recoversFromTheLogAcrossSegmentsAndIndexGrowth() {
+		LogStructuredUrlStore store = open(4096);
+		for (int i = 0; i < 1000; i++) {
+			store.save(new UrlEntity("https://example.com/" + i, "key" + i));
+		}
+		store.deleteByKey("key7");
+		store.close();
+
+		LogStructuredUrlStore reopened = open(4096);
+		for (int i = 0; i < 1000; i++) {
+			if (i != 7) {
+				assertEquals("https://example.com/" + i, reopened.findByKey("key" + i).getUrl());
+			}
+		}
+		assertNull(reopened.findByKey("key7"));
+	}
+
+	@Test
+	public void dropsATornRecordAtTheEnd() throws Exception {
+		LogStructuredUrlStore store = open(1 << 20);
+		store.save(new UrlEntity("https://a.com", "a1"));
+		store.close();
+
+		int end = LogRecord.put("a1", "https://a.com", UrlEntity.getDefaultExpirationDate().toEpochDay()).encode().length;
+		byte[] torn = Arrays.copyOf(LogRecord.put("b1", "https://b.com", 0).encode(), 12);
+		try (RandomAccessFile segment = new RandomAccessFile(new File(folder.getRoot(), "segment-00000001.log"), "rw")) {
+			segment.seek(end);
+			segment.write(torn);
+		}
+
+		LogStructuredUrlStore reopened = open(1 << 20);
+		assertNull(reopened.findByKey("b1"));
+		reopened.save(new UrlEntity("https://c.com", "c1"));
+		reopened.close();
+
+		LogStructuredUrlStore recovered = open(1 << 20);
+		assertEquals("https://a.com", recovered.findByKey("a1").getUrl());
+		assertEquals("https://c.com", recovered.findByKey("c1").getUrl());
+	}
+
+	@Test
+	public void compactionKeepsOnlyLiveRecords() {
+		LogStructuredUrlStore store = open(4096);
+		for (int i = 0; i < 500; i++) {
+			store.save(new UrlEntity("https://example.com/" + i, "key" + i));
+			store.save(new UrlEntity("https://example.com/" + i, "key" + i));
+		}
+		store.save(new UrlEntity("https://expired.com", "old", LocalDate.now().minusDays(1)));
+		store.deleteByKey("key0");
+		store.compact();
+
+		assertEquals(Long.valueOf(1), metric(store, "store.log.compactions"));
+		assertNull(store.findByKey("old"));
+		assertNull(store.findByKey("key0"));
+		assertEquals("https://example.com/1", store.findByKey("key1").getUrl());
+		store.save(new UrlEntity("https://new.com", "new"));
+		store.close();
+
+		LogStructuredUrlStore reopened = open(4096);
+		assertEquals(Long.valueOf(500), Long.valueOf(metric(reopened, "store.log.keys").longValue()));
+		assertEquals("https://example.com/499", reopened.findByKey("key499").getUrl());
+		assertNull(reopened.findByKey("old"));
+	}
+
+	private LogStructuredUrlStore open(int segmentBytes) {
+		return new LogStructuredUrlStore(folder.getRoot().getPath(), segmentBytes, 16, false, 0.5);
+	}
+
+	private static Number metric(LogStructuredUrlStore store, String name) {
+		return store.metrics().stream().filter(metric -> metric.getName().equals(name)).findFirst().get().getValue();
+	}
+}
@@ -0,0 +1,61 @@
+package com.mihai.shorturl.repository.routing;
+
+import com.mihai.shorturl.service.UrlService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:hsqldb:mem:routingPrimary",
+		"shorturl.datasource.replica-urls=jdbc:hsqldb:mem:routingReplica",
+		"shorturl.datasource.replica-max-lag-ms=500"})
+public class ReadRoutingTests {
+	private final JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource("jdbc:hsqldb:mem:routingPrimary", "sa", ""));
+	private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource("jdbc:hsqldb:mem:routingReplica", "sa", ""));
+
+	@Autowired
+	private UrlService urlService;
+
+	@Test
+	public void readsGoToTheReplicaExceptRecentWritesAndMisses() throws Exception {
+		String key = urlService.create("https://primary.example.com/a").getKey();
+		copyPrimaryToReplica();
+		replica.update("update urls set url = ? where key = ?", "https://replica.example.com/a", key);
+
+		// written by this node within the lag
+		assertEquals("https://primary.example.com/a", urlService.find(key).getUrl());
+
+		Thread.sleep(700);
+		assertEquals("https://replica.example.com/a", urlService.find(key).getUrl());
+
+		// not replicated yet
+		replica.update("delete from urls where key = ?", key);
+		assertEquals("https://primary.example.com/a", urlService.find(key).getUrl());
+	}
+
+	private void copyPrimaryToReplica() {
+		replica.execute("drop schema public cascade");
+		// the script without a file name only has the schema
+		for (String command : primary.queryForList("script", String.class)) {
+			if (command.startsWith("CREATE MEMORY TABLE") || command.startsWith("CREATE SEQUENCE")
+					|| command.startsWith("SET SCHEMA")) {
+				replica.execute(command);
+			}
+		}
+		for (Map<String, Object> row : primary.queryForList("select * from urls")) {
+			String columns = String.join(", ", row.keySet());
+			String values = String.join(", ", Collections.nCopies(row.size(), "?"));
+			replica.update("insert into urls (" + columns + ") values (" + values + ")", row.values().toArray());
+		}
+	}
+}
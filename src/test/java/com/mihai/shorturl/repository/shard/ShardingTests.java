@@ -0,0 +1,172 @@
+package com.mihai.shorturl.repository.shard;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.UrlPage;
+import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.impl.ShardRebalancer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:hsqldb:mem:shard0",
+		"shorturl.shards.urls=jdbc:hsqldb:mem:shard1,jdbc:hsqldb:mem:shard2"})
+public class ShardingTests {
+	private final List<JdbcTemplate> shards = new ArrayList<>();
+
+	@Autowired
+	private UrlService urlService;
+
+	@Autowired
+	private ShardRouting shardRouting;
+
+	@Autowired
+	private ShardRebalancer shardRebalancer;
+
+	public ShardingTests() {
+		for (int i = 0; i < 3; i++) {
+			shards.add(new JdbcTemplate(new DriverManagerDataSource("jdbc:hsqldb:mem:shard" + i, "sa", "")));
+		}
+	}
+
+	@Test
+	public void urlsAreSpreadOverTheShardsAndListedOnce() {
+		Set<String> keys = new HashSet<>();
+		for (int i = 0; i < 60; i++) {
+			String key = urlService.create("https://spread.example.com/" + i).getKey();
+			keys.add(key);
+			assertEquals(key, urlService.create("https://spread.example.com/" + i).getKey());
+			assertEquals("https://spread.example.com/" + i, urlService.find(key).getUrl());
+		}
+		assertEquals(60, keys.size());
+
+		for (int shard = 0; shard < shards.size(); shard++) {
+			List<String> shardKeys = shards.get(shard).queryForList("select key from urls", String.class);
+			assertTrue(shardKeys.stream().anyMatch(keys::contains));
+			for (String key : shardKeys) {
+				assertEquals(shard, shardRouting.shardOfKey(key));
+			}
+		}
+
+		List<String> listedKeys = new ArrayList<>();
+		String cursor = null;
+		do {
+			UrlPage page = urlService.findPage(cursor, 7);
+			page.getUrls().stream().map(UrlEntity::getKey).forEach(listedKeys::add);
+			cursor = page.getNext();
+		} while (cursor != null);
+		assertEquals(new HashSet<>(listedKeys).size(), listedKeys.size());
+		assertTrue(listedKeys.containsAll(keys));
+	}
+
+	@Test
+	public void cursorsKeepTheShardOfIdsWhichRepeatAcrossShards() {
+		for (int i = 0; i < 12; i++) {
+			urlService.create("https://cursor.example.com/" + i);
+		}
+		Set<String> exportedKeys = new HashSet<>();
+		urlService.exportUrls(url -> exportedKeys.add(url.getKey()));
+
+		// each shard numbers its own rows, so a page of one ends between two rows with the same id
+		List<String> listedKeys = new ArrayList<>();
+		String cursor = null;
+		do {
+			UrlPage page = urlService.findPage(cursor, 1);
+			page.getUrls().stream().map(UrlEntity::getKey).forEach(listedKeys::add);
+			cursor = page.getNext();
+			if (cursor != null) {
+				String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+				assertTrue(position.matches("\\d+:[0-2]"));
+			}
+		} while (cursor != null);
+		assertEquals(exportedKeys.size(), listedKeys.size());
+		assertEquals(exportedKeys, new HashSet<>(listedKeys));
+	}
+
+	@Test
+	public void rebalancerMovesMisplacedRowsAndMappings() {
+		String url = "https://misplaced.example.com/";
+		String key = urlService.create(url).getKey();
+		int home = shardRouting.shardOfKey(key);
+		int wrongShard = (home + 1) % shards.size();
+		moveRow(key, home, wrongShard);
+		shards.get(shardRouting.shardOfUrl(UrlEntity.hashOf(url))).update("delete from url_key_mappings where key = ?", key);
+
+		shardRebalancer.rebalance();
+
+		assertEquals(Integer.valueOf(0), shards.get(wrongShard).queryForObject("select count(*) from urls where key = ?", Integer.class, key));
+		assertEquals(url, urlService.find(key).getUrl());
+		assertEquals(key, urlService.create(url).getKey());
+	}
+
+	@Test
+	public void rebalancerReplacesCopiesOfRowsWhichChangedSince() {
+		String key = urlService.create("https://stale.example.com/").getKey();
+		int home = shardRouting.shardOfKey(key);
+		int wrongShard = (home + 1) % shards.size();
+		// a run stopped after the copy, then the row was written on the shard it was read from
+		copyRow(key, home, wrongShard);
+		shards.get(wrongShard).update("update urls set url = ?, url_hash = ?, version = version + 1 where key = ?",
+				"https://stale.example.com/changed", UrlEntity.hashOf("https://stale.example.com/changed"), key);
+
+		shardRebalancer.rebalance();
+
+		assertTrue(shardRebalancer.isComplete());
+		assertEquals(Integer.valueOf(0), shards.get(wrongShard).queryForObject("select count(*) from urls where key = ?", Integer.class, key));
+		assertEquals("https://stale.example.com/changed",
+				shards.get(home).queryForObject("select url from urls where key = ?", String.class, key));
+	}
+
+	@Test
+	public void rebalancerMergesRowsWhoseUrlTheShardAlreadyHolds() {
+		String url = "https://merged.example.com/";
+		String key = urlService.create(url).getKey();
+		int home = shardRouting.shardOfKey(key);
+		int wrongShard = (home + 1) % shards.size();
+		moveRow(key, home, wrongShard);
+		String keptKey;
+		int i = 0;
+		do {
+			keptKey = urlService.create("https://merged.example.com/other/" + i++).getKey();
+		} while (shardRouting.shardOfKey(keptKey) != home);
+		shards.get(home).update("update urls set url = ?, url_hash = ? where key = ?", url, UrlEntity.hashOf(url), keptKey);
+
+		shardRebalancer.rebalance();
+
+		assertTrue(shardRebalancer.isComplete());
+		assertEquals(Integer.valueOf(0), shards.get(wrongShard).queryForObject("select count(*) from urls where key = ?", Integer.class, key));
+		assertEquals(keptKey, shards.get(home).queryForObject("select key from urls where url = ?", String.class, url));
+		assertEquals(url, urlService.find(keptKey).getUrl());
+	}
+
+	private void moveRow(String key, int from, int to) {
+		copyRow(key, from, to);
+		shards.get(from).update("delete from urls where key = ?", key);
+	}
+
+	private void copyRow(String key, int from, int to) {
+		Map<String, Object> row = new LinkedHashMap<>(shards.get(from).queryForMap("select * from urls where key = ?", key));
+		row.remove("ID");
+		String columns = String.join(", ", row.keySet());
+		String values = String.join(", ", Collections.nCopies(row.size(), "?"));
+		shards.get(to).update("insert into urls (" + columns + ") values (" + values + ")", row.values().toArray());
+	}
+}
@@ -0,0 +1,63 @@
+package com.mihai.shorturl.service.admission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveLimitTests {
+	private static final long WINDOW = 100;
+
+	@Test
+	public void rejectsRequestsOverTheLimit() {
+		AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, 2.0, 0.5, WINDOW, 0);
+		assertTrue(limit.tryAcquire());
+		assertTrue(limit.tryAcquire());
+		assertFalse(limit.tryAcquire());
+		assertEquals(1, limit.getRejected());
+
+		limit.release(0, 1);
+		assertTrue(limit.tryAcquire());
+		assertEquals(2, limit.getInFlight());
+	}
+
+	@Test
+	public void growsWhileUsedAndFastThenBacksOffWhenSlow() {
+		AdaptiveLimit limit = new AdaptiveLimit(4, 2, 6, 2.0, 0.5, WINDOW, 0);
+		long now = 0;
+		for (int window = 0; window < 5; window++) {
+			now += WINDOW;
+			assertTrue(limit.tryAcquire());
+			assertTrue(limit.tryAcquire());
+			assertTrue(limit.tryAcquire());
+			// the last release closes the window
+			limit.release(now - 11, now - 1);
+			limit.release(now - 11, now - 1);
+			limit.release(now - 10, now);
+		}
+		assertEquals(6, limit.getLimit());
+		assertEquals(10, limit.getBaselineNanos());
+
+		now += WINDOW;
+		assertTrue(limit.tryAcquire());
+		limit.release(now - 50, now);
+		assertEquals(50, limit.getLatencyNanos());
+		assertEquals(3, limit.getLimit());
+
+		now += WINDOW;
+		assertTrue(limit.tryAcquire());
+		limit.release(now - 50, now);
+		assertEquals(2, limit.getLimit());
+	}
+
+	@Test
+	public void doesNotGrowWhileIdle() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 2, 100, 2.0, 0.5, WINDOW, 0);
+		for (long now = WINDOW; now <= 10 * WINDOW; now += WINDOW) {
+			assertTrue(limit.tryAcquire());
+			limit.release(now - 10, now);
+		}
+		assertEquals(10, limit.getLimit());
+	}
+}
@@ -0,0 +1,45 @@
+package com.mihai.shorturl.service.admission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRateLimiterTests {
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	public void admitsABurstThenTheSustainedRate() {
+		ClientRateLimiter limiter = new ClientRateLimiter(10, 3, 100);
+		long now = 5 * SECOND;
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.tryAcquire("a", now));
+		}
+		long wait = limiter.tryAcquire("a", now);
+		assertTrue(wait > 0 && wait <= SECOND / 10);
+		assertEquals(0, limiter.tryAcquire("b", now));
+
+		assertEquals(0, limiter.tryAcquire("a", now + wait));
+		assertTrue(limiter.tryAcquire("a", now + wait) > 0);
+		assertEquals(2, limiter.getRejected());
+	}
+
+	@Test
+	public void evictsIdleClientsAndSharesABucketBetweenUntrackedClientsWhenFull() {
+		ClientRateLimiter limiter = new ClientRateLimiter(1, 1, 1);
+		assertEquals(0, limiter.tryAcquire("a", 0));
+		assertTrue(limiter.tryAcquire("a", 0) > 0);
+		assertEquals(0, limiter.tryAcquire("b", 0));
+		assertTrue(limiter.tryAcquire("c", 0) > 0);
+		assertTrue(limiter.tryAcquire("b", 0) > 0);
+		assertEquals(1, limiter.size());
+		assertEquals(3, limiter.getOverflowed());
+		assertEquals(0, limiter.tryAcquire("c", SECOND));
+
+		limiter.evictIdle(SECOND / 2);
+		assertEquals(1, limiter.size());
+		limiter.evictIdle(SECOND);
+		assertEquals(0, limiter.size());
+		assertEquals(0, limiter.tryAcquire("a", SECOND));
+	}
+}
@@ -0,0 +1,37 @@
+package com.mihai.shorturl.service.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBloomFilterTests {
+
+	@Test
+	public void containsEveryAddedKeyAndFewOthers() {
+		ConcurrentBloomFilter filter = new ConcurrentBloomFilter(10000, 0.01, 0);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("key" + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain("key" + i));
+		}
+
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("other" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+		assertTrue(filter.expectedFpp() < 0.02);
+	}
+
+	@Test
+	public void memoryLimitCapsTheBitArray() {
+		ConcurrentBloomFilter filter = new ConcurrentBloomFilter(1000000, 0.001, 1024);
+
+		assertEquals(1024, filter.memoryBytes());
+		assertEquals(8192, filter.bitCount());
+	}
+}
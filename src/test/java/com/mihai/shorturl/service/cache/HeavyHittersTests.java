@@ -0,0 +1,65 @@
+package com.mihai.shorturl.service.cache;
+
+import com.mihai.shorturl.service.HotKey;
+import com.mihai.shorturl.service.ResolvedUrl;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HeavyHittersTests {
+	private final UrlCache urlCache = new UrlCache(1000, 0, 60000);
+	// counts are halved every second, so a count of 20 is about 10 redirects per second
+	private final HeavyHitters heavyHitters = new HeavyHitters(urlCache, true, 256, 4, 5, 1000, 10);
+
+	@Test
+	public void hotKeysAreFoundAmongManyColdOnes() {
+		for (int i = 0; i < 2000; i++) {
+			redirect("hot", "https://hot.example.com/");
+			if (i % 2 == 0) {
+				redirect("warm", "https://warm.example.com/");
+			}
+			redirect("cold" + i, "https://cold.example.com/" + i);
+		}
+
+		List<HotKey> hotKeys = heavyHitters.hotKeys();
+		assertEquals(5, hotKeys.size());
+		assertEquals("hot", hotKeys.get(0).getKey());
+		assertEquals("warm", hotKeys.get(1).getKey());
+		assertTrue(hotKeys.get(0).getRatePerSecond() >= 1000);
+		assertTrue(hotKeys.get(0).isPinned());
+	}
+
+	@Test
+	public void pinnedKeysSurviveEvictionUntilTheyCoolDownOrChange() {
+		ResolvedUrl hotUrl = null;
+		for (int i = 0; i < 100; i++) {
+			hotUrl = redirect("hot", "https://hot.example.com/");
+		}
+		assertTrue(urlCache.isPinned("hot"));
+		assertSame(hotUrl, urlCache.get("hot", key -> null));
+
+		urlCache.invalidate("hot");
+		assertFalse(urlCache.isPinned("hot"));
+
+		for (int i = 0; i < 100; i++) {
+			redirect("hot", "https://hot.example.com/");
+		}
+		assertTrue(urlCache.isPinned("hot"));
+		for (int i = 0; i < 6; i++) {
+			heavyHitters.decay();
+		}
+		assertFalse(urlCache.isPinned("hot"));
+	}
+
+	private ResolvedUrl redirect(String key, String url) {
+		ResolvedUrl resolvedUrl = urlCache.get(key, missingKey -> new ResolvedUrl(url, LocalDate.now().plusDays(1)));
+		heavyHitters.record(key, resolvedUrl);
+		return resolvedUrl;
+	}
+}
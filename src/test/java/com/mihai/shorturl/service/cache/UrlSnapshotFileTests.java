@@ -0,0 +1,59 @@
+package com.mihai.shorturl.service.cache;
+
+import com.mihai.shorturl.service.ResolvedUrl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class UrlSnapshotFileTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsBackWhatWasWritten() throws Exception {
+		Map<String, ResolvedUrl> entries = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			entries.put("key" + i, new ResolvedUrl("https://example.com/ü/" + i, LocalDate.now().plusDays(i - 10)));
+		}
+		Path file = folder.getRoot().toPath().resolve("urls.snapshot");
+		UrlSnapshotFile.write(file, entries);
+
+		Map<String, ResolvedUrl> read = new LinkedHashMap<>();
+		assertEquals(1000, UrlSnapshotFile.read(file, read::put));
+		assertEquals(entries.keySet(), read.keySet());
+		for (Map.Entry<String, ResolvedUrl> entry : entries.entrySet()) {
+			assertEquals(entry.getValue().getUrl(), read.get(entry.getKey()).getUrl());
+			assertEquals(entry.getValue().getExpirationDate(), read.get(entry.getKey()).getExpirationDate());
+		}
+	}
+
+	@Test
+	public void rejectsACorruptSnapshot() throws Exception {
+		Map<String, ResolvedUrl> entries = new LinkedHashMap<>();
+		entries.put("a1", new ResolvedUrl("https://a.com", LocalDate.now()));
+		Path file = folder.getRoot().toPath().resolve("urls.snapshot");
+		UrlSnapshotFile.write(file, entries);
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(raf.length() - 6);
+			raf.write('x');
+		}
+
+		try {
+			UrlSnapshotFile.read(file, (key, resolvedUrl) -> fail());
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.mihai.shorturl.service.impl;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Base62KeyEncoderTests {
+
+	@Test
+	public void encodesPaddedBase62() {
+		Base62KeyEncoder encoder = new Base62KeyEncoder(3, false);
+
+		assertEquals("000", encoder.encode(0));
+		assertEquals("00Z", encoder.encode(61));
+		assertEquals("010", encoder.encode(62));
+		assertEquals("1000", encoder.encode(62 * 62 * 62));
+	}
+
+	@Test
+	public void obfuscatedKeysAreUnique() {
+		Base62KeyEncoder encoder = new Base62KeyEncoder(2, true);
+		Set<String> keys = new HashSet<>();
+
+		// covers the whole 2 character space and part of the 3 character one
+		for (long id = 0; id < 62 * 62 * 3; id++) {
+			String key = encoder.encode(id);
+			assertTrue(key.length() >= 2);
+			assertTrue("Duplicate key " + key, keys.add(key));
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.ClickStatEntity;
+import com.mihai.shorturl.repository.ClickStatRepository;
+import com.mihai.shorturl.service.ClickService;
+import com.mihai.shorturl.service.UrlService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:hsqldb:mem:clickServiceTests",
+		"shorturl.clicks.flush-interval-ms=3600000"})
+public class ClickServiceImplTests {
+	private static final int THREADS = 8;
+	private static final int CLICKS = 20_000;
+
+	@Autowired
+	private ClickService clickService;
+
+	@Autowired
+	private ClickServiceImpl clickServiceImpl;
+
+	@Autowired
+	private ClickStatRepository clickStatRepository;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	public void clicksRacingTheFlushesAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		AtomicBoolean clicking = new AtomicBoolean(true);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> clickers = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				String key = "race" + (thread % 3);
+				clickers.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < CLICKS; i++) {
+						clickService.recordClick(key);
+						if (i % 1000 == 0) {
+							// let the counter go idle, so the flushes remove it while it is used
+							Thread.sleep(1);
+						}
+					}
+					return null;
+				}));
+			}
+			Future<?> flusher = executor.submit(() -> {
+				start.await();
+				while (clicking.get()) {
+					clickServiceImpl.flush();
+				}
+				return null;
+			});
+			start.countDown();
+			for (Future<?> clicker : clickers) {
+				clicker.get();
+			}
+			clicking.set(false);
+			flusher.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		// the removed counters are read once more by the flush after the one which removed them
+		for (int i = 0; i < 3; i++) {
+			clickServiceImpl.flush();
+		}
+
+		long total = 0;
+		for (int key = 0; key < 3; key++) {
+			for (ClickStatEntity clickStat : clickStatRepository.findByKeyOrderByBucketStartAsc("race" + key)) {
+				total += clickStat.getClicks();
+			}
+		}
+		assertEquals((long) THREADS * CLICKS, total);
+	}
+
+	@Test
+	public void clicksAreAddedToTheBucketOfTheirKey() {
+		Map<String, Long> clicks = new HashMap<>();
+		clicks.put("merge1", 3L);
+		clicks.put("merge2", 5L);
+		clickStatRepository.addClicks(clicks, 3600);
+		clickStatRepository.addClicks(clicks, 3600);
+		clickStatRepository.addClicks(clicks, 7200);
+
+		List<ClickStatEntity> buckets = clickStatRepository.findByKeyOrderByBucketStartAsc("merge1");
+		assertEquals(2, buckets.size());
+		assertEquals(3600, buckets.get(0).getBucketStart());
+		assertEquals(6, buckets.get(0).getClicks());
+		assertEquals(7200, buckets.get(1).getBucketStart());
+		assertEquals(3, buckets.get(1).getClicks());
+		assertEquals(15, clickService.getClickStats("merge2").getTotal());
+	}
+
+	@Test
+	public void deletingTheUrlClearsItsClicks() {
+		String key = urlService.create("https://clicked.example.com").getKey();
+		clickService.recordClick(key);
+		clickServiceImpl.flush();
+		clickService.recordClick(key);
+		assertEquals(2, clickService.getClickStats(key).getTotal());
+
+		urlService.deleteByKey(key);
+		clickServiceImpl.flush();
+
+		assertEquals(0, clickService.getClickStats(key).getTotal());
+		assertTrue(clickStatRepository.findByKeyOrderByBucketStartAsc(key).isEmpty());
+	}
+
+	@Test
+	public void clearingInARolledBackTransactionKeepsTheClicks() {
+		clickService.recordClick("rolledBack");
+		clickServiceImpl.flush();
+		clickService.recordClick("rolledBack");
+
+		new TransactionTemplate(transactionManager).execute(status -> {
+			clickService.clearClicks("rolledBack");
+			assertEquals(2, clickService.getClickStats("rolledBack").getTotal());
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(2, clickService.getClickStats("rolledBack").getTotal());
+	}
+}
@@ -0,0 +1,78 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.service.ClickService;
+import com.mihai.shorturl.service.UrlService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:hsqldb:mem:reclaimerTests",
+		"shorturl.reclaim.queue-size=1",
+		"shorturl.reclaim.initial-delay-ms=3600000",
+		"shorturl.clicks.flush-interval-ms=3600000"})
+public class ExpiredUrlReclaimerTests {
+
+	@Autowired
+	private ExpiredUrlReclaimer reclaimer;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Autowired
+	private UrlRepository urlRepository;
+
+	@Autowired
+	private ClickService clickService;
+
+	@Autowired
+	private ClickServiceImpl clickServiceImpl;
+
+	@Test
+	public void expiredRowsAreReusedOnceOrDeletedWhenTheQueueIsFull() {
+		String reusedKey = expire(urlService.create("https://first.expired.example.com").getKey());
+		String deletedKey = expire(urlService.create("https://second.expired.example.com").getKey());
+		String validKey = urlService.create("https://valid.reclaim.example.com").getKey();
+		clickService.recordClick(reusedKey);
+		clickServiceImpl.flush();
+
+		reclaimer.reclaim();
+
+		// the first row fills the queue, the second one is deleted
+		assertNotNull(urlRepository.findByKey(reusedKey));
+		assertNull(urlRepository.findByKey(deletedKey));
+		assertNotNull(urlRepository.findByKey(validKey));
+
+		UrlEntity reusedUrl = urlService.create("https://reused.example.com");
+		assertEquals(reusedKey, reusedUrl.getKey());
+		assertEquals("https://reused.example.com", urlService.findUrlByKey(reusedKey));
+		assertNull(urlRepository.findByUrl("https://first.expired.example.com"));
+		// the clicks of the expired url do not carry over
+		assertEquals(0, clickService.getClickStats(reusedKey).getTotal());
+
+		// the queue is empty and the reused row is no longer expired
+		reclaimer.reclaim();
+		String newKey = urlService.create("https://not.reused.example.com").getKey();
+		assertNotEquals(reusedKey, newKey);
+		assertEquals("https://reused.example.com", urlService.findUrlByKey(reusedKey));
+	}
+
+	private String expire(String key) {
+		UrlEntity urlEntity = urlRepository.findByKey(key);
+		urlEntity.setExpirationDate(LocalDate.now().minusDays(1));
+		urlRepository.save(urlEntity);
+		return key;
+	}
+}
@@ -0,0 +1,103 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitWriterTests {
+
+	@Test
+	public void writesQueuedCreatesInOneBatch() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(true, 100, 10, 50);
+		List<Integer> batchSizes = new ArrayList<>();
+		writer.start(batch -> {
+			batchSizes.add(batch.size());
+			batch.forEach(pending -> pending.complete(new UrlEntity(pending.getUrl(), "k" + pending.getUrl().length())));
+		});
+
+		List<CompletableFuture<UrlEntity>> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			results.add(writer.submit("https://example.com/" + i));
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals("https://example.com/" + i, results.get(i).get(1, TimeUnit.SECONDS).getUrl());
+		}
+		writer.shutdown();
+
+		assertEquals(5, batchSizes.stream().mapToInt(Integer::intValue).sum());
+		assertTrue(batchSizes.size() < 5);
+	}
+
+	@Test
+	public void rejectsCreatesWhenTheQueueIsFull() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(true, 1, 1, 0);
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		writer.start(batch -> {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			batch.forEach(pending -> pending.complete(null));
+		});
+
+		writer.submit("https://example.com/writing");
+		writing.await();
+		writer.submit("https://example.com/queued");
+		try {
+			writer.submit("https://example.com/rejected");
+			fail("The third create should be rejected");
+		} catch (ServiceOverloadedException e) {
+			// expected
+		} finally {
+			release.countDown();
+			writer.shutdown();
+		}
+	}
+
+	@Test
+	public void failsTheDrainedAndQueuedCreatesWhenTheWriterIsInterrupted() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(true, 10, 10, 60_000);
+		writer.start(batch -> batch.forEach(pending -> pending.complete(null)));
+
+		CompletableFuture<UrlEntity> waiting = writer.submit("https://example.com/waiting");
+		Thread writerThread = Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.getName().equals("group-commit-writer"))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("No writer thread"));
+		// the first create waits in the batch for more, up to the max wait
+		while (writer.metrics().stream().anyMatch(metric -> metric.getName().equals("group.commit.queued")
+				&& metric.getValue().intValue() > 0)) {
+			Thread.sleep(10);
+		}
+		writerThread.interrupt();
+
+		try {
+			waiting.get(1, TimeUnit.SECONDS);
+			fail("The create should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceOverloadedException);
+		}
+		try {
+			writer.submit("https://example.com/after");
+			fail("Creates should be rejected once the writer stopped");
+		} catch (ServiceOverloadedException e) {
+			// expected
+		} finally {
+			writer.shutdown();
+		}
+	}
+}
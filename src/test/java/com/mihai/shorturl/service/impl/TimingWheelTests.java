@@ -0,0 +1,65 @@
+package com.mihai.shorturl.service.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTests {
+
+	@Test
+	public void expiresEachItemAtTheFirstTickAfterItsDeadline() {
+		long start = 1_000_000;
+		TimingWheel<Long> wheel = new TimingWheel<>(10, 8, start);
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			// deadlines from a few ticks to several turns of the third wheel
+			long deadline = start + 1 + random.nextInt(100_000);
+			wheel.add(deadline, deadline);
+		}
+		assertTrue(wheel.wheelCount() > 3);
+
+		List<Long> expired = new ArrayList<>();
+		for (long now = start; now <= start + 100_010; now += 1 + random.nextInt(500)) {
+			long currentNow = now;
+			wheel.advance(now, deadline -> {
+				assertTrue(deadline <= currentNow);
+				assertTrue(deadline > currentNow - 510);
+				expired.add(deadline);
+			});
+		}
+		wheel.advance(start + 100_010, expired::add);
+
+		assertEquals(2000, expired.size());
+		assertEquals(0, wheel.size());
+		for (int i = 1; i < expired.size(); i++) {
+			assertTrue(expired.get(i - 1) - 10 < expired.get(i));
+		}
+	}
+
+	@Test
+	public void cancelledItemsDoNotExpire() {
+		TimingWheel<String> wheel = new TimingWheel<>(1000, 64, 0);
+		TimingWheel<String>.Timeout kept = wheel.add("kept", 5_000);
+		TimingWheel<String>.Timeout cancelled = wheel.add("cancelled", 3_600_000);
+		assertNull(wheel.add("past", 0));
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertEquals(1, wheel.size());
+
+		List<String> expired = new ArrayList<>();
+		wheel.advance(4_999, expired::add);
+		assertTrue(expired.isEmpty());
+		wheel.advance(7_200_000, expired::add);
+		assertEquals(1, expired.size());
+		assertEquals("kept", expired.get(0));
+		assertFalse(kept.cancel());
+	}
+}
@@ -0,0 +1,140 @@
+package com.mihai.shorturl.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.service.UrlPage;
+import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.exception.InvalidCursorException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:hsqldb:mem:urlPagingTests")
+@AutoConfigureMockMvc
+public class UrlPagingTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Autowired
+	private UrlRepository urlRepository;
+
+	@Test
+	public void pagesEndExactlyAtTheLastUrlAndSkipExpiredOnes() {
+		List<String> validKeys = new ArrayList<>();
+		Set<String> expiredKeys = new HashSet<>();
+		for (int i = 0; i < 25; i++) {
+			String key = urlService.create("https://page.example.com/" + i).getKey();
+			if (i % 5 == 2) {
+				UrlEntity expiredUrl = urlRepository.findByKey(key);
+				expiredUrl.setExpirationDate(LocalDate.now().minusDays(1));
+				urlRepository.save(expiredUrl);
+				expiredKeys.add(key);
+			} else {
+				validKeys.add(key);
+			}
+		}
+
+		// 20 valid urls fill exactly two pages, the second one has no next page
+		List<String> listedKeys = new ArrayList<>();
+		UrlPage page = urlService.findPage(null, 10);
+		assertEquals(10, page.getUrls().size());
+		assertNotNull(page.getNext());
+		page.getUrls().forEach(url -> listedKeys.add(url.getKey()));
+		page = urlService.findPage(page.getNext(), 10);
+		assertEquals(10, page.getUrls().size());
+		assertNull(page.getNext());
+		page.getUrls().forEach(url -> listedKeys.add(url.getKey()));
+		assertEquals(validKeys, listedKeys);
+
+		// a page boundary between the ids of a page of one
+		List<String> singleKeys = new ArrayList<>();
+		String cursor = "";
+		do {
+			page = urlService.findPage(cursor, 1);
+			assertTrue(page.getUrls().size() <= 1);
+			page.getUrls().forEach(url -> singleKeys.add(url.getKey()));
+			cursor = page.getNext();
+		} while (cursor != null);
+		assertEquals(validKeys, singleKeys);
+		assertFalse(singleKeys.stream().anyMatch(expiredKeys::contains));
+
+		assertTrue(urlService.findPage(encode(Long.toString(Long.MAX_VALUE - 1)), 10).getUrls().isEmpty());
+	}
+
+	@Test
+	public void invalidCursorsAreBadRequests() throws Exception {
+		for (String cursor : new String[]{"not*base64", encode("abc"), encode("12:x"), encode("12:")}) {
+			try {
+				urlService.findPage(cursor, 10);
+				throw new AssertionError("cursor " + cursor + " was accepted");
+			} catch (InvalidCursorException expected) {
+				// rejected before any query
+			}
+			mockMvc.perform(get("/url/list").param("cursor", cursor))
+					.andExpect(status().isBadRequest());
+		}
+		mockMvc.perform(get("/url/list").param("limit", "5"))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	public void exportListsTheSameUrlsAsThePages() throws Exception {
+		urlService.create("https://export.example.com/first");
+		urlService.create("https://export.example.com/second");
+
+		Set<String> pagedKeys = new HashSet<>();
+		String cursor = null;
+		do {
+			UrlPage page = urlService.findPage(cursor, 3);
+			page.getUrls().forEach(url -> pagedKeys.add(url.getKey()));
+			cursor = page.getNext();
+		} while (cursor != null);
+
+		String export = mockMvc.perform(get("/url/export"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		Set<String> exportedKeys = new HashSet<>();
+		for (String line : export.split("\n")) {
+			JsonNode url = objectMapper.readTree(line);
+			assertEquals(urlService.findUrlByKey(url.get("key").asText()), url.get("url").asText());
+			assertFalse(LocalDate.parse(url.get("expirationDate").asText()).isBefore(LocalDate.now()));
+			exportedKeys.add(url.get("key").asText());
+		}
+		assertTrue(export.endsWith("\n"));
+		assertEquals(pagedKeys, exportedKeys);
+	}
+
+	private static String encode(String position) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+	}
+}
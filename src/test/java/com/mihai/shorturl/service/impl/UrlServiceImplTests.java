@@ -0,0 +1,135 @@
+package com.mihai.shorturl.service.impl;
+
+import com.mihai.shorturl.entity.UrlEntity;
+import com.mihai.shorturl.repository.UrlRepository;
+import com.mihai.shorturl.service.ResolvedUrl;
+import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.exception.UrlNotFoundException;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:hsqldb:mem:urlServiceTests")
+public class UrlServiceImplTests {
+	private static final int THREADS = 32;
+
+	@Autowired
+	private UrlService urlService;
+
+	@Autowired
+	private UrlRepository urlRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Test
+	public void concurrentCreatesOfTheSameUrlShareOneEntry() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int burst = 0; burst < 10; burst++) {
+				String url = "https://viral.example.com/post/" + burst;
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<UrlEntity>> creates = new ArrayList<>();
+				for (int i = 0; i < THREADS; i++) {
+					creates.add(executor.submit(() -> {
+						start.await();
+						return urlService.create(url);
+					}));
+				}
+				start.countDown();
+
+				Set<String> keys = new HashSet<>();
+				for (Future<UrlEntity> create : creates) {
+					keys.add(create.get().getKey());
+				}
+				assertEquals(1, keys.size());
+				assertEquals(keys.iterator().next(), urlRepository.findByUrl(url).getKey());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void lookupsSkipExpiredUrls() {
+		String expiredKey = urlService.create("https://expired.example.com").getKey();
+		UrlEntity expiredUrl = urlRepository.findByKey(expiredKey);
+		expiredUrl.setExpirationDate(LocalDate.now().minusDays(1));
+		urlRepository.save(expiredUrl);
+		String validKey = urlService.create("https://valid.example.com").getKey();
+
+		assertNull(urlRepository.findValidByKey(expiredKey, LocalDate.now()));
+		assertNull(urlService.findUrlByKey(expiredKey));
+		try {
+			urlService.find(expiredKey);
+			throw new AssertionError("expired url was found");
+		} catch (UrlNotFoundException expected) {
+			// filtered by the query
+		}
+		assertEquals("https://valid.example.com", urlService.find(validKey).getUrl());
+		assertEquals("https://valid.example.com", urlService.findUrlByKey(validKey));
+	}
+
+	@Test
+	public void readOnlyTransactionsLoadReadOnlyEntities() {
+		urlRepository.save(new UrlEntity("https://readonly.example.com", "readonly1"));
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+		assertTrue(readOnly.execute(status ->
+				entityManager.unwrap(Session.class).isReadOnly(urlRepository.findByKey("readonly1"))));
+		assertFalse(readWrite.execute(status ->
+				entityManager.unwrap(Session.class).isReadOnly(urlRepository.findByKey("readonly1"))));
+	}
+
+	@Test
+	public void resolveAllSkipsMissingAndExpiredKeys() {
+		String firstKey = urlService.create("https://first.resolve.example.com").getKey();
+		String secondKey = urlService.create("https://second.resolve.example.com").getKey();
+		String expiredKey = urlService.create("https://expired.resolve.example.com").getKey();
+		UrlEntity expiredUrl = urlRepository.findByKey(expiredKey);
+		expiredUrl.setExpirationDate(LocalDate.now().minusDays(1));
+		urlRepository.save(expiredUrl);
+		// one of them is cached, the others are loaded together
+		urlService.findUrlByKey(firstKey);
+
+		Map<String, ResolvedUrl> resolvedUrls =
+				urlService.resolveAll(Arrays.asList(secondKey, "missing1", firstKey, expiredKey, secondKey));
+
+		assertEquals(2, resolvedUrls.size());
+		assertEquals("https://first.resolve.example.com", resolvedUrls.get(firstKey).getUrl());
+		assertEquals("https://second.resolve.example.com", resolvedUrls.get(secondKey).getUrl());
+		assertFalse(resolvedUrls.containsKey("missing1"));
+		assertFalse(resolvedUrls.containsKey(expiredKey));
+	}
+}
@@ -0,0 +1,129 @@
+package com.mihai.shorturl.service.invalidation;
+
+import com.mihai.shorturl.ShorturlApplication;
+import com.mihai.shorturl.service.ResolvedUrl;
+import com.mihai.shorturl.service.UrlService;
+import com.mihai.shorturl.service.cache.UrlCache;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.InetSocketAddress;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UrlInvalidationsTests {
+
+	@Test
+	public void peersSeeTheKeysCreatedAndDeletedByAnotherNode() throws Exception {
+		try (ConfigurableApplicationContext first = startNode();
+			 ConfigurableApplicationContext second = startNode()) {
+			UrlService firstNode = first.getBean(UrlService.class);
+			UrlService secondNode = second.getBean(UrlService.class);
+
+			// the key filter of the second node learns the key from the bus
+			String key = firstNode.create("https://nodes.example.com/a").getKey();
+			awaitTrue(() -> secondNode.resolve(key) != null);
+
+			firstNode.deleteByKey(key);
+			awaitTrue(() -> secondNode.resolve(key) == null);
+			assertNull(firstNode.resolve(key));
+		}
+	}
+
+	@Test
+	public void olderInvalidationsAndStaleLoadsDoNotReplaceNewerEntries() {
+		UrlCache urlCache = new UrlCache(1000, 0, 60000);
+		LocalDate tomorrow = LocalDate.now().plusDays(1);
+		AtomicInteger loads = new AtomicInteger();
+		urlCache.get("a", key -> new ResolvedUrl("https://a.com/5", tomorrow, Long.MAX_VALUE, 5));
+
+		// reordered, older than the cached entry
+		assertFalse(urlCache.invalidateOlderThan("a", 4));
+		assertEquals(5, urlCache.getIfPresent("a").getVersion());
+
+		assertTrue(urlCache.invalidateOlderThan("a", 6));
+		assertNull(urlCache.getIfPresent("a"));
+		assertFalse(urlCache.invalidateOlderThan("a", 3));
+		assertTrue(urlCache.isInvalidated("a", 5));
+		assertFalse(urlCache.isInvalidated("a", 6));
+		assertFalse(urlCache.isInvalidated("b", 0));
+
+		// a lagging read is served once but not kept
+		ResolvedUrl staleUrl = urlCache.get("a", key -> {
+			loads.incrementAndGet();
+			return new ResolvedUrl("https://a.com/5", tomorrow, Long.MAX_VALUE, 5);
+		});
+		assertEquals(5, staleUrl.getVersion());
+		assertNull(urlCache.getIfPresent("a"));
+
+		urlCache.get("a", key -> {
+			loads.incrementAndGet();
+			return new ResolvedUrl("https://a.com/6", tomorrow, Long.MAX_VALUE, 6);
+		});
+		assertEquals("https://a.com/6", urlCache.getIfPresent("a").getUrl());
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void udpBusSplitsBatchesAndDeliversThemToPeersOnly() throws Exception {
+		UdpInvalidationBus sender = new UdpInvalidationBus("127.0.0.1", 0, "", 512);
+		UdpInvalidationBus receiver = new UdpInvalidationBus("127.0.0.1", 0, "", 512);
+		try {
+			sender.addPeer(new InetSocketAddress("127.0.0.1", receiver.getLocalPort()));
+			sender.addPeer(new InetSocketAddress("127.0.0.1", sender.getLocalPort()));
+			BlockingQueue<KeyInvalidation> received = new LinkedBlockingQueue<>();
+			BlockingQueue<KeyInvalidation> echoed = new LinkedBlockingQueue<>();
+			receiver.subscribe(received::addAll);
+			sender.subscribe(echoed::addAll);
+
+			List<KeyInvalidation> batch = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				batch.add(new KeyInvalidation("key" + i + "ü", i));
+			}
+			assertTrue(UdpInvalidationBus.encode(1, batch, 512).size() > 1);
+			sender.publish(batch);
+
+			for (KeyInvalidation expected : batch) {
+				KeyInvalidation invalidation = received.poll(5, TimeUnit.SECONDS);
+				assertNotNull(invalidation);
+				assertEquals(expected, invalidation);
+			}
+			assertNull(echoed.poll(200, TimeUnit.MILLISECONDS));
+		} finally {
+			sender.close();
+			receiver.close();
+		}
+	}
+
+	private static ConfigurableApplicationContext startNode() {
+		return new SpringApplicationBuilder(ShorturlApplication.class)
+				.properties(
+						"spring.datasource.url=jdbc:hsqldb:mem:invalidationNodes",
+						"server.port=0",
+						"spring.jmx.enabled=false",
+						"shorturl.invalidation.bus=in-process",
+						"shorturl.invalidation.channel=invalidationNodes")
+				.run();
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.mihai.shorturl.service.verifier;
+
+import com.mihai.shorturl.service.exception.ServiceOverloadedException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UrlVerifiersTests {
+
+	@Test
+	public void rejectsWhenAnyVerifierRejects() {
+		UrlVerifiers verifiers = new UrlVerifiers(Arrays.asList(url -> true, url -> !url.contains("bad")), 1000, 2, 100, 60);
+
+		assertTrue(verifiers.isSafe("https://good.com"));
+		assertFalse(verifiers.isSafe("https://bad.com"));
+		verifiers.shutdown();
+	}
+
+	@Test
+	public void failsAsOverloadedWithoutCachingWhenVerifierTimesOut() {
+		AtomicInteger slowCalls = new AtomicInteger();
+		UrlVerifier slow = url -> {
+			slowCalls.incrementAndGet();
+			try {
+				Thread.sleep(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return true;
+		};
+		// a single verifier has its timeout enforced too
+		for (UrlVerifiers verifiers : Arrays.asList(
+				new UrlVerifiers(Arrays.asList(url -> true, slow), 50, 2, 100, 60),
+				new UrlVerifiers(Arrays.asList(slow), 50, 2, 100, 60))) {
+			slowCalls.set(0);
+			long start = System.nanoTime();
+			assertOverloaded(verifiers, "https://slow.com");
+			assertTrue(System.nanoTime() - start < 2_000_000_000L);
+			assertOverloaded(verifiers, "https://slow.com");
+			assertEquals(2, slowCalls.get());
+			verifiers.shutdown();
+		}
+	}
+
+	@Test
+	public void failsAsOverloadedWhenVerifiersCannotBeScheduled() {
+		UrlVerifiers verifiers = new UrlVerifiers(Arrays.asList(url -> true), 1000, 1, 100, 60);
+		verifiers.shutdown();
+
+		assertOverloaded(verifiers, "https://good.com");
+	}
+
+	@Test
+	public void cachesVerdicts() {
+		AtomicInteger calls = new AtomicInteger();
+		UrlVerifiers verifiers = new UrlVerifiers(Arrays.asList(url -> calls.incrementAndGet() > 0), 1000, 2, 100, 60);
+
+		assertTrue(verifiers.isSafe("https://good.com"));
+		assertTrue(verifiers.isSafe("https://good.com"));
+		assertEquals(1, calls.get());
+		verifiers.shutdown();
+	}
+
+	private static void assertOverloaded(UrlVerifiers verifiers, String url) {
+		try {
+			verifiers.isSafe(url);
+			throw new AssertionError("url was verified");
+		} catch (ServiceOverloadedException expected) {
+			// no verdict
+		}
+	}
+}